@@ -32,4 +32,56 @@ public interface PolitenessServer {
      */
     long applyPoliteness(WebURL url);
 
+    /**
+     * Sets the politeness delay for the host of the given url, e.g. as requested by the
+     * "Crawl-delay" directive of its robots.txt. Implementations which do not support per host
+     * delays ignore it.
+     * <p>
+     * Politeness is applied per registered domain ({@link WebURL#getDomain()}), but like
+     * robots.txt, this delay belongs to the host ({@link #hostOf(WebURL)}): it is kept between
+     * requests to the host, while other hosts of the same domain keep their own delay.
+     *
+     * @param url   any url of the host, must not be {@code null}
+     * @param delay the delay in ms
+     */
+    default void setPolitenessDelay(WebURL url, long delay) {
+        // per host delays are not supported by default
+    }
+
+    /**
+     * Informs about the response of a request to the host of the given url, so that
+     * implementations may adapt the politeness delay of the host.
+     *
+     * @param url          the requested url, must not be {@code null}
+     * @param responseTime the time in ms until the response was received
+     * @param statusCode   the status code of the response
+     */
+    default void onResponse(WebURL url, long responseTime, int statusCode) {
+        // responses are ignored by default
+    }
+
+    /**
+     * Informs about a request to the host of the given url, which failed without a response,
+     * e.g. due to a timeout.
+     *
+     * @param url          the requested url, must not be {@code null}
+     * @param responseTime the time in ms until the request failed
+     * @param cause        the cause of the failure
+     */
+    default void onFailure(WebURL url, long responseTime, Exception cause) {
+        // failures are ignored by default
+    }
+
+    /**
+     * @return the host of the given url, e.g. "www.example.com", by which per host delays are kept
+     */
+    static String hostOf(WebURL url) {
+        final String domain = url.getDomain();
+        final String subDomain = url.getSubDomain();
+        if (domain == null || subDomain == null || subDomain.isEmpty()) {
+            return domain;
+        }
+        return subDomain + "." + domain;
+    }
+
 }
@@ -43,6 +43,10 @@ public class CrawlConfig {
     /**
      * If this feature is enabled, you would be able to resume a previously
      * stopped/crashed crawl. However, it makes crawling slightly slower
+     * <p>
+     * Urls waiting for a retry (see {@link #setMaxRetries(int)}) are only kept
+     * in memory: they are put back into the frontier without their remaining
+     * delay when the crawl is shut down, but are lost if it crashes.
      */
     private boolean resumableCrawling = false;
 
@@ -75,6 +79,47 @@ public class CrawlConfig {
      */
     private int politenessDelay = 200;
 
+    /**
+     * Lower bound in milliseconds for a per host politeness delay requested via the
+     * "Crawl-delay" directive of a robots.txt.
+     */
+    private int minCrawlDelay = 100;
+
+    /**
+     * Upper bound in milliseconds for a per host politeness delay requested via the
+     * "Crawl-delay" directive of a robots.txt.
+     */
+    private int maxCrawlDelay = 60_000;
+
+    /**
+     * Lower bound in milliseconds for the politeness delay of a host, which is adapted to
+     * its response times and errors.
+     */
+    private int minAdaptiveDelay = 50;
+
+    /**
+     * Upper bound in milliseconds for the politeness delay of a host, which is adapted to
+     * its response times and errors.
+     */
+    private int maxAdaptiveDelay = 60_000;
+
+    /**
+     * Maximum number of times a url is fetched again after a transient failure (429, 5xx,
+     * timeouts). 0 disables retries.
+     */
+    private int maxRetries = 0;
+
+    /**
+     * Delay in milliseconds before the first retry of a url, doubled with every further retry,
+     * unless the server sends a "Retry-After" header.
+     */
+    private int retryDelay = 1000;
+
+    /**
+     * Upper bound in milliseconds for the delay of a retry, including "Retry-After" values.
+     */
+    private int maxRetryDelay = 600_000;
+
     /**
      * Should we also crawl https pages?
      */
@@ -237,6 +282,56 @@ public class CrawlConfig {
      */
     private int batchReadSize = 50;
 
+    /*
+     * number of fetches a single crawler keeps in flight when an asynchronous page fetcher is used
+     */
+    private int maxConcurrentFetchesPerCrawler = 100;
+
+    /*
+     * negotiate HTTP/2 via ALPN and multiplex the requests to the same host over one connection
+     */
+    private boolean http2Enabled = false;
+
+    /*
+     * run the crawlers on virtual threads (Java 21+)
+     */
+    private boolean virtualThreads = false;
+
+    /*
+     * apply politeness when handing out urls instead of delaying the fetch
+     */
+    private boolean hostAwareScheduling = false;
+
+    /*
+     * interleave the hosts within a priority and depth in the frontier's queue
+     */
+    private boolean hostInterleavedQueue = false;
+
+    /*
+     * number of urls the Bloom filter in front of the docid server is sized for, 0 disables it
+     */
+    private long docIdBloomFilterSize = 0;
+
+    /*
+     * false positive probability of the docid Bloom filter at its size
+     */
+    private double docIdBloomFilterFalsePositiveProbability = 0.01;
+
+    /*
+     * number of url to docid mappings cached in front of the docid server, 0 disables the cache
+     */
+    private int docIdCacheSize = 0;
+
+    /*
+     * number of processed urls of a resumable crawl acknowledged to the frontier's database together
+     */
+    private int processedBatchSize = 1;
+
+    /*
+     * maximum time in milliseconds a processed url waits for its batch to be acknowledged
+     */
+    private int processedFlushInterval = 1000;
+
     /**
      * Validates the configs specified by this instance.
      *
@@ -249,6 +344,18 @@ public class CrawlConfig {
         if (politenessDelay < 0) {
             throw new Exception("Invalid value for politeness delay: " + politenessDelay);
         }
+        if (minCrawlDelay < 0 || maxCrawlDelay < minCrawlDelay) {
+            throw new Exception("Invalid bounds for crawl delay: " + minCrawlDelay + " - " + maxCrawlDelay);
+        }
+        if (minAdaptiveDelay < 0 || maxAdaptiveDelay < minAdaptiveDelay) {
+            throw new Exception("Invalid bounds for adaptive delay: " + minAdaptiveDelay + " - " + maxAdaptiveDelay);
+        }
+        if (maxRetries < 0) {
+            throw new Exception("Invalid value for max retries: " + maxRetries);
+        }
+        if (retryDelay < 0 || maxRetryDelay < retryDelay) {
+            throw new Exception("Invalid bounds for retry delay: " + retryDelay + " - " + maxRetryDelay);
+        }
         if (maxDepthOfCrawling < -1) {
             throw new Exception(
                 "Maximum crawl depth should be either a positive number or -1 for unlimited depth" +
@@ -257,6 +364,25 @@ public class CrawlConfig {
         if (maxDepthOfCrawling > Short.MAX_VALUE) {
             throw new Exception("Maximum value for crawl depth is " + Short.MAX_VALUE);
         }
+        if (maxConcurrentFetchesPerCrawler < 1) {
+            throw new Exception("Invalid value for max concurrent fetches per crawler: " + maxConcurrentFetchesPerCrawler);
+        }
+        if (docIdBloomFilterSize < 0) {
+            throw new Exception("Invalid value for docid Bloom filter size: " + docIdBloomFilterSize);
+        }
+        if (docIdBloomFilterFalsePositiveProbability <= 0 || docIdBloomFilterFalsePositiveProbability >= 1) {
+            throw new Exception("Invalid value for docid Bloom filter false positive probability: " +
+                                docIdBloomFilterFalsePositiveProbability);
+        }
+        if (docIdCacheSize < 0) {
+            throw new Exception("Invalid value for docid cache size: " + docIdCacheSize);
+        }
+        if (processedBatchSize < 1) {
+            throw new Exception("Invalid value for processed batch size: " + processedBatchSize);
+        }
+        if (processedFlushInterval < 1) {
+            throw new Exception("Invalid value for processed flush interval: " + processedFlushInterval);
+        }
     }
 
     public String getCrawlStorageFolder() {
@@ -280,6 +406,10 @@ public class CrawlConfig {
     /**
      * If this feature is enabled, you would be able to resume a previously
      * stopped/crashed crawl. However, it makes crawling slightly slower
+     * <p>
+     * Urls waiting for a retry (see {@link #setMaxRetries(int)}) are only kept
+     * in memory: they are put back into the frontier without their remaining
+     * delay when the crawl is shut down, but are lost if it crashes.
      *
      * @param resumableCrawling Should crawling be resumable between runs ?
      */
@@ -364,6 +494,111 @@ public class CrawlConfig {
         this.politenessDelay = politenessDelay;
     }
 
+    public int getMinCrawlDelay() {
+        return minCrawlDelay;
+    }
+
+    /**
+     * Lower bound for the politeness delay of a host, which requested a delay via the
+     * "Crawl-delay" directive of its robots.txt.
+     *
+     * @param minCrawlDelay
+     *            the delay in milliseconds.
+     */
+    public void setMinCrawlDelay(int minCrawlDelay) {
+        this.minCrawlDelay = minCrawlDelay;
+    }
+
+    public int getMaxCrawlDelay() {
+        return maxCrawlDelay;
+    }
+
+    /**
+     * Upper bound for the politeness delay of a host, which requested a delay via the
+     * "Crawl-delay" directive of its robots.txt.
+     *
+     * @param maxCrawlDelay
+     *            the delay in milliseconds.
+     */
+    public void setMaxCrawlDelay(int maxCrawlDelay) {
+        this.maxCrawlDelay = maxCrawlDelay;
+    }
+
+    public int getMinAdaptiveDelay() {
+        return minAdaptiveDelay;
+    }
+
+    /**
+     * Lower bound for the politeness delay of a host, if the delay is adapted to the
+     * response times and errors of the host.
+     *
+     * @param minAdaptiveDelay
+     *            the delay in milliseconds.
+     */
+    public void setMinAdaptiveDelay(int minAdaptiveDelay) {
+        this.minAdaptiveDelay = minAdaptiveDelay;
+    }
+
+    public int getMaxAdaptiveDelay() {
+        return maxAdaptiveDelay;
+    }
+
+    /**
+     * Upper bound for the politeness delay of a host, if the delay is adapted to the
+     * response times and errors of the host.
+     *
+     * @param maxAdaptiveDelay
+     *            the delay in milliseconds.
+     */
+    public void setMaxAdaptiveDelay(int maxAdaptiveDelay) {
+        this.maxAdaptiveDelay = maxAdaptiveDelay;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Maximum number of times a url is fetched again after a transient failure, i.e. a
+     * 429 or 5xx status code or a connect or socket timeout. 0 disables retries.
+     *
+     * @param maxRetries
+     *            the maximum number of retries per url.
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Delay before the first retry of a url, which is doubled with every further retry. A
+     * "Retry-After" header of the response takes precedence.
+     *
+     * @param retryDelay
+     *            the delay in milliseconds.
+     */
+    public void setRetryDelay(int retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public int getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    /**
+     * Upper bound for the delay of a retry and for the time a host is paused because of
+     * a "Retry-After" header.
+     *
+     * @param maxRetryDelay
+     *            the delay in milliseconds.
+     */
+    public void setMaxRetryDelay(int maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
     public boolean isIncludeHttpsPages() {
         return includeHttpsPages;
     }
@@ -719,6 +954,153 @@ public class CrawlConfig {
         this.batchReadSize = batchReadSize;
     }
 
+    /**
+     * Maximum number of requests a single crawler thread keeps in flight if the controller
+     * uses an {@code AsyncPageFetcher}. Ignored for the blocking page fetcher.
+     *
+     * @return the maximum number of concurrent fetches per crawler
+     */
+    public int getMaxConcurrentFetchesPerCrawler() {
+        return maxConcurrentFetchesPerCrawler;
+    }
+
+    public void setMaxConcurrentFetchesPerCrawler(int maxConcurrentFetchesPerCrawler) {
+        this.maxConcurrentFetchesPerCrawler = maxConcurrentFetchesPerCrawler;
+    }
+
+    /**
+     * Whether the {@code AsyncPageFetcher} negotiates HTTP/2 (via ALPN) with https hosts and
+     * multiplexes all requests to the same host over a single connection. Hosts that do not
+     * support HTTP/2 are fetched via HTTP/1.1. The fetcher keeps at most
+     * {@link #getMaxConnectionsPerHost()} requests per host in flight.
+     *
+     * @return {@code true} if HTTP/2 is enabled
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    /**
+     * Whether the crawlers run on virtual threads instead of platform threads. This allows
+     * to run thousands of blocking crawlers cheaply. Requires Java 21 or newer, on older
+     * JVMs platform threads are used.
+     *
+     * @return {@code true} if virtual threads are used
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Whether politeness is applied while handing out urls to the crawlers instead of putting
+     * the crawler to sleep before a fetch. The urls are queued per host and crawlers only get
+     * urls of hosts which may be fetched right now, so a crawler never waits for a host while
+     * another host is ready.
+     *
+     * @return {@code true} if host aware scheduling is enabled
+     */
+    public boolean isHostAwareScheduling() {
+        return hostAwareScheduling;
+    }
+
+    public void setHostAwareScheduling(boolean hostAwareScheduling) {
+        this.hostAwareScheduling = hostAwareScheduling;
+    }
+
+    /**
+     * Whether the frontier orders the urls of the same priority and depth round-robin by host
+     * instead of by discovery, so that a batch of urls handed to a crawler spans many hosts
+     * instead of mostly containing the links of a single page. Currently honored by the
+     * Sleepycat frontier, which refuses to resume a crawl started with the other setting.
+     *
+     * @return {@code true} if hosts are interleaved in the queue
+     */
+    public boolean isHostInterleavedQueue() {
+        return hostInterleavedQueue;
+    }
+
+    public void setHostInterleavedQueue(boolean hostInterleavedQueue) {
+        this.hostInterleavedQueue = hostInterleavedQueue;
+    }
+
+    /**
+     * The number of urls the Bloom filter in front of the {@code DocIDServer} is sized for. It
+     * answers the lookups of new urls without asking the database, a larger crawl only raises
+     * its false positive probability. 0 disables the Bloom filter.
+     *
+     * @return the expected number of urls of the crawl
+     */
+    public long getDocIdBloomFilterSize() {
+        return docIdBloomFilterSize;
+    }
+
+    public void setDocIdBloomFilterSize(long docIdBloomFilterSize) {
+        this.docIdBloomFilterSize = docIdBloomFilterSize;
+    }
+
+    /**
+     * @return the false positive probability of the docid Bloom filter at
+     * {@link #getDocIdBloomFilterSize()} urls
+     */
+    public double getDocIdBloomFilterFalsePositiveProbability() {
+        return docIdBloomFilterFalsePositiveProbability;
+    }
+
+    public void setDocIdBloomFilterFalsePositiveProbability(double docIdBloomFilterFalsePositiveProbability) {
+        this.docIdBloomFilterFalsePositiveProbability = docIdBloomFilterFalsePositiveProbability;
+    }
+
+    /**
+     * The number of recently used url to docid mappings cached in front of the
+     * {@code DocIDServer}, so that urls linked from many pages are not looked up in the database
+     * every time. 0 disables the cache.
+     *
+     * @return the size of the docid cache
+     */
+    public int getDocIdCacheSize() {
+        return docIdCacheSize;
+    }
+
+    public void setDocIdCacheSize(int docIdCacheSize) {
+        this.docIdCacheSize = docIdCacheSize;
+    }
+
+    /**
+     * The number of processed urls a resumable crawl removes from the frontier's in-process list
+     * in one transaction. With 1, every url is removed right away; with more, a crash may cause
+     * up to this many urls, and those processed within {@link #getProcessedFlushInterval()}, to
+     * be crawled again when the crawl is resumed. Currently honored by the Sleepycat frontier.
+     *
+     * @return the number of processed urls acknowledged together
+     */
+    public int getProcessedBatchSize() {
+        return processedBatchSize;
+    }
+
+    public void setProcessedBatchSize(int processedBatchSize) {
+        this.processedBatchSize = processedBatchSize;
+    }
+
+    /**
+     * @return the maximum time in milliseconds a processed url waits for its batch to be
+     * acknowledged if {@link #getProcessedBatchSize()} is greater than 1
+     */
+    public int getProcessedFlushInterval() {
+        return processedFlushInterval;
+    }
+
+    public void setProcessedFlushInterval(int processedFlushInterval) {
+        this.processedFlushInterval = processedFlushInterval;
+    }
+
     public boolean isLanguageDetection() {
         return languageDetection;
     }
@@ -736,6 +1118,11 @@ public class CrawlConfig {
                 "User agent string: " + getUserAgentString() + "\n" +
                 "Include https pages: " + isIncludeHttpsPages() + "\n" +
                 "Include binary content: " + isIncludeBinaryContentInCrawling() + "\n" +
+                "Politeness delay: " + getPolitenessDelay() + "\n" +
+                "Crawl delay bounds: " + getMinCrawlDelay() + " - " + getMaxCrawlDelay() + "\n" +
+                "Adaptive delay bounds: " + getMinAdaptiveDelay() + " - " + getMaxAdaptiveDelay() + "\n" +
+                "Max retries: " + getMaxRetries() + "\n" +
+                "Retry delay bounds: " + getRetryDelay() + " - " + getMaxRetryDelay() + "\n" +
                 "Max connections per host: " + getMaxConnectionsPerHost() + "\n" +
                 "Max total connections: " + getMaxTotalConnections() + "\n" +
                 "Socket timeout: " + getSocketTimeout() + "\n" +
@@ -755,6 +1142,16 @@ public class CrawlConfig {
                 "Halt on error: " + isHaltOnError() + "\n" +
                 "Allow single level domain:" + isAllowSingleLevelDomain() + "\n" +
                 "Batch read size: " + getBatchReadSize() + "\n" +
+                "Max concurrent fetches per crawler: " + getMaxConcurrentFetchesPerCrawler() + "\n" +
+                "HTTP/2 enabled: " + isHttp2Enabled() + "\n" +
+                "Virtual threads: " + isVirtualThreads() + "\n" +
+                "Host aware scheduling: " + isHostAwareScheduling() + "\n" +
+                "Host interleaved queue: " + isHostInterleavedQueue() + "\n" +
+                "DocId Bloom filter size: " + getDocIdBloomFilterSize() + "\n" +
+                "DocId Bloom filter false positive probability: " + getDocIdBloomFilterFalsePositiveProbability() + "\n" +
+                "DocId cache size: " + getDocIdCacheSize() + "\n" +
+                "Processed batch size: " + getProcessedBatchSize() + "\n" +
+                "Processed flush interval: " + getProcessedFlushInterval() + "\n" +
                 "Language Detection enabled:: " + isLanguageDetection() + "\n";
     }
 }
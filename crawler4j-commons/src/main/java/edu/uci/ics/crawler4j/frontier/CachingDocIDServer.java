@@ -0,0 +1,345 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-commons
+ * %%
+ * Copyright (C) 2010 - 2021 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.util.BloomFilter;
+
+/**
+ * Decorates any {@link DocIDServer} with two front caches for {@link #getDocId(String)} and
+ * {@link #isSeenBefore(String)}, the lookups done for every outgoing link:
+ * <ul>
+ * <li>a Bloom filter of all known urls, so that urls which are certainly new are answered
+ * without asking the delegate,</li>
+ * <li>an LRU cache of recently used url to docid mappings for urls linked from many pages.</li>
+ * </ul>
+ * All docids are assigned by the delegate. When resuming a crawl, the Bloom filter is rebuilt
+ * from {@link DocIDServer#forEach(ObjIntConsumer)}; if the delegate cannot
+ * enumerate its urls, the Bloom filter is not used.
+ */
+public class CachingDocIDServer implements DocIDServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingDocIDServer.class);
+
+    private static final int SEGMENTS = 16;
+
+    private final DocIDServer delegate;
+
+    /*
+     * null if disabled or if it could not be rebuilt
+     */
+    private final BloomFilter bloomFilter;
+
+    /*
+     * null if disabled
+     */
+    private final LruSegment[] segments;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder bloomFilterMisses = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * @param delegate                 the docid server to decorate
+     * @param expectedUrls             the number of urls the Bloom filter is sized for, 0 to
+     *                                 disable it
+     * @param falsePositiveProbability the false positive probability of the Bloom filter at
+     *                                 {@code expectedUrls}
+     * @param cacheSize                the number of mappings kept in the LRU cache, 0 to disable
+     *                                 it
+     */
+    public CachingDocIDServer(DocIDServer delegate, long expectedUrls, double falsePositiveProbability,
+                              int cacheSize) {
+        this.delegate = delegate;
+        this.bloomFilter = expectedUrls > 0 ? newBloomFilter(delegate, expectedUrls, falsePositiveProbability) : null;
+        if (cacheSize > 0) {
+            this.segments = new LruSegment[SEGMENTS];
+            int segmentSize = Math.max(1, cacheSize / SEGMENTS);
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new LruSegment(segmentSize);
+            }
+        } else {
+            this.segments = null;
+        }
+    }
+
+    private static BloomFilter newBloomFilter(DocIDServer delegate, long expectedUrls,
+                                              double falsePositiveProbability) {
+        BloomFilter filter = new BloomFilter(Math.max(expectedUrls, delegate.getDocCount()),
+                                             falsePositiveProbability);
+        if (delegate.getDocCount() > 0) {
+            long start = System.currentTimeMillis();
+            if (!delegate.forEach((url, docId) -> filter.put(url))) {
+                logger.warn("{} cannot enumerate its urls, not using a Bloom filter for the resumed crawl",
+                            delegate.getClass().getSimpleName());
+                return null;
+            }
+            logger.info("Rebuilt the Bloom filter of {} known urls in {} ms", delegate.getDocCount(),
+                        System.currentTimeMillis() - start);
+        }
+        return filter;
+    }
+
+    @Override
+    public int getDocId(String url) {
+        lookups.increment();
+        LruSegment segment = segmentOf(url);
+        if (segment != null) {
+            int docId = segment.get(url);
+            if (docId != -1) {
+                cacheHits.increment();
+                return docId;
+            }
+        }
+        if (bloomFilter != null && !bloomFilter.mightContain(url)) {
+            bloomFilterMisses.increment();
+            return -1;
+        }
+        int docId = delegate.getDocId(url);
+        if (docId > 0) {
+            if (segment != null) {
+                segment.put(url, docId);
+            }
+        } else if (bloomFilter != null) {
+            falsePositives.increment();
+        }
+        return docId;
+    }
+
+    @Override
+    public int getNewDocID(String url) {
+        mightContain(url);
+        int docId = delegate.getNewDocID(url);
+        remember(url, docId);
+        return docId;
+    }
+
+    @Override
+    public int[] getDocIds(List<String> urls) {
+        int[] docIds = new int[urls.size()];
+        List<String> misses = new ArrayList<>();
+        int[] missIndexes = new int[docIds.length];
+        for (int i = 0; i < docIds.length; i++) {
+            String url = urls.get(i);
+            lookups.increment();
+            LruSegment segment = segmentOf(url);
+            docIds[i] = segment != null ? segment.get(url) : -1;
+            if (docIds[i] != -1) {
+                cacheHits.increment();
+            } else if (bloomFilter != null && !bloomFilter.mightContain(url)) {
+                bloomFilterMisses.increment();
+            } else {
+                missIndexes[misses.size()] = i;
+                misses.add(url);
+            }
+        }
+        if (misses.isEmpty()) {
+            return docIds;
+        }
+        // only the urls neither cached nor ruled out go to the delegate, in one batch
+        int[] missDocIds = delegate.getDocIds(misses);
+        for (int j = 0; j < missDocIds.length; j++) {
+            int docId = missDocIds[j];
+            docIds[missIndexes[j]] = docId;
+            if (docId > 0) {
+                LruSegment segment = segmentOf(misses.get(j));
+                if (segment != null) {
+                    segment.put(misses.get(j), docId);
+                }
+            } else if (bloomFilter != null) {
+                falsePositives.increment();
+            }
+        }
+        return docIds;
+    }
+
+    @Override
+    public List<DocIDAssignment> getOrCreateDocIds(List<String> urls) {
+        DocIDAssignment[] result = new DocIDAssignment[urls.size()];
+        List<String> misses = new ArrayList<>();
+        for (int i = 0; i < result.length; i++) {
+            LruSegment segment = segmentOf(urls.get(i));
+            int docId = segment != null ? segment.get(urls.get(i)) : -1;
+            if (docId != -1) {
+                result[i] = new DocIDAssignment(docId, false);
+            } else {
+                misses.add(urls.get(i));
+            }
+        }
+        if (!misses.isEmpty()) {
+            // new docids are assigned by the delegate, so the Bloom filter cannot save the call
+            for (String url : misses) {
+                mightContain(url);
+            }
+            List<DocIDAssignment> assigned = delegate.getOrCreateDocIds(misses);
+            for (int i = 0, j = 0; i < result.length; i++) {
+                if (result[i] == null) {
+                    result[i] = assigned.get(j++);
+                    remember(urls.get(i), result[i].getDocId());
+                }
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    @Override
+    public void addUrlAndDocId(String url, int docId) {
+        mightContain(url);
+        delegate.addUrlAndDocId(url, docId);
+        remember(url, docId);
+    }
+
+    /*
+     * Called before the delegate stores the url: a lookup by another thread must not be answered
+     * by the Bloom filter as soon as the delegate knows the url. If storing fails, the url is a
+     * false positive, which only costs a lookup.
+     */
+    private void mightContain(String url) {
+        if (bloomFilter != null) {
+            bloomFilter.put(url);
+        }
+    }
+
+    private void remember(String url, int docId) {
+        if (docId <= 0) {
+            return;
+        }
+        LruSegment segment = segmentOf(url);
+        if (segment != null) {
+            segment.put(url, docId);
+        }
+    }
+
+    @Override
+    public boolean isSeenBefore(String url) {
+        return getDocId(url) > 0;
+    }
+
+    @Override
+    public int getDocCount() {
+        return delegate.getDocCount();
+    }
+
+    @Override
+    public boolean forEach(ObjIntConsumer<String> consumer) {
+        return delegate.forEach(consumer);
+    }
+
+    @Override
+    public void close() {
+        logger.info("DocID lookups: {}, LRU hit rate: {}, Bloom filter skip rate: {}, false positives: {}",
+                    getLookups(), getCacheHitRate(), getBloomFilterSkipRate(), getFalsePositives());
+        delegate.close();
+    }
+
+    public DocIDServer getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the number of {@link #getDocId(String)} and {@link #isSeenBefore(String)} calls
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return the share of lookups answered by the LRU cache
+     */
+    public double getCacheHitRate() {
+        return rate(cacheHits.sum());
+    }
+
+    /**
+     * @return the share of lookups answered by the Bloom filter, i.e. of urls which were new
+     */
+    public double getBloomFilterSkipRate() {
+        return rate(bloomFilterMisses.sum());
+    }
+
+    /**
+     * @return the number of lookups the Bloom filter passed on to the delegate for urls which
+     * turned out to be new
+     */
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    private double rate(long count) {
+        long total = lookups.sum();
+        return total == 0 ? 0 : (double) count / total;
+    }
+
+    private LruSegment segmentOf(String url) {
+        if (segments == null) {
+            return null;
+        }
+        int hash = url.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /*
+     * one lock per segment, the access order of a LinkedHashMap changes on every read
+     */
+    private static final class LruSegment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Integer> entries;
+
+        private LruSegment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private int get(String url) {
+            lock.lock();
+            try {
+                Integer docId = entries.get(url);
+                return docId == null ? -1 : docId;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(String url, int docId) {
+            lock.lock();
+            try {
+                entries.put(url, docId);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
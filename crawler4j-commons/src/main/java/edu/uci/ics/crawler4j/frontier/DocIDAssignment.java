@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-commons
+ * %%
+ * Copyright (C) 2010 - 2021 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+/**
+ * The docid of a url as returned by {@link DocIDServer#getOrCreateDocIds(java.util.List)}.
+ */
+public final class DocIDAssignment {
+
+    private final int docId;
+    private final boolean isNew;
+
+    public DocIDAssignment(int docId, boolean isNew) {
+        this.docId = docId;
+        this.isNew = isNew;
+    }
+
+    public int getDocId() {
+        return docId;
+    }
+
+    /**
+     * @return {@code true} if the docid has been assigned by this call, i.e. the url has not been
+     * seen before
+     */
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @Override
+    public String toString() {
+        return "DocIDAssignment{docId=" + docId + ", isNew=" + isNew + '}';
+    }
+}
@@ -19,6 +19,9 @@
  */
 package edu.uci.ics.crawler4j.frontier;
 
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
 public interface DocIDServer {
 
     /**
@@ -31,11 +34,54 @@ public interface DocIDServer {
 
     int getNewDocID(String url);
 
+    /**
+     * Returns the docids of already seen urls, like {@link #getDocId(String)} for each url but in
+     * a single call to the backend where it supports it.
+     *
+     * @param urls the urls to look up
+     * @return the docid of each url in the order of the urls, -1 for urls not seen before
+     */
+    default int[] getDocIds(List<String> urls) {
+        int[] docIds = new int[urls.size()];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = getDocId(urls.get(i));
+        }
+        return docIds;
+    }
+
+    /**
+     * Returns the docids of the given urls and assigns new docids to urls not seen before, in a
+     * single call to the backend where it supports it. A url repeated in the list is only new at
+     * its first position.
+     * <p>
+     * Looking up and assigning must be atomic: of all concurrent calls passing the same url,
+     * exactly one may report it as new, since crawlers schedule the urls reported as new.
+     * Implementations should rely on an atomic lookup and insert of their backend rather than on
+     * a monitor, which would pin the virtual threads of the crawlers.
+     *
+     * @param urls the urls to look up or add
+     * @return the docid of each url and whether it has been assigned by this call, in the order
+     * of the urls
+     */
+    List<DocIDAssignment> getOrCreateDocIds(List<String> urls);
+
     void addUrlAndDocId(String url, int docId);
 
     boolean isSeenBefore(String url);
 
     int getDocCount();
 
+    /**
+     * Passes every known url and its docid to the given consumer, e.g. to warm up a cache when
+     * a crawl is resumed.
+     *
+     * @param consumer receives the urls and their docids
+     * @return {@code false} if the urls cannot be enumerated, in which case the consumer has not
+     * been called
+     */
+    default boolean forEach(ObjIntConsumer<String> consumer) {
+        return false;
+    }
+
     void close();
 }
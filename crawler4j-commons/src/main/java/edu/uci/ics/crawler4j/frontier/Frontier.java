@@ -29,8 +29,31 @@ public interface Frontier {
 
     void schedule(WebURL url);
 
+    /**
+     * Hands back a url which was handed out by {@link #getNextURLs(int, List)} and already marked
+     * as processed, e.g. to retry it later. Unlike {@link #schedule(WebURL)} it neither counts
+     * against maxPagesToFetch nor as a newly scheduled page, and the processing it was handed out
+     * for is not counted as processed either. The default schedules it like a new url, so
+     * frontiers which limit the pages to fetch should override it.
+     */
+    default void reschedule(WebURL url) {
+        schedule(url);
+    }
+
     void getNextURLs(int max, List<WebURL> result);
 
+    /**
+     * Like {@link #getNextURLs(int, List)}, but meant to return right away if there are no urls.
+     * The default only calls {@link #getNextURLs(int, List)} if the queue is not empty, so it
+     * still blocks if other threads take the remaining urls first. Frontiers which can take urls
+     * without waiting should override it.
+     */
+    default void pollNextURLs(int max, List<WebURL> result) {
+        if (getQueueLength() > 0) {
+            getNextURLs(max, result);
+        }
+    }
+
     void setProcessed(WebURL webURL);
 
     long getQueueLength();
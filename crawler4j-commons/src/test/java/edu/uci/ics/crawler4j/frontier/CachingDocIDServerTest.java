@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-commons
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+import org.junit.jupiter.api.Test;
+
+public class CachingDocIDServerTest {
+
+    @Test
+    public void testBloomFilterSkipsLookupsOfNewUrls() {
+        InMemoryDocIDServer backend = new InMemoryDocIDServer();
+        CachingDocIDServer server = new CachingDocIDServer(backend, 1000, 0.01, 0);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(server.isSeenBefore("http://www.example.com/" + i)).isFalse();
+        }
+        assertThat(backend.lookups.get()).isLessThan(10);
+
+        int docId = server.getNewDocID("http://www.example.com/0");
+        assertThat(server.getDocId("http://www.example.com/0")).isEqualTo(docId);
+        assertThat(server.getBloomFilterSkipRate()).isGreaterThan(0.9);
+    }
+
+    @Test
+    public void testCacheAnswersHotUrls() {
+        InMemoryDocIDServer backend = new InMemoryDocIDServer();
+        int docId = backend.getNewDocID("http://www.example.com/");
+        CachingDocIDServer server = new CachingDocIDServer(backend, 0, 0.01, 100);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(server.getDocId("http://www.example.com/")).isEqualTo(docId);
+        }
+        assertThat(backend.lookups.get()).isEqualTo(1);
+        assertThat(server.getCacheHitRate()).isEqualTo(0.9);
+    }
+
+    @Test
+    public void testBloomFilterIsRebuiltOnResume() {
+        InMemoryDocIDServer backend = new InMemoryDocIDServer();
+        int docId = backend.getNewDocID("http://www.example.com/known");
+        CachingDocIDServer server = new CachingDocIDServer(backend, 1000, 0.01, 0);
+
+        assertThat(server.getDocId("http://www.example.com/known")).isEqualTo(docId);
+        assertThat(server.isSeenBefore("http://www.example.com/unknown")).isFalse();
+    }
+
+    @Test
+    public void testBloomFilterIsNotUsedIfUrlsCannotBeEnumerated() {
+        InMemoryDocIDServer backend = new InMemoryDocIDServer() {
+            @Override
+            public boolean forEach(ObjIntConsumer<String> consumer) {
+                return false;
+            }
+        };
+        int docId = backend.getNewDocID("http://www.example.com/known");
+        CachingDocIDServer server = new CachingDocIDServer(backend, 1000, 0.01, 0);
+
+        assertThat(server.getDocId("http://www.example.com/known")).isEqualTo(docId);
+        assertThat(server.getBloomFilterSkipRate()).isZero();
+    }
+
+    @Test
+    public void testBatchLookupOnlyAsksForUncachedUrls() {
+        InMemoryDocIDServer backend = new InMemoryDocIDServer();
+        int docId = backend.getNewDocID("http://www.example.com/known");
+        CachingDocIDServer server = new CachingDocIDServer(backend, 1000, 0.01, 100);
+        server.getDocId("http://www.example.com/known");
+        backend.lookups.set(0);
+
+        int[] docIds = server.getDocIds(Arrays.asList("http://www.example.com/known", "http://www.example.com/new"));
+
+        assertThat(docIds).containsExactly(docId, -1);
+        assertThat(backend.lookups.get()).isZero();
+    }
+
+    @Test
+    public void testGetOrCreateReportsNewUrlsOnce() {
+        InMemoryDocIDServer backend = new InMemoryDocIDServer();
+        int docId = backend.getNewDocID("http://www.example.com/known");
+        CachingDocIDServer server = new CachingDocIDServer(backend, 1000, 0.01, 100);
+
+        List<DocIDAssignment> assignments = server.getOrCreateDocIds(
+            Arrays.asList("http://www.example.com/known", "http://www.example.com/new", "http://www.example.com/new"));
+
+        assertThat(assignments).extracting(DocIDAssignment::isNew).containsExactly(false, true, false);
+        assertThat(assignments.get(0).getDocId()).isEqualTo(docId);
+        assertThat(assignments.get(2).getDocId()).isEqualTo(assignments.get(1).getDocId());
+        assertThat(server.isSeenBefore("http://www.example.com/new")).isTrue();
+    }
+
+    @Test
+    public void testUrlsAreNeverMissedWhileTheDelegateStoresThem() {
+        AtomicReference<CachingDocIDServer> server = new AtomicReference<>();
+        Map<String, Integer> seenWhileStoring = new ConcurrentHashMap<>();
+        InMemoryDocIDServer backend = new InMemoryDocIDServer() {
+            @Override
+            public int getNewDocID(String url) {
+                int docId = super.getNewDocID(url);
+                // another crawler thread looking the url up before the delegate returned
+                seenWhileStoring.put(url, server.get().getDocId(url));
+                return docId;
+            }
+
+            @Override
+            public void addUrlAndDocId(String url, int docId) {
+                super.addUrlAndDocId(url, docId);
+                seenWhileStoring.put(url, server.get().getDocId(url));
+            }
+        };
+        server.set(new CachingDocIDServer(backend, 1000, 0.01, 0));
+
+        int docId = server.get().getNewDocID("http://www.example.com/new");
+        server.get().addUrlAndDocId("http://www.example.com/added", 42);
+        List<DocIDAssignment> assignments = server.get().getOrCreateDocIds(
+            Arrays.asList("http://www.example.com/batch"));
+
+        assertThat(seenWhileStoring).containsEntry("http://www.example.com/new", docId)
+                                    .containsEntry("http://www.example.com/added", 42)
+                                    .containsEntry("http://www.example.com/batch", assignments.get(0).getDocId());
+    }
+
+    private static class InMemoryDocIDServer implements DocIDServer {
+        private final Map<String, Integer> docIds = new ConcurrentHashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final ReentrantLock lock = new ReentrantLock();
+
+        @Override
+        public int getDocId(String url) {
+            lookups.incrementAndGet();
+            return docIds.getOrDefault(url, -1);
+        }
+
+        @Override
+        public int getNewDocID(String url) {
+            return docIds.computeIfAbsent(url, k -> docIds.size() + 1);
+        }
+
+        @Override
+        public List<DocIDAssignment> getOrCreateDocIds(List<String> urls) {
+            List<DocIDAssignment> result = new ArrayList<>(urls.size());
+            lock.lock();
+            try {
+                for (String url : urls) {
+                    int docId = getDocId(url);
+                    if (docId > 0) {
+                        result.add(new DocIDAssignment(docId, false));
+                    } else {
+                        result.add(new DocIDAssignment(getNewDocID(url), true));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            return result;
+        }
+
+        @Override
+        public void addUrlAndDocId(String url, int docId) {
+            docIds.put(url, docId);
+        }
+
+        @Override
+        public boolean isSeenBefore(String url) {
+            return getDocId(url) != -1;
+        }
+
+        @Override
+        public int getDocCount() {
+            return docIds.size();
+        }
+
+        @Override
+        public boolean forEach(ObjIntConsumer<String> consumer) {
+            docIds.forEach(consumer::accept);
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 import crawlercommons.filters.basic.BasicURLNormalizer;
 import edu.uci.ics.crawler4j.frontier.*;
@@ -30,6 +31,7 @@ import edu.uci.ics.crawler4j.url.WebURLFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.uci.ics.crawler4j.fetcher.AsyncPageFetcher;
 import edu.uci.ics.crawler4j.fetcher.PageFetcher;
 import edu.uci.ics.crawler4j.parser.Parser;
 import edu.uci.ics.crawler4j.robotstxt.RobotstxtServer;
@@ -72,8 +74,10 @@ public class CrawlController {
     protected boolean shuttingDown;
 
     protected PageFetcher pageFetcher;
+    protected AsyncPageFetcher asyncPageFetcher;
     protected RobotstxtServer robotstxtServer;
     protected Frontier frontier;
+    protected RetryScheduler retryScheduler;
     protected DocIDServer docIdServer;
     protected TLDList tldList;
     protected WebURLFactory webURLFactory;
@@ -84,6 +88,12 @@ public class CrawlController {
 
     protected Parser parser;
 
+    /**
+     * Creates the crawler threads. If not set, platform threads are used, or virtual threads
+     * if {@link CrawlConfig#isVirtualThreads()} is enabled.
+     */
+    protected ThreadFactory threadFactory;
+
     public CrawlController(CrawlConfig config, BasicURLNormalizer normalizer, PageFetcher pageFetcher,
                            RobotstxtServer robotstxtServer, FrontierConfiguration frontierConfiguration) throws Exception {
         this(config, normalizer, pageFetcher, null, robotstxtServer, null, frontierConfiguration);
@@ -115,10 +125,22 @@ public class CrawlController {
         this.frontierConfiguration = frontierConfiguration;
         this.frontier = frontierConfiguration.getFrontier();
         this.docIdServer = frontierConfiguration.getDocIDServer();
+        if (config.getDocIdBloomFilterSize() > 0 || config.getDocIdCacheSize() > 0) {
+            this.docIdServer = new CachingDocIDServer(this.docIdServer, config.getDocIdBloomFilterSize(),
+                                                      config.getDocIdBloomFilterFalsePositiveProbability(),
+                                                      config.getDocIdCacheSize());
+        }
         this.webURLFactory = frontierConfiguration.getWebURLFactory();
         this.normalizer = normalizer;
 
         this.pageFetcher = pageFetcher;
+        if (config.isHostAwareScheduling()) {
+            HostAwareFrontier hostAwareFrontier =
+                    new HostAwareFrontier(this.frontier, config, pageFetcher.getPolitenessServer());
+            pageFetcher.setPolitenessServer(hostAwareFrontier);
+            this.frontier = hostAwareFrontier;
+        }
+        this.retryScheduler = new RetryScheduler(config, this.frontier);
         this.parser = parser == null ? new Parser(config, normalizer, tldList, webURLFactory) : parser;
         this.robotstxtServer = robotstxtServer;
 
@@ -236,10 +258,11 @@ public class CrawlController {
             crawlersLocalData.clear();
             final List<Thread> threads = new ArrayList<>();
             final List<T> crawlers = new ArrayList<>();
+            final ThreadFactory crawlerThreadFactory = resolveThreadFactory();
 
             for (int i = 1; i <= numberOfCrawlers; i++) {
                 T crawler = crawlerFactory.newInstance();
-                Thread thread = new Thread(crawler, "Crawler " + i);
+                Thread thread = newCrawlerThread(crawlerThreadFactory, crawler, i);
                 crawler.setThread(thread);
                 crawler.init(i, this);
                 thread.start();
@@ -262,7 +285,7 @@ public class CrawlController {
                                     if (!shuttingDown && !config.isHaltOnError()) {
                                         logger.info("Thread {} was dead, I'll recreate it", i);
                                         T crawler = crawlerFactory.newInstance();
-                                        thread = new Thread(crawler, "Crawler " + (i + 1));
+                                        thread = newCrawlerThread(crawlerThreadFactory, crawler, i + 1);
                                         threads.remove(i);
                                         threads.add(i, thread);
                                         crawler.setThread(thread);
@@ -301,7 +324,7 @@ public class CrawlController {
                                 }
                                 if (!someoneIsWorking) {
                                     if (!shuttingDown) {
-                                        long queueLength = frontier.getQueueLength();
+                                        long queueLength = getPendingUrlCount();
                                         if (queueLength > 0) {
                                             continue;
                                         }
@@ -311,7 +334,7 @@ public class CrawlController {
                                                         config.getThreadShutdownDelaySeconds() +
                                                         " seconds to make sure...");
                                         sleep(config.getThreadShutdownDelaySeconds());
-                                        queueLength = frontier.getQueueLength();
+                                        queueLength = getPendingUrlCount();
                                         if (queueLength > 0) {
                                             continue;
                                         }
@@ -333,9 +356,11 @@ public class CrawlController {
                                                     " seconds before final clean up...");
                                     sleep(config.getCleanupDelaySeconds());
 
+                                    retryScheduler.shutDown();
+                                    robotstxtServer.shutDown();
                                     frontier.close();
                                     docIdServer.close();
-                                    pageFetcher.shutDown();
+                                    shutDownPageFetchers();
 
                                     finished = true;
                                     waitingLock.notifyAll();
@@ -351,9 +376,11 @@ public class CrawlController {
                         setError(e);
                         synchronized (waitingLock) {
                             frontier.finish();
+                            retryScheduler.shutDown();
+                            robotstxtServer.shutDown();
                             frontier.close();
                             docIdServer.close();
-                            pageFetcher.shutDown();
+                            shutDownPageFetchers();
                             waitingLock.notifyAll();
                             frontierConfiguration.close();
                         }
@@ -565,6 +592,91 @@ public class CrawlController {
         this.pageFetcher = pageFetcher;
     }
 
+    public AsyncPageFetcher getAsyncPageFetcher() {
+        return asyncPageFetcher;
+    }
+
+    /**
+     * If set, crawlers fetch pages through the given {@link AsyncPageFetcher} and keep up to
+     * {@link CrawlConfig#getMaxConcurrentFetchesPerCrawler()} requests in flight each, instead of
+     * blocking on every single fetch. The blocking {@link PageFetcher} is still used for robots.txt.
+     *
+     * @param asyncPageFetcher the asynchronous page fetcher or {@code null} to disable async fetching
+     */
+    public void setAsyncPageFetcher(AsyncPageFetcher asyncPageFetcher) {
+        this.asyncPageFetcher = asyncPageFetcher;
+        if (asyncPageFetcher != null && frontier instanceof HostAwareFrontier) {
+            asyncPageFetcher.setPolitenessServer((HostAwareFrontier) frontier);
+        }
+    }
+
+    /**
+     * @return the number of urls queued in the frontier, waiting for a retry or for the
+     * robots.txt of their host
+     */
+    private long getPendingUrlCount() {
+        return frontier.getQueueLength() + retryScheduler.getPendingRetries() +
+                robotstxtServer.getParkedUrlCount();
+    }
+
+    private void shutDownPageFetchers() {
+        pageFetcher.shutDown();
+        if (asyncPageFetcher != null) {
+            asyncPageFetcher.shutDown();
+        }
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory used to create the crawler threads, e.g. to run them in a custom
+     * thread group or on virtual threads. The threads are named "Crawler n" by the controller.
+     *
+     * @param threadFactory the factory or {@code null} to use the default threads
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    private ThreadFactory resolveThreadFactory() {
+        if (threadFactory != null) {
+            return threadFactory;
+        }
+        if (config.isVirtualThreads()) {
+            ThreadFactory virtualThreadFactory = newVirtualThreadFactory();
+            if (virtualThreadFactory != null) {
+                return virtualThreadFactory;
+            }
+            logger.warn("Virtual threads require Java 21 or newer, falling back to platform threads.");
+        }
+        return Thread::new;
+    }
+
+    private static Thread newCrawlerThread(ThreadFactory threadFactory, Runnable crawler, int id) {
+        Thread thread = threadFactory.newThread(crawler);
+        thread.setName("Crawler " + id);
+        return thread;
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} for virtual threads. Looked up reflectively, as crawler4j
+     * is still compiled for Java 11.
+     *
+     * @return the factory or {@code null} if the running JVM does not support virtual threads
+     */
+    public static ThreadFactory newVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory")
+                    .invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
     public RobotstxtServer getRobotstxtServer() {
         return robotstxtServer;
     }
@@ -579,6 +691,12 @@ public class CrawlController {
 
     public void setFrontier(Frontier frontier) {
         this.frontier = frontier;
+        this.retryScheduler.shutDown();
+        this.retryScheduler = new RetryScheduler(config, frontier);
+    }
+
+    public RetryScheduler getRetryScheduler() {
+        return retryScheduler;
     }
 
     public DocIDServer getDocIdServer() {
@@ -605,7 +723,9 @@ public class CrawlController {
     public void shutdown() {
         logger.info("Shutting down...");
         this.shuttingDown = true;
-        pageFetcher.shutDown();
+        shutDownPageFetchers();
+        retryScheduler.shutDown();
+        robotstxtServer.shutDown();
         frontier.finish();
     }
 
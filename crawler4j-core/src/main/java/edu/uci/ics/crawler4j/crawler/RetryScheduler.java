@@ -0,0 +1,274 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.crawler;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.frontier.Frontier;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Schedules urls whose fetch failed transiently (429, 5xx, connect and socket timeouts) to be
+ * fetched again. The delay of a retry is taken from the "Retry-After" header of the response if
+ * present, otherwise it grows exponentially with the number of attempts, starting at
+ * {@link CrawlConfig#getRetryDelay()}. Both are bounded by {@link CrawlConfig#getMaxRetryDelay()}.
+ * A url is given up after {@link CrawlConfig#getMaxRetries()} retries.
+ * <p>
+ * A "Retry-After" header also pauses the host of the url: urls of a paused host are not fetched
+ * but put aside until the pause ends.
+ * <p>
+ * Urls waiting for their retry are kept in memory and handed back to the {@link Frontier} once
+ * their delay has elapsed. If the crawl is shut down before, they are handed back right away when
+ * the crawl is resumable, so that the resumed crawl fetches them without their delay. They are
+ * lost if the process dies in between.
+ */
+public class RetryScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+    public static final long NO_RETRY = -1;
+
+    private final CrawlConfig config;
+    private final Frontier frontier;
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final Map<String, Long> pausedHosts = new ConcurrentHashMap<>();
+    private final Map<String, WebURL> pendingRetries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    public RetryScheduler(CrawlConfig config, Frontier frontier) {
+        this.config = config;
+        this.frontier = frontier;
+        this.executor = config.getMaxRetries() > 0 ? newExecutor() : null;
+    }
+
+    /**
+     * Decides whether a url which has been answered with the given status code is retried, and
+     * pauses its host if the response asks for it.
+     *
+     * @param url             the fetched url
+     * @param statusCode      the status code of the response
+     * @param responseHeaders the headers of the response, may be {@code null}
+     * @return the delay in ms after which to retry the url or {@link #NO_RETRY}
+     */
+    public long onFailure(WebURL url, int statusCode, Header[] responseHeaders) {
+        if (!isRetryable(statusCode)) {
+            return NO_RETRY;
+        }
+        final long retryAfter = getRetryAfter(responseHeaders);
+        if (retryAfter >= 0) {
+            pauseHost(url, retryAfter);
+        }
+        return nextAttempt(url, retryAfter);
+    }
+
+    /**
+     * Decides whether a url whose fetch failed with the given exception is retried.
+     *
+     * @param url the fetched url
+     * @param e   the exception the fetch failed with
+     * @return the delay in ms after which to retry the url or {@link #NO_RETRY}
+     */
+    public long onFailure(WebURL url, Exception e) {
+        return isRetryable(e) ? nextAttempt(url, -1) : NO_RETRY;
+    }
+
+    /**
+     * Forgets the failed attempts of the given url, once it has been fetched or given up.
+     */
+    public void reset(WebURL url) {
+        if (!attempts.isEmpty()) {
+            attempts.remove(url.getURL());
+        }
+    }
+
+    /**
+     * @return the remaining time in ms the host of the given url is paused, or 0
+     */
+    public long getHostPause(WebURL url) {
+        if (pausedHosts.isEmpty()) {
+            return 0;
+        }
+        final String host = PolitenessServer.hostOf(url);
+        if (host == null) {
+            return 0;
+        }
+        final Long until = pausedHosts.get(host);
+        if (until == null) {
+            return 0;
+        }
+        final long pause = until - System.currentTimeMillis();
+        if (pause <= 0) {
+            pausedHosts.remove(host, until);
+            return 0;
+        }
+        return pause;
+    }
+
+    /**
+     * Hands the given url back to the frontier after the given delay. The url must have been
+     * marked as processed before; it is rescheduled, so it does not count against
+     * {@link CrawlConfig#getMaxPagesToFetch()} again.
+     */
+    public void schedule(WebURL url, long delay) {
+        if (executor == null) {
+            throw new IllegalStateException("Retries are disabled");
+        }
+        pendingRetries.put(url.getURL(), url);
+        try {
+            executor.schedule(() -> {
+                // whoever removes the url, this task or shutDown(), hands it back
+                if (pendingRetries.remove(url.getURL(), url)) {
+                    frontier.reschedule(url);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            pendingRetries.remove(url.getURL(), url);
+            logger.warn("Could not schedule the retry of {}: {}", url.getURL(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of urls waiting for their retry
+     */
+    public int getPendingRetries() {
+        return pendingRetries.size();
+    }
+
+    /**
+     * Stops the scheduler. Urls still waiting for their retry are handed back to the frontier
+     * right away if the crawl is resumable, so they are not lost. Must be called before the
+     * frontier is closed.
+     */
+    public void shutDown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        if (!config.isResumableCrawling()) {
+            pendingRetries.clear();
+            return;
+        }
+        for (WebURL url : pendingRetries.values()) {
+            if (pendingRetries.remove(url.getURL(), url)) {
+                try {
+                    frontier.reschedule(url);
+                } catch (RuntimeException e) {
+                    logger.warn("Could not hand back the retry of {}: {}", url.getURL(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if a response with the given status code is worth to be retried
+     */
+    protected boolean isRetryable(int statusCode) {
+        return statusCode == HttpStatus.SC_TOO_MANY_REQUESTS || statusCode >= HttpStatus.SC_SERVER_ERROR;
+    }
+
+    /**
+     * @return {@code true} if a fetch failed with the given exception is worth to be retried
+     */
+    protected boolean isRetryable(Exception e) {
+        return e instanceof SocketTimeoutException || e instanceof ConnectException ||
+                e instanceof ConnectTimeoutException || e instanceof NoHttpResponseException;
+    }
+
+    private long nextAttempt(WebURL url, long retryAfter) {
+        if (config.getMaxRetries() <= 0) {
+            return NO_RETRY;
+        }
+        final int attempt = attempts.merge(url.getURL(), 1, Integer::sum);
+        if (attempt > config.getMaxRetries()) {
+            attempts.remove(url.getURL());
+            logger.debug("Giving up {} after {} retries", url.getURL(), config.getMaxRetries());
+            return NO_RETRY;
+        }
+        final long delay;
+        if (retryAfter >= 0) {
+            delay = Math.min(retryAfter, config.getMaxRetryDelay());
+        } else {
+            // the shift is bounded to keep the backoff within a long
+            final long backoff = (long) config.getRetryDelay() << Math.min(attempt - 1, 31);
+            delay = Math.min(backoff, config.getMaxRetryDelay());
+        }
+        logger.debug("Retrying {} in {} ms (attempt {} of {})", url.getURL(), delay, attempt, config.getMaxRetries());
+        return delay;
+    }
+
+    private void pauseHost(WebURL url, long pause) {
+        final String host = PolitenessServer.hostOf(url);
+        if (host != null && config.getMaxRetries() > 0) {
+            final long until = System.currentTimeMillis() + Math.min(pause, config.getMaxRetryDelay());
+            pausedHosts.merge(host, until, Math::max);
+            logger.info("Pausing host {} for {} ms as requested by its Retry-After header", host, until - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the "Retry-After" of the given headers in ms or -1 if there is none
+     */
+    private static long getRetryAfter(Header[] responseHeaders) {
+        if (responseHeaders == null) {
+            return -1;
+        }
+        for (Header header : responseHeaders) {
+            if (HttpHeaders.RETRY_AFTER.equalsIgnoreCase(header.getName()) && header.getValue() != null) {
+                final String value = header.getValue().trim();
+                try {
+                    return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+                } catch (NumberFormatException e) {
+                    final Instant date = DateUtils.parseStandardDate(value);
+                    if (date != null) {
+                        return Math.max(0, date.toEpochMilli() - System.currentTimeMillis());
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static ScheduledExecutorService newExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Crawler retry scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -21,9 +21,18 @@ package edu.uci.ics.crawler4j.crawler;
 
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.impl.EnglishReasonPhraseCatalog;
@@ -32,8 +41,10 @@ import org.slf4j.LoggerFactory;
 
 import edu.uci.ics.crawler4j.crawler.exceptions.ContentFetchException;
 import edu.uci.ics.crawler4j.crawler.exceptions.PageBiggerThanMaxSizeException;
+import edu.uci.ics.crawler4j.fetcher.AsyncPageFetcher;
 import edu.uci.ics.crawler4j.fetcher.PageFetchResult;
 import edu.uci.ics.crawler4j.fetcher.PageFetcher;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
 import edu.uci.ics.crawler4j.frontier.DocIDServer;
 import edu.uci.ics.crawler4j.frontier.Frontier;
 import edu.uci.ics.crawler4j.parser.HtmlParseData;
@@ -78,6 +89,11 @@ public class WebCrawler implements Runnable {
      */
     private PageFetcher pageFetcher;
 
+    /**
+     * The {@link AsyncPageFetcher} of the controller, {@code null} if pages are fetched blocking.
+     */
+    private AsyncPageFetcher asyncPageFetcher;
+
     /**
      * The RobotstxtServer instance that is used by this crawler instance to
      * determine whether the crawler is allowed to crawl the content of each page.
@@ -94,6 +110,11 @@ public class WebCrawler implements Runnable {
      */
     private Frontier frontier;
 
+    /**
+     * Schedules urls whose fetch failed transiently to be fetched again.
+     */
+    private RetryScheduler retryScheduler;
+
     /**
      * Is the current crawler instance waiting for new URLs? This field is
      * mainly used by the controller to detect whether all of the crawler
@@ -115,13 +136,17 @@ public class WebCrawler implements Runnable {
     public void init(int id, CrawlController crawlController) {
         this.myId = id;
         this.pageFetcher = crawlController.getPageFetcher();
+        this.asyncPageFetcher = crawlController.getAsyncPageFetcher();
         this.robotstxtServer = crawlController.getRobotstxtServer();
         this.docIdServer = crawlController.getDocIdServer();
         this.frontier = crawlController.getFrontier();
+        this.retryScheduler = crawlController.getRetryScheduler();
         this.parser = crawlController.getParser();
         this.myController = crawlController;
         this.isWaitingForNewURLs = false;
-        this.batchReadSize = crawlController.getConfig().getBatchReadSize();
+        this.batchReadSize = asyncPageFetcher == null
+                ? crawlController.getConfig().getBatchReadSize()
+                : crawlController.getConfig().getMaxConcurrentFetchesPerCrawler();
     }
 
     /**
@@ -308,6 +333,11 @@ public class WebCrawler implements Runnable {
                     } catch (InterruptedException e) {
                         logger.error("Error occurred", e);
                     }
+                } else if (asyncPageFetcher != null) {
+                    if (!processPagesAsync(assignedURLs)) {
+                        logger.info("Exiting because of controller shutdown.");
+                        return;
+                    }
                 } else {
                     for (WebURL curURL : assignedURLs) {
                         if (myController.isShuttingDown()) {
@@ -316,10 +346,9 @@ public class WebCrawler implements Runnable {
                         }
                         if (curURL != null) {
                             curURL = handleUrlBeforeProcess(curURL);
-                            if (curURL != null) {
-                                final boolean processedSuccess = processPage(curURL);
-                                // TODO set the processed status from SCHEDULED to COMPLETED or IN_ERROR
-                                frontier.setProcessed(curURL);
+                            if (curURL != null && !deferIfHostPaused(curURL)) {
+                                final WebURL toFetch = curURL;
+                                processPage(toFetch, () -> pageFetcher.fetchPage(toFetch));
                             }
                         }
                     }
@@ -390,12 +419,70 @@ public class WebCrawler implements Runnable {
     }
 
 		/**
+		 * Fires the fetches of all given urls at once and processes the pages on this thread in
+		 * the order their responses arrive. Returns only once every fetch has been processed, so
+		 * that no new urls are requested from the frontier while fetches are still in flight.
+		 *
+		 * @param assignedURLs the urls assigned to this crawler
+		 * @return false if the crawl has been shut down before all pages were processed
+		 */
+		private boolean processPagesAsync(final List<WebURL> assignedURLs) throws InterruptedException {
+			final BlockingQueue<Map.Entry<WebURL, CompletableFuture<PageFetchResult>>> done = new LinkedBlockingQueue<>();
+			final List<CompletableFuture<PageFetchResult>> inFlight = new ArrayList<>(assignedURLs.size());
+			for (WebURL assignedURL : assignedURLs) {
+				final WebURL curURL = assignedURL == null ? null : handleUrlBeforeProcess(assignedURL);
+				if (curURL != null && !deferIfHostPaused(curURL)) {
+					final CompletableFuture<PageFetchResult> future = asyncPageFetcher.fetchPage(curURL);
+					future.whenComplete((result, t) -> done.add(new AbstractMap.SimpleImmutableEntry<>(curURL, future)));
+					inFlight.add(future);
+				}
+			}
+
+			int pending = inFlight.size();
+			while (pending > 0) {
+				if (myController.isShuttingDown()) {
+					inFlight.forEach(future -> future.cancel(true));
+					return false;
+				}
+				final Map.Entry<WebURL, CompletableFuture<PageFetchResult>> next = done.poll(1, TimeUnit.SECONDS);
+				if (next != null) {
+					pending--;
+					processPage(next.getKey(), () -> AsyncPageFetcher.await(next.getValue()));
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Puts the given url aside until the pause of its host, requested by a "Retry-After"
+		 * header, has ended.
+		 *
+		 * @return true if the url has been deferred, false if it can be fetched now
+		 */
+		private boolean deferIfHostPaused(final WebURL curURL) {
+			final long pause = retryScheduler.getHostPause(curURL);
+			if (pause <= 0) {
+				return false;
+			}
+			logger.debug("Deferring {} for {} ms as its host is paused", curURL.getURL(), pause);
+			frontier.setProcessed(curURL);
+			retryScheduler.schedule(curURL, pause);
+			return true;
+		}
+
+		/**
+		 * Fetches and processes the given url and marks it as processed in the frontier. If the
+		 * fetch failed transiently, the url is scheduled to be retried afterwards.
+		 *
 		 * @param curURL not null
+		 * @param fetch  fetches the given url
 		 * @return true if processed correctly, false otherwise
 		 */
-		private boolean processPage(final WebURL curURL) {
+		private boolean processPage(final WebURL curURL, final Callable<PageFetchResult> fetch) {
+			long retryDelay = RetryScheduler.NO_RETRY;
+			boolean processedSuccess = false;
 			final Page page = new Page(curURL);
-			try (PageFetchResult fetchResult = pageFetcher.fetchPage(curURL)) {
+			try (PageFetchResult fetchResult = fetch.call()) {
 				int statusCode = fetchResult.getStatusCode();
 				
 				handlePageStatusCode(curURL, statusCode,
@@ -416,27 +503,43 @@ public class WebCrawler implements Runnable {
 							|| statusCode == HttpStatus.SC_PERMANENT_REDIRECT //
 					) { // is 3xx  todo
 						// follow https://issues.apache.org/jira/browse/HTTPCORE-389
-						return processFetchResultRedirect(fetchResult, page);
+						processedSuccess = processFetchResultRedirect(fetchResult, page);
 					} else { // All other http codes other than 3xx & 200
-						String description = EnglishReasonPhraseCatalog.INSTANCE.getReason(//
-								fetchResult.getStatusCode(), Locale.ENGLISH); // Finds the status reason for all known statuses
-						String contentType = fetchResult.getEntity() == null ? "" //
-								: fetchResult.getEntity().getContentType() == null ? "" //
-										: fetchResult.getEntity().getContentType();
-						onUnexpectedStatusCode(curURL.getURL(), fetchResult.getStatusCode(), contentType, description);
-						return false;
+						retryDelay = retryScheduler.onFailure(curURL, statusCode, fetchResult.getResponseHeaders());
+						if (retryDelay == RetryScheduler.NO_RETRY) {
+							String description = EnglishReasonPhraseCatalog.INSTANCE.getReason(//
+									fetchResult.getStatusCode(), Locale.ENGLISH); // Finds the status reason for all known statuses
+							String contentType = fetchResult.getEntity() == null ? "" //
+									: fetchResult.getEntity().getContentType() == null ? "" //
+											: fetchResult.getEntity().getContentType();
+							onUnexpectedStatusCode(curURL.getURL(), fetchResult.getStatusCode(), contentType, description);
+						}
 					}
 				} else { // if status code is 200
-					return handleFetchResultSuccess(fetchResult, page);
+					processedSuccess = handleFetchResultSuccess(fetchResult, page);
 				}
 			} catch (PageBiggerThanMaxSizeException e) {
 				onPageBiggerThanMaxSize(page, e.getPageSize());
 			} catch (ContentFetchException | SocketTimeoutException cfe) {
-				onContentFetchError(page, cfe);
+				retryDelay = retryScheduler.onFailure(curURL, cfe);
+				if (retryDelay == RetryScheduler.NO_RETRY) {
+					onContentFetchError(page, cfe);
+				}
 			} catch (Exception e) {
-				onUnhandledException(page, e);
+				retryDelay = retryScheduler.onFailure(curURL, e);
+				if (retryDelay == RetryScheduler.NO_RETRY) {
+					onUnhandledException(page, e);
+				}
+			}
+
+			// TODO set the processed status from SCHEDULED to COMPLETED or IN_ERROR
+			frontier.setProcessed(curURL);
+			if (retryDelay == RetryScheduler.NO_RETRY) {
+				retryScheduler.reset(curURL);
+			} else {
+				retryScheduler.schedule(curURL, retryDelay);
 			}
-			return false;
+			return processedSuccess;
 		}
 
 		private boolean handleFetchResultSuccess(final PageFetchResult fetchResult, final Page page)
@@ -491,26 +594,38 @@ public class WebCrawler implements Runnable {
 		private void scheduleOutgoingUrls(WebURL curURL, Page page)
 				throws InterruptedException
 		{
-			List<WebURL> toSchedule = new ArrayList<>();
+			Set<WebURL> outgoingUrls = page.getParseData().getOutgoingUrls();
+			if (outgoingUrls.isEmpty()) {
+				return;
+			}
+			List<WebURL> links = new ArrayList<>(outgoingUrls);
+			List<String> urls = new ArrayList<>(links.size());
+			for (WebURL webURL : links) {
+				urls.add(webURL.getURL());
+			}
+			// one batch lookup for the whole outlink set instead of one round trip per link
+			int[] docIds = docIdServer.getDocIds(urls);
+
+			List<WebURL> allowed = new ArrayList<>();
 			int maxCrawlDepth = myController.getConfig().getMaxDepthOfCrawling();
-			for (WebURL webURL : page.getParseData().getOutgoingUrls()) {
+			for (int i = 0; i < links.size(); i++) {
+				WebURL webURL = links.get(i);
 				webURL.setParentDocid(curURL.getDocid());
 				webURL.setParentUrl(curURL.getURL());
-				int newdocid = docIdServer.getDocId(webURL.getURL());
-				if (newdocid > 0) {
+				if (docIds[i] > 0) {
 					// This is not the first time that this Url is visited. So, we set the
 					// depth to a negative number.
 					webURL.setDepth((short) -1);
-					webURL.setDocid(newdocid);
+					webURL.setDocid(docIds[i]);
 				} else {
 					webURL.setDocid(-1);
 					webURL.setDepth((short) (curURL.getDepth() + 1));
 					if (maxCrawlDepth == -1 || curURL.getDepth() < maxCrawlDepth) {
 						if (shouldVisit(page, webURL)) {
-							if (robotstxtServer.allows(webURL)) {
-								webURL.setDocid(docIdServer.getNewDocID(webURL.getURL()));
-								toSchedule.add(webURL);
-							} else {
+							RobotstxtServer.Decision decision = robotstxtServer.allowsOrPark(webURL, this::scheduleParkedUrl);
+							if (decision == RobotstxtServer.Decision.ALLOWED) {
+								allowed.add(webURL);
+							} else if (decision == RobotstxtServer.Decision.DISALLOWED) {
 								logger.debug("Not visiting: {} as per the server's \"robots.txt\" " + "policy", webURL.getURL());
 							}
 						} else {
@@ -519,9 +634,42 @@ public class WebCrawler implements Runnable {
 					}
 				}
 			}
+			if (allowed.isEmpty()) {
+				return;
+			}
+
+			urls.clear();
+			for (WebURL webURL : allowed) {
+				urls.add(webURL.getURL());
+			}
+			List<DocIDAssignment> assignments = docIdServer.getOrCreateDocIds(urls);
+			List<WebURL> toSchedule = new ArrayList<>(allowed.size());
+			for (int i = 0; i < allowed.size(); i++) {
+				WebURL webURL = allowed.get(i);
+				DocIDAssignment assignment = assignments.get(i);
+				webURL.setDocid(assignment.getDocId());
+				if (assignment.isNew()) {
+					toSchedule.add(webURL);
+				} else {
+					// another crawler has scheduled it since the lookup
+					webURL.setDepth((short) -1);
+				}
+			}
 			frontier.scheduleAll(toSchedule);
 		}
 
+		/**
+		 * Schedules an outgoing url, which has been parked until the robots.txt of its host was
+		 * fetched, unless it has been scheduled meanwhile.
+		 */
+		private void scheduleParkedUrl(WebURL webURL) {
+			DocIDAssignment assignment = docIdServer.getOrCreateDocIds(Collections.singletonList(webURL.getURL())).get(0);
+			if (assignment.isNew()) {
+				webURL.setDocid(assignment.getDocId());
+				frontier.schedule(webURL);
+			}
+		}
+
 		private boolean hasMetaRobotsNoindex(Page page) {
 			return page.getContentType() != null //
 					&& page.getContentType().contains("html") //
@@ -0,0 +1,527 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.fetcher;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.Credentials;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.HostnameVerificationPolicy;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.ByteArrayBuffer;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import crawlercommons.filters.basic.BasicURLNormalizer;
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.crawler.authentication.AuthInfo;
+import edu.uci.ics.crawler4j.crawler.authentication.CredentialsProvider;
+import edu.uci.ics.crawler4j.crawler.exceptions.PageBiggerThanMaxSizeException;
+import edu.uci.ics.crawler4j.fetcher.politeness.CachedPolitenessServer;
+import edu.uci.ics.crawler4j.url.UrlResolver;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Non-blocking counterpart of {@link PageFetcher} built on top of httpclient5's
+ * {@link CloseableHttpAsyncClient}. Each call to {@link #fetchPage(WebURL)} returns immediately,
+ * so a single thread can keep many requests in flight. Politeness delays are applied by
+ * scheduling the request for later instead of sleeping on the calling thread.
+ * <p>
+ * If {@link CrawlConfig#isHttp2Enabled()} is set, HTTP/2 is negotiated with https hosts and all
+ * requests to the same host are multiplexed over a single connection. As the connection pool no
+ * longer limits the requests per host then, at most {@link CrawlConfig#getMaxConnectionsPerHost()}
+ * requests per host are in flight at a time, further ones wait for a stream to become free.
+ * <p>
+ * The response body is buffered in memory (up to {@link CrawlConfig#getMaxDownloadSize()}) and
+ * exposed through the usual {@link PageFetchResult}, so fetched pages are processed exactly like
+ * the ones returned by the blocking {@link PageFetcher}.
+ */
+public class AsyncPageFetcher {
+    protected static final Logger logger = LoggerFactory.getLogger(AsyncPageFetcher.class);
+    protected CrawlConfig config;
+    protected BasicURLNormalizer normalizer;
+    protected PolitenessServer politenessServer;
+    protected PoolingAsyncClientConnectionManager connectionManager;
+    protected CloseableHttpAsyncClient httpClient;
+
+    /*
+     * in-flight streams per host if HTTP/2 is enabled, null otherwise; hosts without requests in
+     * flight are removed
+     */
+    private final Map<String, HostStreams> hostStreams;
+
+    public AsyncPageFetcher(CrawlConfig config, BasicURLNormalizer normalizer) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+        this(config, normalizer, new CachedPolitenessServer(config));
+    }
+
+    /**
+     * @param politenessServer pass the politeness server of the blocking {@link PageFetcher}
+     *                         (e.g. the one used for robots.txt) to share politeness between both.
+     */
+    public AsyncPageFetcher(CrawlConfig config, BasicURLNormalizer normalizer, PolitenessServer politenessServer) throws NoSuchAlgorithmException, KeyManagementException, KeyStoreException {
+        this.config = config;
+        this.normalizer = normalizer;
+        this.politenessServer = politenessServer;
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setExpectContinueEnabled(false)
+                .setCookieSpec(config.getCookiePolicy())
+                .setRedirectsEnabled(false)
+                .setResponseTimeout(Timeout.ofMilliseconds(config.getSocketTimeout()))
+                .build();
+
+        PoolingAsyncClientConnectionManagerBuilder connectionManagerBuilder =
+                PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setDnsResolver(config.getDnsResolver())
+                        .setMaxConnTotal(config.getMaxTotalConnections())
+                        .setMaxConnPerRoute(config.getMaxConnectionsPerHost())
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectionTimeout()))
+                                .setSocketTimeout(Timeout.ofMilliseconds(config.getSocketTimeout()))
+                                .build());
+        if (config.isIncludeHttpsPages()) {
+            try {
+                // Same as the blocking fetcher: always trust the ssl certificate
+                SSLContext sslContext =
+                        SSLContexts.custom().loadTrustMaterial(null, (chain, authType) -> true).build();
+                connectionManagerBuilder.setTlsStrategy(ClientTlsStrategyBuilder.create()
+                        .setSslContext(sslContext)
+                        // otherwise JSSE verifies the host name during the handshake
+                        .setHostVerificationPolicy(HostnameVerificationPolicy.CLIENT)
+                        .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                        .buildAsync());
+            } catch (NoSuchAlgorithmException | KeyManagementException | KeyStoreException | RuntimeException e) {
+                if (config.isHaltOnError()) {
+                    throw e;
+                } else {
+                    logger.warn("Exception thrown while trying to register https");
+                    logger.debug("Stacktrace", e);
+                }
+            }
+        }
+        if (config.isHttp2Enabled()) {
+            // Negotiate h2 via ALPN (falling back to HTTP/1.1) and share one connection per host
+            connectionManagerBuilder.setDefaultTlsConfig(TlsConfig.custom()
+                    .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                    .build());
+            connectionManagerBuilder.setMessageMultiplexing(true);
+        } else {
+            connectionManagerBuilder.setDefaultTlsConfig(TlsConfig.custom()
+                    .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                    .build());
+        }
+        connectionManager = connectionManagerBuilder.build();
+
+        HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom();
+        if (config.getCookieStore() != null) {
+            clientBuilder.setDefaultCookieStore(config.getCookieStore());
+        }
+        clientBuilder.setDefaultRequestConfig(requestConfig);
+        clientBuilder.setConnectionManager(connectionManager);
+        if (config.isHttp2Enabled()) {
+            clientBuilder.setH2Config(H2Config.custom()
+                    .setPushEnabled(false)
+                    .build());
+            hostStreams = new ConcurrentHashMap<>();
+        } else {
+            hostStreams = null;
+        }
+        clientBuilder.setIOReactorConfig(IOReactorConfig.custom()
+                .setSoTimeout(Timeout.ofMilliseconds(config.getSocketTimeout()))
+                .build());
+        clientBuilder.setUserAgent(config.getUserAgentString());
+        clientBuilder.setDefaultHeaders(config.getDefaultHeaders());
+
+        Map<AuthScope, Credentials> credentialsMap = new HashMap<>();
+        if (config.getProxyHost() != null) {
+            if (config.getProxyUsername() != null) {
+                AuthScope authScope = new AuthScope(config.getProxyHost(), config.getProxyPort());
+                Credentials credentials = new UsernamePasswordCredentials(config.getProxyUsername(),
+                        config.getProxyPassword().toCharArray());
+                credentialsMap.put(authScope, credentials);
+            }
+
+            HttpHost proxy = new HttpHost(config.getProxyHost(), config.getProxyPort());
+            clientBuilder.setProxy(proxy);
+            logger.debug("Working through Proxy: {}", proxy.getHostName());
+        }
+
+        List<AuthInfo> authInfos = config.getAuthInfos();
+        if (authInfos != null) {
+            for (AuthInfo authInfo : authInfos) {
+                if (authInfo instanceof CredentialsProvider) {
+                    CredentialsProvider credentialsProvider = (CredentialsProvider) authInfo;
+                    credentialsProvider.addCredentials(credentialsMap);
+                } else if (AuthInfo.AuthenticationType.FORM_AUTHENTICATION.equals(authInfo.getAuthenticationType())) {
+                    // Form login needs a classic client; share its cookies through CrawlConfig#setCookieStore
+                    logger.warn("Form authentication is not performed by the AsyncPageFetcher: {}", authInfo.getLoginTarget());
+                }
+            }
+        }
+        if (!credentialsMap.isEmpty()) {
+            BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsMap.forEach(credentialsProvider::setCredentials);
+            clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+
+        httpClient = clientBuilder.build();
+        httpClient.start();
+    }
+
+    /**
+     * Fetches the given url without blocking the calling thread.
+     *
+     * @param webUrl the url to fetch
+     * @return a future completed with the fetch result, or exceptionally with the same exceptions
+     * {@link PageFetcher#fetchPage(WebURL)} would throw (e.g. {@link PageBiggerThanMaxSizeException}
+     * or {@link java.net.SocketTimeoutException}).
+     */
+    public CompletableFuture<PageFetchResult> fetchPage(WebURL webUrl) {
+        final long politenessDelay = politenessServer.applyPoliteness(webUrl);
+        if (politenessDelay != PolitenessServer.NO_POLITENESS_APPLIED) {
+            return CompletableFuture.runAsync(() -> {
+                    }, CompletableFuture.delayedExecutor(politenessDelay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> execute(webUrl));
+        }
+        return execute(webUrl);
+    }
+
+    protected CompletableFuture<PageFetchResult> execute(WebURL webUrl) {
+        final String toFetchURL = webUrl.getURL();
+        final CompletableFuture<PageFetchResult> result = new CompletableFuture<>();
+        final SimpleHttpRequest request;
+        try {
+            request = newHttpRequest(toFetchURL);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        if (hostStreams == null) {
+            send(webUrl, request, result);
+            return result;
+        }
+        final String host = request.getScheme() + "://" + request.getAuthority();
+        acquireStream(host, () -> {
+            if (result.isDone()) {
+                // cancelled while waiting for a stream
+                releaseStream(host);
+            } else {
+                result.whenComplete((r, t) -> releaseStream(host));
+                send(webUrl, request, result);
+            }
+        });
+        return result;
+    }
+
+    private void send(WebURL webUrl, SimpleHttpRequest request, CompletableFuture<PageFetchResult> result) {
+        final String toFetchURL = webUrl.getURL();
+        final long start = System.currentTimeMillis();
+        final FutureCallback<SimpleHttpResponse> callback = new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                if (result.isDone()) {
+                    // already completed by the consumer, which cut the response short
+                    return;
+                }
+                politenessServer.onResponse(webUrl, System.currentTimeMillis() - start, response.getCode());
+                try {
+                    result.complete(toFetchResult(toFetchURL, request, response));
+                } catch (URISyntaxException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                if (result.isDone()) {
+                    return;
+                }
+                if (!(ex instanceof PageBiggerThanMaxSizeException)) {
+                    politenessServer.onFailure(webUrl, System.currentTimeMillis() - start, ex);
+                }
+                result.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        };
+        final Future<SimpleHttpResponse> exchange = httpClient.execute(SimpleRequestProducer.create(request),
+                new BoundedResponseConsumer(config.getMaxDownloadSize(), callback), callback);
+        // a result completed before the response has been read entirely stops the download
+        result.whenComplete((r, t) -> exchange.cancel(true));
+    }
+
+    /*
+     * runs the given request right away if the host has a free stream, otherwise as soon as one
+     * of its requests completes
+     */
+    private void acquireStream(String host, Runnable request) {
+        boolean[] acquired = new boolean[1];
+        hostStreams.compute(host, (key, streams) -> {
+            if (streams == null) {
+                streams = new HostStreams();
+            }
+            if (streams.inFlight < config.getMaxConnectionsPerHost()) {
+                streams.inFlight++;
+                acquired[0] = true;
+            } else {
+                streams.waiting.add(request);
+            }
+            return streams;
+        });
+        if (acquired[0]) {
+            request.run();
+        }
+    }
+
+    private void releaseStream(String host) {
+        Runnable[] next = new Runnable[1];
+        hostStreams.computeIfPresent(host, (key, streams) -> {
+            next[0] = streams.waiting.poll();
+            if (next[0] == null && --streams.inFlight == 0) {
+                return null;
+            }
+            return streams;
+        });
+        if (next[0] != null) {
+            // the stream is handed over to the next request
+            next[0].run();
+        }
+    }
+
+    private PageFetchResult toFetchResult(String toFetchURL, SimpleHttpRequest request, SimpleHttpResponse response)
+            throws URISyntaxException {
+        PageFetchResult fetchResult = new PageFetchResult(config.isHaltOnError());
+        Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        ContentType contentType = response.getBody() == null ? null : response.getBody().getContentType();
+        byte[] body = response.getBodyBytes() == null ? new byte[0] : response.getBodyBytes();
+        fetchResult.setEntity(new ByteArrayEntity(body, contentType,
+                contentEncoding == null ? null : contentEncoding.getValue()));
+        fetchResult.setResponseHeaders(response.getHeaders());
+
+        int statusCode = response.getCode();
+        if (statusCode == HttpStatus.SC_MOVED_PERMANENTLY ||
+                statusCode == HttpStatus.SC_MOVED_TEMPORARILY ||
+                statusCode == HttpStatus.SC_MULTIPLE_CHOICES ||
+                statusCode == HttpStatus.SC_SEE_OTHER ||
+                statusCode == HttpStatus.SC_TEMPORARY_REDIRECT ||
+                statusCode == HttpStatus.SC_PERMANENT_REDIRECT) {
+            Header header = response.getFirstHeader(HttpHeaders.LOCATION);
+            if (header != null) {
+                String movedToUrl = normalizer.filter(UrlResolver.resolveUrl(toFetchURL, header.getValue()));
+                fetchResult.setMovedToUrl(movedToUrl);
+            }
+        } else if (statusCode >= 200 && statusCode <= 299) {
+            fetchResult.setFetchedUrl(toFetchURL);
+            String uri = request.getUri().toString();
+            if (!uri.equals(toFetchURL)) {
+                if (!normalizer.filter(uri).equals(toFetchURL)) {
+                    fetchResult.setFetchedUrl(uri);
+                }
+            }
+        }
+
+        fetchResult.setStatusCode(statusCode);
+        return fetchResult;
+    }
+
+    /**
+     * Waits for the given fetch and unwraps the exception it failed with, so that callers can
+     * handle it like an exception thrown by {@link PageFetcher#fetchPage(WebURL)}.
+     */
+    public static PageFetchResult await(CompletableFuture<PageFetchResult> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public synchronized void shutDown() {
+        httpClient.close(CloseMode.GRACEFUL);
+        connectionManager.close(CloseMode.GRACEFUL);
+    }
+
+    /**
+     * Creates a new request for the given url. The default is to create a GET request without
+     * any further configuration. Subclasses may override this method and provide their own logic.
+     *
+     * @param url the url to be fetched
+     * @return the request for the given url
+     */
+    protected SimpleHttpRequest newHttpRequest(String url) {
+        return SimpleRequestBuilder.get(url).build();
+    }
+
+    protected CrawlConfig getConfig() {
+        return config;
+    }
+
+    public PolitenessServer getPolitenessServer() {
+        return politenessServer;
+    }
+
+    public void setPolitenessServer(PolitenessServer politenessServer) {
+        this.politenessServer = politenessServer;
+    }
+
+    private static final class HostStreams {
+        private int inFlight;
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+    }
+
+    /**
+     * Buffers the response body in memory. At most one byte more than the maximum download size
+     * is kept, so that {@link edu.uci.ics.crawler4j.crawler.Page#load} marks the page as
+     * truncated. Responses announcing a larger size fail the fetch right away, all others
+     * complete it as soon as this byte has been received. Either way the consumer stops reading
+     * and the exchange is cancelled by the completed fetch.
+     */
+    private static final class BoundedResponseConsumer extends AbstractBinResponseConsumer<SimpleHttpResponse> {
+
+        private final int maxBytes;
+        private final FutureCallback<SimpleHttpResponse> callback;
+        private SimpleHttpResponse response;
+        private ContentType contentType;
+        private ByteArrayBuffer buffer;
+        private volatile boolean done;
+
+        BoundedResponseConsumer(int maxBytes, FutureCallback<SimpleHttpResponse> callback) {
+            this.maxBytes = maxBytes;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) throws HttpException, IOException {
+            this.response = SimpleHttpResponse.copy(response);
+            this.contentType = contentType;
+            this.buffer = new ByteArrayBuffer(4096);
+
+            int statusCode = response.getCode();
+            if (statusCode >= 200 && statusCode <= 299) {
+                Header length = response.getLastHeader(HttpHeaders.CONTENT_LENGTH);
+                if (length != null) {
+                    try {
+                        long size = Long.parseLong(length.getValue().trim());
+                        if (size > maxBytes) {
+                            done = true;
+                            callback.failed(new PageBiggerThanMaxSizeException(size));
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // size will be checked while reading the content
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return done ? 0 : Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+            if (done) {
+                src.position(src.limit());
+                return;
+            }
+            int remaining = maxBytes + 1 - buffer.length();
+            if (src.remaining() < remaining) {
+                buffer.append(src);
+                return;
+            }
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + remaining);
+            buffer.append(slice);
+            src.position(src.limit());
+            if (!endOfStream) {
+                // enough to detect the truncation, the rest is not downloaded
+                done = true;
+                callback.completed(buildResult());
+            }
+        }
+
+        @Override
+        protected SimpleHttpResponse buildResult() {
+            response.setBody(buffer.toByteArray(), contentType);
+            return response;
+        }
+
+        @Override
+        public void releaseResources() {
+            buffer = null;
+        }
+    }
+}
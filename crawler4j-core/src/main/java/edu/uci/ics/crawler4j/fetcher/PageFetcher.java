@@ -193,12 +193,20 @@ public class PageFetcher {
                 Thread.sleep(politenessDelay);
             }
 
-            CloseableHttpResponse response = httpClient.execute(request);
+            final long start = System.currentTimeMillis();
+            CloseableHttpResponse response;
+            try {
+                response = httpClient.execute(request);
+            } catch (IOException e) {
+                politenessServer.onFailure(webUrl, System.currentTimeMillis() - start, e);
+                throw e;
+            }
             fetchResult.setEntity(response.getEntity());
             fetchResult.setResponseHeaders(response.getHeaders());
 
             // Setting HttpStatus
             int statusCode = response.getCode();
+            politenessServer.onResponse(webUrl, System.currentTimeMillis() - start, statusCode);
 
             // If Redirect ( 3xx )
             if (statusCode == HttpStatus.SC_MOVED_PERMANENTLY ||
@@ -275,7 +283,11 @@ public class PageFetcher {
         return config;
     }
 
-    protected edu.uci.ics.crawler4j.PolitenessServer getPolitenessServer() {
+    public PolitenessServer getPolitenessServer() {
         return politenessServer;
     }
+
+    public void setPolitenessServer(PolitenessServer politenessServer) {
+        this.politenessServer = politenessServer;
+    }
 }
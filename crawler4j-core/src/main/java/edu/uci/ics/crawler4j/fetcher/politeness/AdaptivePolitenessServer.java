@@ -0,0 +1,301 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.fetcher.politeness;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * A {@link PolitenessServer} which adapts the politeness delay of each host to how well the host
+ * copes with the crawl, similar to the AutoThrottle extension of Scrapy.
+ * <p>
+ * The delay of a host starts at the configured politeness delay. After each successful response,
+ * it moves half way towards the response time of the host, i.e. it shrinks for hosts answering
+ * quickly and grows for slow ones. Server errors (5xx), "429 Too Many Requests" and requests
+ * failing without a response, e.g. on timeouts, double the delay. Other responses may increase,
+ * but never decrease the delay, as their response times are not representative.
+ * <p>
+ * The delay is kept within {@link CrawlConfig#getMinAdaptiveDelay()} and
+ * {@link CrawlConfig#getMaxAdaptiveDelay()}, but never falls below a delay set for the host via
+ * {@link #setPolitenessDelay(WebURL, long)}, e.g. from its robots.txt. Such delays are kept apart
+ * from the throttles, so they outlive the throttles of idle hosts, which are forgotten. The
+ * current state of each host is available via {@link #getHostThrottles()} for monitoring.
+ */
+public class AdaptivePolitenessServer implements PolitenessServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePolitenessServer.class);
+
+    /**
+     * Weight of the latest response in the average response time and error rate of a host.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Hosts without requests for this time are forgotten.
+     */
+    private static final long IDLE_TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+    private static final int CLEAN_UP_INTERVAL = 10_000;
+
+    protected CrawlConfig config;
+    private final Map<String, HostThrottle> hosts = new ConcurrentHashMap<>();
+    /** Delays set per host, keyed by {@link PolitenessServer#hostOf(WebURL)}. */
+    private final Map<String, Long> minDelays = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public AdaptivePolitenessServer(CrawlConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public long applyPoliteness(WebURL url) {
+        final String host = url.getDomain();
+        if (host == null) {
+            return NO_POLITENESS_APPLIED;
+        }
+        if (requests.incrementAndGet() % CLEAN_UP_INTERVAL == 0) {
+            removeIdleHosts(IDLE_TIMEOUT);
+        }
+        final long politenessDelay = getHostThrottle(host).reserve(System.currentTimeMillis(), getMinDelay(url));
+        if (politenessDelay != NO_POLITENESS_APPLIED) {
+            logger.debug("Applying politeness delay of {} ms for host {}", politenessDelay, host);
+        }
+        return politenessDelay;
+    }
+
+    @Override
+    public void setPolitenessDelay(WebURL url, long delay) {
+        final String host = PolitenessServer.hostOf(url);
+        if (host != null) {
+            minDelays.put(host, delay);
+        }
+    }
+
+    @Override
+    public void onResponse(WebURL url, long responseTime, int statusCode) {
+        final String host = url.getDomain();
+        if (host == null) {
+            return;
+        }
+        final HostThrottle throttle = getHostThrottle(host);
+        if (statusCode >= HttpStatus.SC_SERVER_ERROR || statusCode == HttpStatus.SC_TOO_MANY_REQUESTS) {
+            throttle.backOff(responseTime);
+            logger.debug("Backing off host {} to a delay of {} ms after status {}", host, throttle.getDelay(),
+                    statusCode);
+        } else {
+            throttle.adapt(responseTime, statusCode < HttpStatus.SC_BAD_REQUEST);
+        }
+    }
+
+    @Override
+    public void onFailure(WebURL url, long responseTime, Exception cause) {
+        final String host = url.getDomain();
+        if (host == null) {
+            return;
+        }
+        final HostThrottle throttle = getHostThrottle(host);
+        throttle.backOff(responseTime);
+        logger.debug("Backing off host {} to a delay of {} ms after {}", host, throttle.getDelay(), cause.toString());
+    }
+
+    /**
+     * @return the current politeness delay in ms for the host of the given url
+     */
+    public long getPolitenessDelay(WebURL url) {
+        final String host = url.getDomain();
+        final HostThrottle throttle = host == null ? null : hosts.get(host);
+        final long delay = throttle != null ? throttle.getDelay() : clamp(config.getPolitenessDelay());
+        return Math.max(delay, getMinDelay(url));
+    }
+
+    /**
+     * @return a read-only view of the throttles of all hosts, keyed by host
+     */
+    public Map<String, HostThrottle> getHostThrottles() {
+        return Collections.unmodifiableMap(hosts);
+    }
+
+    public void forceCleanUp() {
+        hosts.clear();
+        minDelays.clear();
+    }
+
+    public long getSize() {
+        return hosts.size();
+    }
+
+    private HostThrottle getHostThrottle(String host) {
+        return hosts.computeIfAbsent(host, h -> new HostThrottle(clamp(config.getPolitenessDelay())));
+    }
+
+    private long getMinDelay(WebURL url) {
+        final String host = PolitenessServer.hostOf(url);
+        final Long minDelay = host == null ? null : minDelays.get(host);
+        return minDelay != null ? minDelay : 0;
+    }
+
+    /**
+     * Forgets the throttles of hosts without requests for the given time. Delays set via
+     * {@link #setPolitenessDelay(WebURL, long)} are kept.
+     *
+     * @param idleTimeout the time in ms
+     */
+    public void removeIdleHosts(long idleTimeout) {
+        final long now = System.currentTimeMillis();
+        hosts.values().removeIf(throttle -> now - throttle.getLastActivity() > idleTimeout);
+    }
+
+    private long clamp(long delay) {
+        return Math.max(config.getMinAdaptiveDelay(), Math.min(config.getMaxAdaptiveDelay(), delay));
+    }
+
+    /**
+     * The adaptive politeness state of a single host.
+     */
+    public final class HostThrottle {
+
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final long created = System.currentTimeMillis();
+        private long delay;
+        private long lastFetchTime;
+        private double averageResponseTime;
+        private double errorRate;
+        private long responses;
+
+        private HostThrottle(long delay) {
+            this.delay = delay;
+        }
+
+        /**
+         * Reserves the next request to the host, which is either due now or after its delay, but
+         * at least the given minimum delay.
+         */
+        private long reserve(long now, long minDelay) {
+            mutex.lock();
+            try {
+                final long currentDelay = Math.max(delay, minDelay);
+                if (now - lastFetchTime >= currentDelay) {
+                    lastFetchTime = now;
+                    return NO_POLITENESS_APPLIED;
+                }
+                lastFetchTime += currentDelay;
+                return lastFetchTime - now;
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        private void adapt(long responseTime, boolean representative) {
+            mutex.lock();
+            try {
+                record(responseTime, 0);
+                final long target = (delay + responseTime) / 2;
+                delay = clamp(representative ? target : Math.max(delay, target));
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        private void backOff(long responseTime) {
+            mutex.lock();
+            try {
+                record(responseTime, 1);
+                delay = clamp(Math.max(2 * delay, config.getPolitenessDelay()));
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        private void record(long responseTime, int error) {
+            if (responses++ == 0) {
+                averageResponseTime = responseTime;
+                errorRate = error;
+            } else {
+                averageResponseTime += SMOOTHING * (responseTime - averageResponseTime);
+                errorRate += SMOOTHING * (error - errorRate);
+            }
+        }
+
+        private long getLastActivity() {
+            mutex.lock();
+            try {
+                return Math.max(created, lastFetchTime);
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        /**
+         * @return the current politeness delay of the host in ms
+         */
+        public long getDelay() {
+            mutex.lock();
+            try {
+                return delay;
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        /**
+         * @return the current maximum rate of requests to the host per second
+         */
+        public double getRequestRate() {
+            final long currentDelay = getDelay();
+            return currentDelay == 0 ? Double.POSITIVE_INFINITY : 1000.0 / currentDelay;
+        }
+
+        /**
+         * @return the exponentially smoothed response time of the host in ms
+         */
+        public double getAverageResponseTime() {
+            mutex.lock();
+            try {
+                return averageResponseTime;
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        /**
+         * @return the exponentially smoothed fraction of failed requests to the host, between 0 and 1
+         */
+        public double getErrorRate() {
+            mutex.lock();
+            try {
+                return errorRate;
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
+}
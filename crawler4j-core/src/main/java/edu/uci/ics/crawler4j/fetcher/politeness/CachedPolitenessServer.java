@@ -36,6 +36,7 @@
 
 package edu.uci.ics.crawler4j.fetcher.politeness;
 
+import edu.uci.ics.crawler4j.PolitenessServer;
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
 import edu.uci.ics.crawler4j.url.WebURL;
 import org.cache2k.Cache;
@@ -45,19 +46,26 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class CachedPolitenessServer implements edu.uci.ics.crawler4j.PolitenessServer {
+public class CachedPolitenessServer implements PolitenessServer {
 
     private static final Logger logger = LoggerFactory.getLogger(CachedPolitenessServer.class);
 
     protected Cache<String, Long> seenHosts;
+    protected Cache<String, Long> crawlDelays;
     protected CrawlConfig config;
-    private final Object mutex = new Object();
+    private final ReentrantLock mutex = new ReentrantLock();
 
     public CachedPolitenessServer(CrawlConfig config) {
         this.seenHosts = new Cache2kBuilder<String, Long>() {
         }
-                .expireAfterWrite(config.getPolitenessDelay(), TimeUnit.MILLISECONDS)
+                .expireAfterWrite(Math.max(config.getPolitenessDelay(), config.getMaxCrawlDelay()),
+                        TimeUnit.MILLISECONDS)
+                .build();
+        this.crawlDelays = new Cache2kBuilder<String, Long>() {
+        }
+                .expireAfterWrite(1, TimeUnit.DAYS)
                 .build();
         this.config = config;
     }
@@ -65,7 +73,8 @@ public class CachedPolitenessServer implements edu.uci.ics.crawler4j.PolitenessS
     // We should organize the urls in queues per domain and then know when we can crawl a domain next.
     // Workers would then only pick urls from ready domains. That requires major changes in architecture.
     public long applyPoliteness(WebURL url) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             long politenessDelay = NO_POLITENESS_APPLIED;
             final String host = url.getDomain();
 
@@ -75,9 +84,10 @@ public class CachedPolitenessServer implements edu.uci.ics.crawler4j.PolitenessS
 
                 if (lastFetchTime != NO_POLITENESS_APPLIED) {
                     final long diff = (now.getTime() - lastFetchTime);
+                    final long hostDelay = getPolitenessDelay(PolitenessServer.hostOf(url));
 
-                    if (diff < config.getPolitenessDelay()) {
-                        politenessDelay = config.getPolitenessDelay() - diff;
+                    if (diff < hostDelay) {
+                        politenessDelay = hostDelay - diff;
                         logger.debug("Applying politeness delay of {} ms for host {}", politenessDelay, host);
                     }
                 }
@@ -85,11 +95,27 @@ public class CachedPolitenessServer implements edu.uci.ics.crawler4j.PolitenessS
             }
 
             return politenessDelay;
+        } finally {
+            mutex.unlock();
         }
     }
 
+    @Override
+    public void setPolitenessDelay(WebURL url, long delay) {
+        final String host = PolitenessServer.hostOf(url);
+        if (host != null) {
+            crawlDelays.put(host, delay);
+        }
+    }
+
+    private long getPolitenessDelay(String host) {
+        final Long delay = crawlDelays.peek(host);
+        return delay != null ? delay : config.getPolitenessDelay();
+    }
+
     public void forceCleanUp() {
         this.seenHosts.clear();
+        this.crawlDelays.clear();
     }
 
     public long getSize() {
@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.fetcher.politeness;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * A lock-free {@link PolitenessServer} for crawls spanning a large number of hosts.
+ * <p>
+ * The time of the last (or next reserved) request of each host is kept in a fixed size
+ * {@link AtomicLongArray}, which is organized as a set-associative table: a host is identified by a
+ * 64 bit hash of its domain, part of which selects a set of {@value #WAYS} slots, while another
+ * part is stored as a fingerprint together with the time in a single {@code long}. Slots are
+ * updated by compare-and-set, so concurrent requests to different hosts never block each other,
+ * and concurrent requests to the same host reserve consecutive time slots instead of being
+ * fetched at once.
+ * <p>
+ * Memory is bounded by the capacity given at construction time. Entries older than the
+ * longest politeness delay are considered free. If all slots of a set are taken by hosts within
+ * their delay, a new host shares the slot with the oldest time instead of evicting it. Such hosts,
+ * like hosts that collide on their hash, share their politeness, i.e. they are crawled slightly
+ * slower, but never faster, than configured.
+ * <p>
+ * Delays set per host, e.g. from a robots.txt "Crawl-delay", are kept in a separate map, as only
+ * few hosts declare one. They are keyed by host rather than domain, see
+ * {@link PolitenessServer#setPolitenessDelay(WebURL, long)}.
+ */
+public class ConcurrentPolitenessServer implements PolitenessServer {
+
+    /**
+     * Default number of slots (8 MB), i.e. roughly the number of hosts tracked at the same time.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int WAYS = 8;
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    protected CrawlConfig config;
+    private final AtomicLongArray slots;
+    private final int setMask;
+    private final long epoch;
+    private final Map<String, Long> crawlDelays = new ConcurrentHashMap<>();
+    private final AtomicLong maxCrawlDelay = new AtomicLong();
+
+    public ConcurrentPolitenessServer(CrawlConfig config) {
+        this(config, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param config   the crawl config
+     * @param capacity the number of slots, rounded up to the next power of two
+     */
+    public ConcurrentPolitenessServer(CrawlConfig config, int capacity) {
+        this.config = config;
+        int size = capacity <= WAYS ? WAYS : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.setMask = size / WAYS - 1;
+        // times are stored relative to this epoch, which leaves room for ~34 years in 40 bits
+        this.epoch = System.currentTimeMillis() - 1;
+    }
+
+    @Override
+    public long applyPoliteness(WebURL url) {
+        final String host = url.getDomain();
+        if (host == null) {
+            return NO_POLITENESS_APPLIED;
+        }
+        final long delay = getPolitenessDelay(PolitenessServer.hostOf(url));
+        final long hash = hash(host);
+        final long fingerprint = hash >>> TIME_BITS;
+        final int base = (int) (hash & setMask) * WAYS;
+
+        retry:
+        while (true) {
+            final long now = System.currentTimeMillis() - epoch;
+            int victim = base;
+            long victimEntry = slots.get(base);
+            for (int i = base; i < base + WAYS; i++) {
+                final long entry = slots.get(i);
+                final long time = entry & TIME_MASK;
+                if (entry != 0 && (entry >>> TIME_BITS) == fingerprint) {
+                    if (now - time >= delay) {
+                        if (slots.compareAndSet(i, entry, fingerprint << TIME_BITS | now)) {
+                            return NO_POLITENESS_APPLIED;
+                        }
+                    } else {
+                        // reserve the next slot for this request, so parallel requests are spread
+                        final long next = time + delay;
+                        if (slots.compareAndSet(i, entry, fingerprint << TIME_BITS | next)) {
+                            return next - now;
+                        }
+                    }
+                    continue retry;
+                }
+                // free (0) and expired slots have the oldest times
+                if (time < (victimEntry & TIME_MASK)) {
+                    victim = i;
+                    victimEntry = entry;
+                }
+            }
+            final long victimTime = victimEntry & TIME_MASK;
+            if (victimEntry == 0 || now - victimTime >= getMaxPolitenessDelay()) {
+                if (slots.compareAndSet(victim, victimEntry, fingerprint << TIME_BITS | now)) {
+                    return NO_POLITENESS_APPLIED;
+                }
+            } else {
+                // all hosts of the set are within their delay, share the slot of the oldest one
+                final long next = Math.max(now, victimTime + delay);
+                if (slots.compareAndSet(victim, victimEntry, (victimEntry & ~TIME_MASK) | next)) {
+                    return next == now ? NO_POLITENESS_APPLIED : next - now;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setPolitenessDelay(WebURL url, long delay) {
+        final String host = PolitenessServer.hostOf(url);
+        if (host != null) {
+            crawlDelays.put(host, delay);
+            maxCrawlDelay.accumulateAndGet(delay, Math::max);
+        }
+    }
+
+    /**
+     * @return the minimum time in ms between two requests to the given host
+     */
+    protected long getPolitenessDelay(String host) {
+        final Long delay = crawlDelays.get(host);
+        return delay != null ? delay : config.getPolitenessDelay();
+    }
+
+    /*
+     * entries older than this are free, whichever host they belong to
+     */
+    private long getMaxPolitenessDelay() {
+        return Math.max(config.getPolitenessDelay(), maxCrawlDelay.get());
+    }
+
+    public void forceCleanUp() {
+        crawlDelays.clear();
+        maxCrawlDelay.set(0);
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+    }
+
+    /**
+     * @return the number of hosts whose politeness delay has not yet expired
+     */
+    public long getSize() {
+        final long now = System.currentTimeMillis() - epoch;
+        long size = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            final long entry = slots.get(i);
+            if (entry != 0 && now - (entry & TIME_MASK) < config.getPolitenessDelay()) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the host, followed by a finalizer to spread the bits.
+     */
+    private static long hash(String host) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < host.length(); i++) {
+            h ^= host.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
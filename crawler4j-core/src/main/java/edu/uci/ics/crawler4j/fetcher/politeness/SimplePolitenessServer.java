@@ -23,6 +23,7 @@ import edu.uci.ics.crawler4j.crawler.CrawlConfig;
 import edu.uci.ics.crawler4j.url.WebURL;
 
 import java.util.Date;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class handles the politeness logic similar to earlier versions of crawler4j, i.e. apply a delay to every request.
@@ -30,7 +31,7 @@ import java.util.Date;
 public class SimplePolitenessServer implements edu.uci.ics.crawler4j.PolitenessServer {
 
     protected CrawlConfig config;
-    private final Object mutex = new Object();
+    private final ReentrantLock mutex = new ReentrantLock();
     protected long lastFetchTime = 0;
 
     public SimplePolitenessServer(CrawlConfig config) {
@@ -39,7 +40,8 @@ public class SimplePolitenessServer implements edu.uci.ics.crawler4j.PolitenessS
 
     @Override
     public long applyPoliteness(WebURL url) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             long now = new Date().getTime();
             if (now - this.lastFetchTime < config.getPolitenessDelay()) {
                 return config.getPolitenessDelay() - (now - this.lastFetchTime);
@@ -47,6 +49,8 @@ public class SimplePolitenessServer implements edu.uci.ics.crawler4j.PolitenessS
             this.lastFetchTime = new Date().getTime();
 
             return NO_POLITENESS_APPLIED;
+        } finally {
+            mutex.unlock();
         }
     }
 }
@@ -0,0 +1,381 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.fetcher.politeness.AdaptivePolitenessServer;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * A {@link Frontier} decorator which applies politeness while handing out urls instead of
+ * putting the crawler threads to sleep while fetching.
+ * <p>
+ * Urls are pulled from the underlying frontier into one queue per host (domain). Hosts with
+ * pending urls are kept in a delay heap ordered by the time at which the host may be fetched
+ * next, and {@link #getNextURLs(int, List)} only hands out urls of hosts which are ready, at most
+ * one per host. A crawler thread thus only waits if no host at all is ready.
+ * <p>
+ * As politeness is already applied here, this class also acts as the {@link PolitenessServer}
+ * of the page fetcher: urls handed out by this frontier are fetched without any further delay,
+ * all other requests (e.g. for robots.txt) are delegated to the given politeness server.
+ */
+public class HostAwareFrontier implements Frontier, PolitenessServer {
+
+    protected static final Logger logger = LoggerFactory.getLogger(HostAwareFrontier.class);
+
+    /**
+     * Maximum number of urls buffered in the host queues by default.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 10_000;
+
+    /*
+     * a host is blocked from handing out a url until its last url is fetched. If that never
+     * happens (e.g. the url was skipped by the crawler), the host is released after this timeout
+     */
+    private static final long DISPATCH_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private final Frontier delegate;
+    private final CrawlConfig config;
+    private final PolitenessServer politenessServer;
+    private final int bufferSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hostReady = lock.newCondition();
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final PriorityQueue<HeapEntry> delayHeap =
+            new PriorityQueue<>(Comparator.comparingLong(e -> e.time));
+    private final Map<String, HostQueue> dispatched = new ConcurrentHashMap<>();
+    /** Delays set per host, e.g. from robots.txt, which outlive the (idle) host queues. */
+    private final Map<String, Long> crawlDelays = new ConcurrentHashMap<>();
+    private int buffered;
+    private boolean refilling;
+
+    public HostAwareFrontier(Frontier delegate, CrawlConfig config, PolitenessServer politenessServer) {
+        this(delegate, config, politenessServer, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param delegate         the frontier holding the scheduled urls
+     * @param config           the crawl config
+     * @param politenessServer applied to all requests that were not handed out by this frontier
+     * @param bufferSize       maximum number of urls taken from the delegate at a time
+     */
+    public HostAwareFrontier(Frontier delegate, CrawlConfig config, PolitenessServer politenessServer, int bufferSize) {
+        this.delegate = delegate;
+        this.config = config;
+        this.politenessServer = politenessServer;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void scheduleAll(List<WebURL> urls) {
+        delegate.scheduleAll(urls);
+        signalHostReady();
+    }
+
+    @Override
+    public void schedule(WebURL url) {
+        delegate.schedule(url);
+        signalHostReady();
+    }
+
+    @Override
+    public void reschedule(WebURL url) {
+        delegate.reschedule(url);
+        signalHostReady();
+    }
+
+    @Override
+    public void getNextURLs(int max, List<WebURL> result) {
+        lock.lock();
+        try {
+            while (true) {
+                if (delegate.isFinished()) {
+                    return;
+                }
+                refill();
+
+                long now = System.currentTimeMillis();
+                while (result.size() < max && !delayHeap.isEmpty() && delayHeap.peek().time <= now) {
+                    HeapEntry entry = delayHeap.poll();
+                    HostQueue queue = entry.queue;
+                    if (entry.time != queue.nextFetchTime) {
+                        continue; // outdated, the host has been pushed again with another time
+                    }
+                    queue.heapTime = -1;
+                    if (queue.urls.isEmpty()) {
+                        continue;
+                    }
+                    WebURL url = queue.urls.poll();
+                    buffered--;
+                    queue.nextFetchTime = now + DISPATCH_TIMEOUT;
+                    pushToHeap(queue);
+                    dispatched.put(url.getURL(), queue);
+                    result.add(url);
+                }
+                if (!result.isEmpty()) {
+                    return;
+                }
+
+                if (delayHeap.isEmpty()) {
+                    // nothing buffered and nothing scheduled: block on the delegate until there is
+                    List<WebURL> urls = new ArrayList<>(max);
+                    lock.unlock();
+                    try {
+                        delegate.getNextURLs(max, urls);
+                    } finally {
+                        lock.lock();
+                    }
+                    urls.forEach(this::buffer);
+                    if (!urls.isEmpty()) {
+                        hostReady.signalAll();
+                    }
+                } else {
+                    try {
+                        hostReady.await(delayHeap.peek().time - now, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ignored) {
+                        // Do nothing
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Polls urls from the delegate as long as there is space in the buffer. The lock is released
+     * while polling, as the delegate may still block if other crawlers take its urls first (see
+     * {@link Frontier#pollNextURLs(int, List)}). Only one thread refills at a time.
+     */
+    private void refill() {
+        if (refilling || buffered >= bufferSize || delegate.getQueueLength() <= 0) {
+            return;
+        }
+        int max = bufferSize - buffered;
+        List<WebURL> urls = new ArrayList<>(max);
+        refilling = true;
+        lock.unlock();
+        try {
+            delegate.pollNextURLs(max, urls);
+        } finally {
+            lock.lock();
+            refilling = false;
+        }
+        urls.forEach(this::buffer);
+        if (!urls.isEmpty()) {
+            hostReady.signalAll();
+        }
+        if (hosts.size() > 2 * bufferSize) {
+            removeIdleHosts();
+        }
+    }
+
+    private void buffer(WebURL url) {
+        String host = getHost(url);
+        HostQueue queue = hosts.computeIfAbsent(host, h -> new HostQueue());
+        queue.urls.add(url);
+        buffered++;
+        pushToHeap(queue);
+    }
+
+    /**
+     * Adds the host to the delay heap with its current next fetch time, unless it has no urls
+     * or is already there with that time. Entries with an outdated time are skipped on polling.
+     */
+    private void pushToHeap(HostQueue queue) {
+        if (!queue.urls.isEmpty() && queue.heapTime != queue.nextFetchTime) {
+            queue.heapTime = queue.nextFetchTime;
+            delayHeap.add(new HeapEntry(queue.nextFetchTime, queue));
+        }
+    }
+
+    private void removeIdleHosts() {
+        long now = System.currentTimeMillis();
+        Iterator<HostQueue> it = hosts.values().iterator();
+        while (it.hasNext()) {
+            HostQueue queue = it.next();
+            if (queue.urls.isEmpty() && queue.nextFetchTime <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases the host of the given url once the url is fetched (or has been processed without
+     * being fetched). The host may be fetched again after its politeness delay.
+     *
+     * @return {@code true} if the url was handed out by this frontier
+     */
+    private boolean release(WebURL url) {
+        HostQueue queue = dispatched.remove(url.getURL());
+        if (queue == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            queue.nextFetchTime = System.currentTimeMillis() + getPolitenessDelay(url);
+            pushToHeap(queue);
+            hostReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private void signalHostReady() {
+        lock.lock();
+        try {
+            hostReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the key by which urls are grouped into host queues
+     */
+    protected String getHost(WebURL url) {
+        String domain = url.getDomain();
+        return domain != null ? domain : url.getURL();
+    }
+
+    /**
+     * @return the minimum time in ms between two requests to the host of the given url
+     */
+    protected long getPolitenessDelay(WebURL url) {
+        if (politenessServer instanceof AdaptivePolitenessServer) {
+            return ((AdaptivePolitenessServer) politenessServer).getPolitenessDelay(url);
+        }
+        Long delay = crawlDelays.get(PolitenessServer.hostOf(url));
+        return delay != null ? delay : config.getPolitenessDelay();
+    }
+
+    @Override
+    public void setPolitenessDelay(WebURL url, long delay) {
+        crawlDelays.put(PolitenessServer.hostOf(url), delay);
+        politenessServer.setPolitenessDelay(url, delay);
+    }
+
+    @Override
+    public void onResponse(WebURL url, long responseTime, int statusCode) {
+        politenessServer.onResponse(url, responseTime, statusCode);
+    }
+
+    @Override
+    public void onFailure(WebURL url, long responseTime, Exception cause) {
+        politenessServer.onFailure(url, responseTime, cause);
+    }
+
+    @Override
+    public long applyPoliteness(WebURL url) {
+        if (release(url)) {
+            // keep the fallback informed about the request, so that e.g. robots.txt is fetched politely
+            politenessServer.applyPoliteness(url);
+            return NO_POLITENESS_APPLIED;
+        }
+        return politenessServer.applyPoliteness(url);
+    }
+
+    @Override
+    public void setProcessed(WebURL webURL) {
+        release(webURL);
+        delegate.setProcessed(webURL);
+    }
+
+    @Override
+    public long getQueueLength() {
+        lock.lock();
+        try {
+            return delegate.getQueueLength() + buffered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getNumberOfAssignedPages() {
+        return delegate.getNumberOfAssignedPages();
+    }
+
+    @Override
+    public long getNumberOfProcessedPages() {
+        return delegate.getNumberOfProcessedPages();
+    }
+
+    @Override
+    public long getNumberOfScheduledPages() {
+        return delegate.getNumberOfScheduledPages();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return delegate.isFinished();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void finish() {
+        delegate.finish();
+        signalHostReady();
+    }
+
+    public Frontier getDelegate() {
+        return delegate;
+    }
+
+    private static final class HostQueue {
+        private final ArrayDeque<WebURL> urls = new ArrayDeque<>();
+        private long nextFetchTime;
+        private long heapTime = -1;
+    }
+
+    private static final class HeapEntry {
+        private final long time;
+        private final HostQueue queue;
+
+        private HeapEntry(long time, HostQueue queue) {
+            this.time = time;
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.robotstxt;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import crawlercommons.robots.SimpleRobotRules;
+
+/**
+ * The rules of a {@link SimpleRobotRules} compiled into a path trie, so that checking a url costs
+ * time proportional to the length of its path instead of to the number of rules. Rules without
+ * wildcards (optionally ending with {@code $}) are stored in the trie, the rest is matched one by
+ * one. The result is the same as the one of {@link SimpleRobotRules#isAllowed(String)}: the
+ * longest matching rule wins, an allow rule wins over a disallow rule of the same length.
+ */
+public class CompiledRobotRules {
+
+    private static final boolean[] SPECIAL_CHARACTERS = new boolean[128];
+
+    static {
+        SPECIAL_CHARACTERS['*'] = true;
+        SPECIAL_CHARACTERS['$'] = true;
+    }
+
+    private static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private final Node root = new Node();
+
+    /**
+     * The rules containing wildcards, longest first.
+     */
+    private final List<Rule> wildcardRules = new ArrayList<>();
+
+    private final int ruleCount;
+
+    public CompiledRobotRules(SimpleRobotRules rules) {
+        for (SimpleRobotRules.RobotRule rule : rules.getRobotRules()) {
+            String prefix = rule.getPrefix();
+            add(prefix, rule.isAllow());
+            // crawler-commons also applies ".../index.html" rules to ".../"
+            if (prefix.endsWith("index.htm") || prefix.endsWith("index.html")) {
+                add(prefix.substring(0, prefix.indexOf("index.htm")) + "$", rule.isAllow());
+            }
+        }
+        wildcardRules.sort((a, b) -> Integer.compare(b.pattern.length(), a.pattern.length()));
+        this.ruleCount = rules.getRobotRules().size();
+    }
+
+    private void add(String pattern, boolean allow) {
+        boolean anchored = pattern.endsWith("$");
+        int end = anchored ? pattern.length() - 1 : pattern.length();
+        // trailing wildcards match anything, including nothing
+        int literalEnd = end;
+        while (literalEnd > 0 && pattern.charAt(literalEnd - 1) == '*') {
+            literalEnd--;
+        }
+        if (pattern.lastIndexOf('*', literalEnd - 1) >= 0) {
+            wildcardRules.add(new Rule(pattern, allow));
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < literalEnd; i++) {
+            node = node.getOrAddChild(pattern.charAt(i));
+        }
+        if (anchored && literalEnd == end) {
+            node.endMatch = node.endMatch.merge(pattern.length(), allow);
+        } else {
+            node.prefixMatch = node.prefixMatch.merge(pattern.length(), allow);
+        }
+    }
+
+    /**
+     * @return the number of rules these have been compiled from
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public boolean isAllowed(String url) {
+        String path = getPath(url);
+        if (path.equals("/robots.txt")) {
+            return true;
+        }
+
+        Match best = Match.NONE;
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            best = best.merge(node.prefixMatch);
+            if (depth == path.length()) {
+                best = best.merge(node.endMatch);
+                break;
+            }
+            node = node.getChild(path.charAt(depth++));
+        }
+
+        for (Rule rule : wildcardRules) {
+            if (rule.pattern.length() < best.length) {
+                break;
+            }
+            int length = matches(path, rule.pattern);
+            if (length != -1) {
+                best = best.merge(length, rule.allow);
+            }
+        }
+        return best.length == NO_MATCH || best.allow;
+    }
+
+    /**
+     * @return the path and query of the url, escaped the way {@link SimpleRobotRules} does
+     */
+    private static String getPath(String url) {
+        try {
+            URL parsed = new URI(url).toURL();
+            String path = parsed.getPath();
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            }
+            if (parsed.getQuery() != null) {
+                path += "?" + parsed.getQuery();
+            }
+            return SimpleRobotRules.escapePath(path, SPECIAL_CHARACTERS);
+        } catch (Exception e) {
+            return "/";
+        }
+    }
+
+    /**
+     * Matches a rule containing wildcards the way {@link SimpleRobotRules} does.
+     *
+     * @return the length of the rule if it matches the path, -1 otherwise
+     */
+    static int matches(String path, String pattern) {
+        boolean anchored = pattern.endsWith("$");
+        int patternLength = anchored ? pattern.length() - 1 : pattern.length();
+        int pathLength = path.length();
+        int patternIdx = 0;
+        int pathIdx = 0;
+        while (patternIdx < patternLength && pathIdx < pathLength) {
+            int wildcard = pattern.indexOf('*', patternIdx);
+            if (wildcard == -1) {
+                wildcard = patternLength;
+            }
+            if (wildcard == patternIdx) {
+                patternIdx++;
+                if (patternIdx >= patternLength) {
+                    return pattern.length();
+                }
+                int next = pattern.indexOf('*', patternIdx);
+                if (next == -1) {
+                    next = patternLength;
+                }
+                // find the next occurrence of the literal part up to the next wildcard
+                int length = next - patternIdx;
+                while (pathIdx + length <= pathLength && !path.regionMatches(pathIdx, pattern, patternIdx, length)) {
+                    pathIdx++;
+                }
+                if (pathIdx + length > pathLength) {
+                    return -1;
+                }
+            } else {
+                while (patternIdx < wildcard && pathIdx < pathLength) {
+                    if (path.charAt(pathIdx++) != pattern.charAt(patternIdx++)) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        while (patternIdx < patternLength && pattern.charAt(patternIdx) == '*') {
+            patternIdx++;
+        }
+        if (patternIdx == patternLength && (pathIdx == pathLength || !anchored)) {
+            return pattern.length();
+        }
+        return -1;
+    }
+
+    private static final class Rule {
+        private final String pattern;
+        private final boolean allow;
+
+        private Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+    }
+
+    /**
+     * The longest rule matching so far, and whether it allows the url.
+     */
+    private static final class Match {
+        private static final Match NONE = new Match(NO_MATCH, true);
+
+        private final int length;
+        private final boolean allow;
+
+        private Match(int length, boolean allow) {
+            this.length = length;
+            this.allow = allow;
+        }
+
+        private Match merge(Match other) {
+            return other.length == NO_MATCH ? this : merge(other.length, other.allow);
+        }
+
+        private Match merge(int otherLength, boolean otherAllow) {
+            if (otherLength > length) {
+                return new Match(otherLength, otherAllow);
+            }
+            if (otherLength == length && otherAllow && !allow) {
+                return new Match(length, true);
+            }
+            return this;
+        }
+    }
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+
+        /**
+         * The longest rule ending at this node that matches any path continuing from here.
+         */
+        private Match prefixMatch = Match.NONE;
+
+        /**
+         * The longest rule ending with {@code $} at this node, which only matches if the path
+         * ends here.
+         */
+        private Match endMatch = Match.NONE;
+
+        private Node getChild(char c) {
+            int idx = Arrays.binarySearch(labels, c);
+            return idx >= 0 ? children[idx] : null;
+        }
+
+        private Node getOrAddChild(char c) {
+            int idx = Arrays.binarySearch(labels, c);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            int insert = -idx - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(labels, insert, newLabels, insert + 1, labels.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            newLabels[insert] = c;
+            newChildren[insert] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[insert];
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package edu.uci.ics.crawler4j.robotstxt;
 
 import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRules;
 
 import java.util.concurrent.TimeUnit;
 
@@ -27,16 +28,43 @@ public class RobotRules {
 
     // If we fetched it for this host more than
     // 24 hours, we have to re-fetch it.
-    private static final long EXPIRATION_DELAY = TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS);
+    static final long EXPIRATION_DELAY = TimeUnit.MILLISECONDS.convert(1, TimeUnit.DAYS);
 
     private final long timeFetched;
     private long timeLastAccessed;
 
     private final BaseRobotRules wrapped;
 
+    private final CompiledRobotRules compiled;
+
     public RobotRules(BaseRobotRules srr) {
+        this(srr, System.currentTimeMillis());
+    }
+
+    /**
+     * @param srr         the parsed robots.txt
+     * @param timeFetched the time the robots.txt has been fetched at
+     */
+    public RobotRules(BaseRobotRules srr, long timeFetched) {
+        this(srr, timeFetched, null);
+    }
+
+    private RobotRules(BaseRobotRules srr, long timeFetched, CompiledRobotRules compiled) {
         this.wrapped = srr;
-        this.timeFetched = System.currentTimeMillis();
+        this.timeFetched = timeFetched;
+        this.compiled = compiled;
+    }
+
+    /**
+     * @return these rules matching urls via a {@link CompiledRobotRules}, or these rules
+     * themselves if there is nothing to compile
+     */
+    public RobotRules compile() {
+        if (compiled != null || !(wrapped instanceof SimpleRobotRules) ||
+            wrapped.isAllowAll() || wrapped.isAllowNone()) {
+            return this;
+        }
+        return new RobotRules(wrapped, timeFetched, new CompiledRobotRules((SimpleRobotRules) wrapped));
     }
 
     public boolean needsRefetch() {
@@ -45,10 +73,26 @@ public class RobotRules {
 
     public boolean isAllowed(String url) {
         this.timeLastAccessed = System.currentTimeMillis();
-        return wrapped.isAllowed(url);
+        return compiled != null ? compiled.isAllowed(url) : wrapped.isAllowed(url);
     }
 
     public long getTimeLastAccessed() {
         return timeLastAccessed;
     }
+
+    public long getTimeFetched() {
+        return timeFetched;
+    }
+
+    public BaseRobotRules getDirectives() {
+        return wrapped;
+    }
+
+    /**
+     * @return the value of the "Crawl-delay" directive in ms or
+     * {@link BaseRobotRules#UNSET_CRAWL_DELAY} if there is none
+     */
+    public long getCrawlDelay() {
+        return wrapped.getCrawlDelay();
+    }
 }
@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.robotstxt;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import crawlercommons.robots.BaseRobotRules;
+
+/**
+ * Persists the parsed robots.txt of each host together with its fetch time, so that a resumed
+ * crawl does not fetch them again before they expire. The rules are appended to a single log,
+ * {@code <crawlStorageFolder>/robots.log}, of which only the position of the latest record of each
+ * host is kept in memory; the rules themselves are read on demand. The log is compacted when it
+ * is opened, and a record torn by a crash is dropped.
+ */
+public class RobotRulesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RobotRulesStore.class);
+
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private static final ObjectInputFilter FILTER =
+            ObjectInputFilter.Config.createFilter("crawlercommons.robots.*;java.util.*;java.lang.*;!*");
+
+    private final Path file;
+    private final FileChannel channel;
+
+    /**
+     * The position of the latest record of each host.
+     */
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+
+    /**
+     * Guards the appends, a monitor would pin the virtual threads of the crawlers.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private long end;
+
+    public RobotRulesStore(File crawlStorageFolder) throws IOException {
+        this.file = crawlStorageFolder.toPath().resolve("robots.log");
+        Files.createDirectories(file.getParent());
+        int records = replay();
+        if (records > 2 * index.size()) {
+            compact();
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, VERSION);
+            channel.truncate(0);
+            writeFully(header, 0);
+            end = HEADER_SIZE;
+        } else {
+            end = channel.size();
+        }
+    }
+
+    /**
+     * @return the stored rules of the given host, or {@code null} if there are none or they
+     * could not be read
+     */
+    public RobotRules load(String host) {
+        Long position = index.get(host);
+        if (position == null) {
+            return null;
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(channel, length, position);
+            ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+            readFully(channel, record, position + Integer.BYTES);
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(record.array()));
+            if (!host.equals(data.readUTF())) {
+                return null;
+            }
+            long timeFetched = data.readLong();
+            ObjectInputStream objects = new ObjectInputStream(data);
+            objects.setObjectInputFilter(FILTER);
+            return new RobotRules((BaseRobotRules) objects.readObject(), timeFetched);
+        } catch (ClosedChannelException e) {
+            return null;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Could not read the stored robots.txt of {}: {}", host, e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(String host, RobotRules rules) {
+        try {
+            ByteBuffer record = ByteBuffer.wrap(toRecord(host, rules.getTimeFetched(), rules.getDirectives()));
+            appendLock.lock();
+            try {
+                long position = end;
+                writeFully(record, position);
+                end += record.capacity();
+                index.put(host, position);
+            } finally {
+                appendLock.unlock();
+            }
+        } catch (ClosedChannelException e) {
+            logger.debug("Not storing the robots.txt of {}, the store is closed", host);
+        } catch (IOException e) {
+            logger.warn("Could not store the robots.txt of {}: {}", host, e.getMessage());
+        }
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the robots.txt store: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes the records of an existing log and cuts off a torn last record.
+     *
+     * @return the number of records in the log
+     */
+    private int replay() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int records = 0;
+        long position = HEADER_SIZE;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in)))) {
+            try {
+                if (data.readInt() != VERSION) {
+                    logger.warn("Ignoring the stored robots.txt of an incompatible version");
+                    in.truncate(0);
+                    return 0;
+                }
+                while (true) {
+                    int length = data.readInt();
+                    byte[] record = new byte[length];
+                    data.readFully(record);
+                    String host = new DataInputStream(new ByteArrayInputStream(record)).readUTF();
+                    index.put(host, position);
+                    position += Integer.BYTES + length;
+                    records++;
+                }
+            } catch (EOFException e) {
+                if (position < in.size()) {
+                    logger.info("Dropping a torn record at the end of the stored robots.txt");
+                    in.truncate(position);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Rewrites the log with the latest record of each host only.
+     */
+    private void compact() throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, VERSION));
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                readFully(in, length, entry.getValue());
+                ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length.getInt(0));
+                readFully(in, record, entry.getValue());
+                entry.setValue(out.position());
+                record.flip();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] toRecord(String host, long timeFetched, BaseRobotRules directives) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0);
+        data.writeUTF(host);
+        data.writeLong(timeFetched);
+        ObjectOutputStream objects = new ObjectOutputStream(data);
+        objects.writeObject(directives);
+        objects.flush();
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - Integer.BYTES);
+        return record;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -45,6 +45,31 @@ public class RobotstxtConfig {
      */
     private int cacheSize = 500;
 
+    /**
+     * If the "Crawl-delay" directive of a robots.txt should be used as politeness delay for
+     * its host (bounded by {@code CrawlConfig#getMinCrawlDelay()} and
+     * {@code CrawlConfig#getMaxCrawlDelay()}).
+     */
+    private boolean honorCrawlDelay = false;
+
+    /**
+     * If urls of hosts whose robots.txt is not known yet should be put aside while their
+     * robots.txt is fetched in the background, instead of fetching it on the crawler thread.
+     */
+    private boolean nonBlocking = false;
+
+    /**
+     * The number of threads fetching robots.txt in the background if {@link #isNonBlocking()}.
+     */
+    private int nonBlockingThreads = 4;
+
+    /**
+     * If the rules of each robots.txt should be compiled into a path trie once it has been
+     * fetched. Checking a url then no longer scans all rules, which pays off for hosts with
+     * large robots.txt files.
+     */
+    private boolean compileRules = false;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -69,6 +94,38 @@ public class RobotstxtConfig {
         this.cacheSize = cacheSize;
     }
 
+    public boolean isHonorCrawlDelay() {
+        return honorCrawlDelay;
+    }
+
+    public void setHonorCrawlDelay(boolean honorCrawlDelay) {
+        this.honorCrawlDelay = honorCrawlDelay;
+    }
+
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    public int getNonBlockingThreads() {
+        return nonBlockingThreads;
+    }
+
+    public void setNonBlockingThreads(int nonBlockingThreads) {
+        this.nonBlockingThreads = nonBlockingThreads;
+    }
+
+    public boolean isCompileRules() {
+        return compileRules;
+    }
+
+    public void setCompileRules(boolean compileRules) {
+        this.compileRules = compileRules;
+    }
+
     public boolean isSkipCheckForSeeds() {
         return skipCheckForSeeds;
     }
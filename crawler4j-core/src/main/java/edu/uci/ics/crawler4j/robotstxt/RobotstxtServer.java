@@ -33,9 +33,12 @@ import edu.uci.ics.crawler4j.url.WebURLFactory;
 import edu.uci.ics.crawler4j.util.Util;
 import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.NoHttpResponseException;
+import org.cache2k.Cache;
+import org.cache2k.Cache2kBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.SocketException;
@@ -43,12 +46,28 @@ import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class RobotstxtServer {
 
+    /**
+     * The result of {@link #allowsOrPark(WebURL, Consumer)}.
+     */
+    public enum Decision {
+        ALLOWED, DISALLOWED, PARKED
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(RobotstxtServer.class);
 
     protected BaseRobotsParser ruleParser;
@@ -59,15 +78,43 @@ public class RobotstxtServer {
 
     protected CrawlConfig crawlConfig;
 
-    protected final Map<String, RobotRules> cache = new HashMap<>();
+    /**
+     * The rules by host. Rules are evicted if the cache exceeds {@link RobotstxtConfig#getCacheSize()}
+     * and expire after a day, so that robots.txt is re-fetched.
+     */
+    protected final Cache<String, RobotRules> cache;
+
+    /**
+     * The fetches of robots.txt in progress by host, so that crawlers encountering the same new
+     * host at once wait for a single fetch.
+     */
+    private final Map<String, CompletableFuture<RobotRules>> fetching = new ConcurrentHashMap<>();
 
     protected PageFetcher pageFetcher;
 
+    /**
+     * Persists the rules for resumable crawls, {@code null} otherwise.
+     */
+    protected RobotRulesStore store;
+
+    /**
+     * The urls waiting for the robots.txt of their host by host, if {@link RobotstxtConfig#isNonBlocking()}.
+     */
+    private final Map<String, List<ParkedUrl>> parked = new ConcurrentHashMap<>();
+    private final AtomicInteger parkedUrls = new AtomicInteger();
+    private final ExecutorService executor;
+
     public RobotstxtServer(RobotstxtConfig config, PageFetcher pageFetcher, WebURLFactory factory) {
         this.config = config;
         this.pageFetcher = pageFetcher;
         this.factory = factory;
         this.ruleParser = new SimpleRobotRulesParser();
+        this.cache = new Cache2kBuilder<String, RobotRules>() {
+        }
+                .entryCapacity(config.getCacheSize())
+                .expireAfterWrite(RobotRules.EXPIRATION_DELAY, TimeUnit.MILLISECONDS)
+                .build();
+        this.executor = config.isNonBlocking() ? newExecutor(config.getNonBlockingThreads()) : null;
     }
 
     private static String getHost(URL url) {
@@ -101,16 +148,9 @@ public class RobotstxtServer {
             URL url = new URL(webURL.getURL());
             String host = getHost(url);
 
-            RobotRules rule = cache.get(host);
-
-            if (rule != null && rule.needsRefetch()) {
-                synchronized (cache) {
-                    cache.remove(host);
-                    rule = null;
-                }
-            }
+            RobotRules rule = getCachedRules(host);
             if (rule == null) {
-                rule = fetchDirectives(url);
+                rule = fetchDirectivesOnce(url, host);
             }
             return rule.isAllowed(webURL.getURL());
         } catch (MalformedURLException e) {
@@ -123,6 +163,202 @@ public class RobotstxtServer {
         return true;
     }
 
+    /**
+     * Non-blocking variant of {@link #allows(WebURL)}: if the robots.txt of the host of the given
+     * url is not known yet, the url is parked and the robots.txt is fetched in the background.
+     * Once it has arrived, the url is passed to the given callback if it is allowed. Parked urls
+     * are released on a thread of the robots.txt fetcher pool.
+     * <p>
+     * If {@link RobotstxtConfig#isNonBlocking()} is disabled, this blocks like {@link #allows(WebURL)}.
+     *
+     * @param webURL    the url to check
+     * @param onAllowed called with the url, if it has been parked and turns out to be allowed
+     * @return whether the url is allowed or has been parked
+     */
+    public Decision allowsOrPark(WebURL webURL, Consumer<WebURL> onAllowed) throws InterruptedException {
+        if (executor == null || !config.isEnabled()) {
+            return allows(webURL) ? Decision.ALLOWED : Decision.DISALLOWED;
+        }
+        final URL url;
+        try {
+            url = new URL(webURL.getURL());
+        } catch (MalformedURLException e) {
+            logger.error("Bad URL in Robots.txt: " + webURL.getURL(), e);
+            return Decision.ALLOWED;
+        }
+        final String host = getHost(url);
+        RobotRules rule = getCachedRules(host);
+        if (rule != null) {
+            return rule.isAllowed(webURL.getURL()) ? Decision.ALLOWED : Decision.DISALLOWED;
+        }
+
+        final boolean[] firstOfHost = new boolean[1];
+        parkedUrls.incrementAndGet();
+        parked.compute(host, (h, urls) -> {
+            if (urls == null) {
+                urls = new ArrayList<>();
+                firstOfHost[0] = true;
+            }
+            urls.add(new ParkedUrl(webURL, onAllowed));
+            return urls;
+        });
+        if (firstOfHost[0]) {
+            try {
+                executor.execute(() -> release(url, host));
+            } catch (RuntimeException e) {
+                // the pool has been shut down, i.e. the crawl is over
+                logger.debug("Dropping urls of {} waiting for its robots.txt: {}", host, e.getMessage());
+                dropParked(host);
+            }
+        }
+        logger.debug("Parking {} until the robots.txt of its host is known", webURL.getURL());
+        return Decision.PARKED;
+    }
+
+    /**
+     * @return the number of urls waiting for the robots.txt of their host
+     */
+    public int getParkedUrlCount() {
+        return parkedUrls.get();
+    }
+
+    public void shutDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Fetches the robots.txt of the given host and releases the urls parked for it.
+     */
+    private void release(URL url, String host) {
+        RobotRules rules = null;
+        try {
+            rules = fetchDirectivesOnce(url, host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropParked(host);
+            return;
+        } catch (URISyntaxException | RuntimeException e) {
+            logger.error("Error occurred while fetching (robots) url of " + host + ", allowing its urls", e);
+        }
+
+        List<ParkedUrl> urls = parked.remove(host);
+        if (urls == null) {
+            return;
+        }
+        for (ParkedUrl parkedUrl : urls) {
+            try {
+                if (rules == null || rules.isAllowed(parkedUrl.url.getURL())) {
+                    parkedUrl.onAllowed.accept(parkedUrl.url);
+                } else {
+                    logger.debug("Not visiting: {} as per the server's \"robots.txt\" policy", parkedUrl.url.getURL());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error while releasing parked url: " + parkedUrl.url.getURL(), e);
+            } finally {
+                parkedUrls.decrementAndGet();
+            }
+        }
+    }
+
+    private void dropParked(String host) {
+        List<ParkedUrl> urls = parked.remove(host);
+        if (urls != null) {
+            parkedUrls.addAndGet(-urls.size());
+        }
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Robots.txt fetcher " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fetches the rules of the given host, unless another thread is already fetching them, in
+     * which case their result is awaited.
+     */
+    private RobotRules fetchDirectivesOnce(URL url, String host) throws InterruptedException, URISyntaxException {
+        CompletableFuture<RobotRules> fetch = new CompletableFuture<>();
+        CompletableFuture<RobotRules> running = fetching.putIfAbsent(host, fetch);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // the rules may have been cached since we looked them up
+            RobotRules robotRules = getCachedRules(host);
+            if (robotRules == null) {
+                robotRules = loadDirectives(host);
+                if (robotRules == null) {
+                    robotRules = fetchDirectives(url);
+                    if (store != null) {
+                        store.save(host, robotRules);
+                    }
+                }
+                if (config.isCompileRules()) {
+                    robotRules = robotRules.compile();
+                }
+                applyCrawlDelay(url, robotRules);
+                cache.put(host, robotRules);
+            }
+            fetch.complete(robotRules);
+            return robotRules;
+        } catch (InterruptedException | URISyntaxException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            fetching.remove(host, fetch);
+        }
+    }
+
+    private RobotRules getCachedRules(String host) {
+        RobotRules rules = cache.peek(host);
+        if (rules != null && rules.needsRefetch()) {
+            cache.remove(host);
+            return null;
+        }
+        return rules;
+    }
+
+    /**
+     * @return the rules of the given host stored by a previous run of a resumable crawl, if they
+     * have not expired yet
+     */
+    private RobotRules loadDirectives(String host) {
+        if (store == null) {
+            return null;
+        }
+        RobotRules rules = store.load(host);
+        if (rules == null || rules.needsRefetch()) {
+            return null;
+        }
+        logger.debug("Using stored robots.txt of {}", host);
+        return rules;
+    }
+
+    private static RobotRules await(CompletableFuture<RobotRules> fetch) throws InterruptedException, URISyntaxException {
+        try {
+            return fetch.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof URISyntaxException) {
+                throw (URISyntaxException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private RobotRules fetchDirectives(URL url) throws InterruptedException, URISyntaxException {
         WebURL robotsTxtUrl = factory.newWebUrl();
         String host = getHost(url);
@@ -197,27 +433,44 @@ public class RobotstxtServer {
             directives = new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL);
         }
 
-        RobotRules robotRules = new RobotRules(directives);
+        return new RobotRules(directives);
+    }
 
-        synchronized (cache) {
-            if (cache.size() == config.getCacheSize()) {
-                String minHost = null;
-                long minAccessTime = Long.MAX_VALUE;
-                for (Map.Entry<String, RobotRules> entry : cache.entrySet()) {
-                    long entryAccessTime = entry.getValue().getTimeLastAccessed();
-                    if (entryAccessTime < minAccessTime) {
-                        minAccessTime = entryAccessTime;
-                        minHost = entry.getKey();
-                    }
-                }
-                cache.remove(minHost);
-            }
-            cache.put(host, robotRules);
+    /**
+     * Passes the "Crawl-delay" of the given rules, bounded by the configured minimum and maximum,
+     * on to the politeness server of the page fetcher.
+     */
+    private void applyCrawlDelay(URL url, RobotRules robotRules) {
+        if (!config.isHonorCrawlDelay() || crawlConfig == null ||
+                robotRules.getCrawlDelay() == BaseRobotRules.UNSET_CRAWL_DELAY) {
+            return;
         }
-        return robotRules;
+        long delay = Math.min(Math.max(robotRules.getCrawlDelay(), crawlConfig.getMinCrawlDelay()),
+                crawlConfig.getMaxCrawlDelay());
+        WebURL hostUrl = factory.newWebUrl();
+        hostUrl.setURL(url.getProtocol() + "://" + url.getAuthority() + "/");
+        logger.debug("Using crawl delay of {} ms for {}", delay, hostUrl.getURL());
+        pageFetcher.getPolitenessServer().setPolitenessDelay(hostUrl, delay);
     }
 
     public void setCrawlConfig(CrawlConfig crawlConfig) {
         this.crawlConfig = crawlConfig;
+        if (crawlConfig.isResumableCrawling() && store == null) {
+            try {
+                this.store = new RobotRulesStore(new File(crawlConfig.getCrawlStorageFolder()));
+            } catch (IOException e) {
+                logger.error("Could not create the robots.txt store, robots.txt will not be persisted", e);
+            }
+        }
+    }
+
+    private static final class ParkedUrl {
+        private final WebURL url;
+        private final Consumer<WebURL> onAllowed;
+
+        private ParkedUrl(WebURL url, Consumer<WebURL> onAllowed) {
+            this.url = url;
+            this.onAllowed = onAllowed;
+        }
     }
 }
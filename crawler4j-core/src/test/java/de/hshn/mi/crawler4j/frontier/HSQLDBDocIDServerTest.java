@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshn.mi.crawler4j.frontier;
+
+import static de.hshn.mi.crawler4j.frontier.HSQLDBFrontierConfigurationTest.HOST_SLOTS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.hshn.mi.crawler4j.exception.HSQLDBStoreException;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
+import edu.uci.ics.crawler4j.frontier.DocIDServer;
+
+public class HSQLDBDocIDServerTest {
+
+    private static final int THREADS = 8;
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void testConcurrentCallersSeeEachUrlAsNewOnce() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            urls.add("http://host" + i + ".com/");
+        }
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), THREADS, true);
+        try {
+            assertEachUrlIsNewOnce(frontierConfiguration.getDocIDServer(), urls);
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersSeeEachUrlAsNewOnceWithinOneSlot() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (int host = 0; host < 4; host++) {
+            for (int i = 0; i < 10; i++) {
+                urls.add("http://host" + host + ".com/" + i);
+            }
+        }
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), THREADS, true, HOST_SLOTS);
+        try {
+            assertEachUrlIsNewOnce(frontierConfiguration.getDocIDServer(), urls);
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testUrlsInOneSlot() {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true, HOST_SLOTS);
+        try {
+            DocIDServer docIDServer = frontierConfiguration.getDocIDServer();
+            assertThat(docIDServer.getNewDocID("http://a.com/1")).isEqualTo(1);
+            assertThat(docIDServer.getNewDocID("http://a.com/2")).isEqualTo(2);
+            assertThat(docIDServer.getNewDocID("http://a.com/1")).isEqualTo(1);
+
+            assertThat(docIDServer.getDocId("http://a.com/2")).isEqualTo(2);
+            assertThat(docIDServer.getDocIds(Arrays.asList("http://a.com/2", "http://a.com/1", "http://a.com/3")))
+                    .containsExactly(2, 1, -1);
+            assertThat(docIDServer.isSeenBefore("http://a.com/3")).isFalse();
+
+            List<DocIDAssignment> assignments = docIDServer.getOrCreateDocIds(
+                    Arrays.asList("http://a.com/3", "http://a.com/1", "http://b.com/1", "http://a.com/3"));
+            assertThat(assignments).extracting(DocIDAssignment::getDocId).containsExactly(3, 1, 4, 3);
+            assertThat(assignments).extracting(DocIDAssignment::isNew).containsExactly(true, false, true, false);
+
+            docIDServer.addUrlAndDocId("http://a.com/4", 10);
+            assertThat(docIDServer.getDocId("http://a.com/4")).isEqualTo(10);
+            assertThatThrownBy(() -> docIDServer.addUrlAndDocId("http://a.com/5", 10))
+                    .isInstanceOf(HSQLDBStoreException.class);
+
+            Map<String, Integer> all = new HashMap<>();
+            docIDServer.forEach(all::put);
+            assertThat(all).containsOnlyKeys("http://a.com/1", "http://a.com/2", "http://a.com/3", "http://a.com/4",
+                    "http://b.com/1");
+            assertThat(docIDServer.getDocCount()).isEqualTo(5);
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testFullSlotIsRejected() {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true, HOST_SLOTS);
+        try {
+            DocIDServer docIDServer = frontierConfiguration.getDocIDServer();
+            for (int i = 0; i < HSQLDBDocIDServerImpl.PROBES; i++) {
+                docIDServer.getNewDocID("http://a.com/" + i);
+            }
+
+            assertThatThrownBy(() -> docIDServer.getNewDocID("http://a.com/full"))
+                    .isInstanceOf(HSQLDBStoreException.class);
+            assertThat(docIDServer.isSeenBefore("http://a.com/full")).isFalse();
+            // other slots are not affected
+            docIDServer.getNewDocID("http://b.com/1");
+            assertThat(docIDServer.isSeenBefore("http://b.com/1")).isTrue();
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    /*
+     * all threads add the same urls at once, each in an order of its own
+     */
+    private static void assertEachUrlIsNewOnce(DocIDServer docIDServer, List<String> urls) throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Map<String, DocIDAssignment>>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                List<String> shuffled = new ArrayList<>(urls);
+                Collections.shuffle(shuffled);
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    Map<String, DocIDAssignment> assigned = new HashMap<>();
+                    // in batches as well as one by one
+                    List<DocIDAssignment> assignments = docIDServer.getOrCreateDocIds(shuffled.subList(0, urls.size() / 2));
+                    for (int i = 0; i < assignments.size(); i++) {
+                        assigned.put(shuffled.get(i), assignments.get(i));
+                    }
+                    for (String url : shuffled.subList(urls.size() / 2, urls.size())) {
+                        assigned.put(url, docIDServer.getOrCreateDocIds(Collections.singletonList(url)).get(0));
+                    }
+                    return assigned;
+                }));
+            }
+
+            Map<String, Integer> docIds = new HashMap<>();
+            Map<String, Integer> isNew = new HashMap<>();
+            for (Future<Map<String, DocIDAssignment>> future : futures) {
+                for (Map.Entry<String, DocIDAssignment> entry : future.get().entrySet()) {
+                    Integer docId = docIds.putIfAbsent(entry.getKey(), entry.getValue().getDocId());
+                    if (docId != null) {
+                        assertThat(entry.getValue().getDocId()).as(entry.getKey()).isEqualTo(docId);
+                    }
+                    isNew.merge(entry.getKey(), entry.getValue().isNew() ? 1 : 0, Integer::sum);
+                }
+            }
+
+            assertThat(isNew).hasSize(urls.size()).allSatisfy((url, count) -> assertThat(count).as(url).isEqualTo(1));
+            assertThat(docIds.values()).doesNotHaveDuplicates();
+            assertThat(docIDServer.getDocCount()).isEqualTo(urls.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CrawlConfig newConfig() {
+        CrawlConfig config = new CrawlConfig();
+        config.setCrawlStorageFolder(folder.getAbsolutePath());
+        config.setResumableCrawling(true);
+        return config;
+    }
+}
@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshn.mi.crawler4j.frontier;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import de.hshn.mi.crawler4j.url.HSQLDBWebURLImpl;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
+import edu.uci.ics.crawler4j.frontier.Frontier;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.url.WebURLFactory;
+
+/**
+ * Measures how many urls per second the HSQLDB frontier schedules and hands out (including
+ * {@link Frontier#setProcessed(WebURL)}), compared to issuing one statement on a connection of
+ * its own per url as the frontier did before it used JDBC batches. Not run as part of the test
+ * suite, start it via its main method:
+ * <pre>
+ * HSQLDBFrontierBenchmark [urls] [poolSize]
+ * </pre>
+ */
+public class HSQLDBFrontierBenchmark {
+
+    /*
+     * the in-memory database of a crawl which is not resumable
+     */
+    private static final String JDBC_URL = "jdbc:hsqldb:mem:crawler4j;sql.syntax_pgs=true";
+
+    public static void main(String[] args) throws Exception {
+        int urls = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        CrawlConfig config = new CrawlConfig();
+        config.setResumableCrawling(false);
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(config, poolSize);
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(JDBC_URL);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(poolSize);
+        try (HikariDataSource ds = new HikariDataSource(hikariConfig)) {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            int batchSize = config.getBatchReadSize();
+
+            System.out.printf("%d urls, pool size: %d%n", urls, poolSize);
+            System.out.printf("%-12s %18s %18s%n", "statements", "scheduled/s", "dequeued/s");
+
+            List<WebURL> webURLs = newWebURLs(frontierConfiguration, ds, urls);
+            double scheduled = schedule(webURLs, batch -> scheduleEach(ds, batch));
+            double dequeued = dequeue(urls, batch -> claimEach(ds, batchSize, batch), frontier);
+            System.out.printf("%-12s %,18.0f %,18.0f%n", "per url", scheduled, dequeued);
+
+            webURLs = newWebURLs(frontierConfiguration, ds, urls);
+            scheduled = schedule(webURLs, frontier::scheduleAll);
+            dequeued = dequeue(urls, batch -> frontier.getNextURLs(batchSize, batch), frontier);
+            System.out.printf("%-12s %,18.0f %,18.0f%n", "batched", scheduled, dequeued);
+        } finally {
+            frontierConfiguration.getFrontier().close();
+            frontierConfiguration.getDocIDServer().close();
+            frontierConfiguration.close();
+        }
+    }
+
+    /*
+     * registers the urls with the docid server of an emptied database, not part of the timings
+     */
+    private static List<WebURL> newWebURLs(HSQLDBFrontierConfiguration frontierConfiguration, HikariDataSource ds,
+                                           int urls) throws SQLException {
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement("DELETE FROM weburl")) {
+            ps.executeUpdate();
+        }
+        WebURLFactory factory = frontierConfiguration.getWebURLFactory();
+        List<WebURL> webURLs = new ArrayList<>(urls);
+        List<String> batch = new ArrayList<>();
+        for (int i = 1; i <= urls; i++) {
+            WebURL url = factory.newWebUrl();
+            url.setURL("http://host" + (i % 1000) + ".example.com/page/" + i + ".html");
+            url.setDepth((short) 1);
+            webURLs.add(url);
+            batch.add(url.getURL());
+            if (batch.size() == 100 || i == urls) {
+                List<DocIDAssignment> assignments = frontierConfiguration.getDocIDServer().getOrCreateDocIds(batch);
+                for (int j = 0; j < assignments.size(); j++) {
+                    webURLs.get(webURLs.size() - assignments.size() + j).setDocid(assignments.get(j).getDocId());
+                }
+                batch.clear();
+            }
+        }
+        return webURLs;
+    }
+
+    private static double schedule(List<WebURL> webURLs, Consumer<List<WebURL>> scheduler) {
+        long start = System.nanoTime();
+        for (int i = 0; i < webURLs.size(); i += 100) {
+            scheduler.accept(webURLs.subList(i, Math.min(i + 100, webURLs.size())));
+        }
+        return webURLs.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double dequeue(int urls, Consumer<List<WebURL>> dequeuer, Frontier frontier) {
+        long start = System.nanoTime();
+        int dequeued = 0;
+        List<WebURL> batch = new ArrayList<>();
+        while (dequeued < urls) {
+            batch.clear();
+            dequeuer.accept(batch);
+            for (WebURL url : batch) {
+                frontier.setProcessed(url);
+            }
+            dequeued += batch.size();
+        }
+        return urls / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /*
+     * the former HSQLDBFrontierImpl.scheduleAll: one update on a connection of its own per url
+     */
+    private static void scheduleEach(HikariDataSource ds, List<WebURL> urls) {
+        for (WebURL url : urls) {
+            try (Connection c = ds.getConnection();
+                 PreparedStatement ps = c.prepareStatement(
+                         "UPDATE weburl " +
+                                 "SET status = ?, parenturl = ?, parentid = ?, priority = ?, cdepth = ?, anchor = ? WHERE id = ?")) {
+                ps.setInt(1, Status.SCHEDULED.getCode());
+                ps.setString(2, url.getParentUrl());
+                ps.setInt(3, url.getParentDocid());
+                ps.setInt(4, url.getPriority());
+                ps.setInt(5, url.getDepth());
+                ps.setString(6, url.getAnchor());
+                ps.setInt(7, url.getDocid());
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /*
+     * the former HSQLDBFrontierImpl.getNextURLs: a select, then one update on a connection of
+     * its own per url
+     */
+    private static void claimEach(HikariDataSource ds, int max, List<WebURL> result) {
+        List<Integer> docIds = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT * FROM weburl u WHERE u.status = ? ORDER BY u.priority DESC, u.id LIMIT ?")) {
+            ps.setInt(1, Status.SCHEDULED.getCode());
+            ps.setInt(2, max);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    WebURL webURL = new HSQLDBWebURLImpl();
+                    webURL.setURL(rs.getString("url"));
+                    webURL.setDocid(rs.getInt("id"));
+                    result.add(webURL);
+                    docIds.add(webURL.getDocid());
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        for (int docId : docIds) {
+            try (Connection c = ds.getConnection();
+                 PreparedStatement ps = c.prepareStatement("UPDATE weburl u SET u.status = ? WHERE u.id = ?")) {
+                ps.setInt(1, Status.IN_PROCESS.getCode());
+                ps.setInt(2, docId);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
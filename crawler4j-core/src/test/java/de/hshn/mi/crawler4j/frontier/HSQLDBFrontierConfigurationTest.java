@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshn.mi.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
+import edu.uci.ics.crawler4j.frontier.DocIDServer;
+import edu.uci.ics.crawler4j.frontier.Frontier;
+
+public class HSQLDBFrontierConfigurationTest {
+
+    /*
+     * all urls of a host share one slot
+     */
+    static final ToLongFunction<String> HOST_SLOTS = url -> HSQLDBDocIDServerImpl.hash(URI.create(url).getHost());
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void testVersion1IsMigrated() throws Exception {
+        createVersion1();
+
+        assertMigrated();
+
+        // nothing left to migrate on the next start
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true, HOST_SLOTS);
+        try {
+            assertThat(frontierConfiguration.getDocIDServer().getDocId("http://a.com/3")).isEqualTo(3);
+            assertThat(frontierConfiguration.getFrontier().getQueueLength()).isEqualTo(2);
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testMigrationStoppedMidwayIsResumed() throws Exception {
+        createVersion1();
+        // the status codes are there, but the varchar status is not dropped yet
+        execute("CREATE TABLE schema_version(version int NOT NULL)",
+                "DROP INDEX idx_url",
+                "ALTER TABLE weburl ADD COLUMN status_code smallint",
+                "UPDATE weburl SET status_code = 3 WHERE status = 'COMPLETED'");
+
+        assertMigrated();
+    }
+
+    @Test
+    public void testSchemaWithoutVersionIsKept() throws Exception {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true, HOST_SLOTS);
+        try {
+            DocIDServer docIDServer = frontierConfiguration.getDocIDServer();
+            docIDServer.getOrCreateDocIds(Arrays.asList("http://a.com/1", "http://a.com/2"));
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+        // stopped after the table was created
+        execute("DELETE FROM schema_version");
+
+        frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true, HOST_SLOTS);
+        try {
+            DocIDServer docIDServer = frontierConfiguration.getDocIDServer();
+            assertThat(docIDServer.getDocId("http://a.com/1")).isEqualTo(1);
+            assertThat(docIDServer.getDocId("http://a.com/2")).isEqualTo(2);
+            assertThat(docIDServer.getNewDocID("http://a.com/3")).isEqualTo(3);
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    private void assertMigrated() {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true, HOST_SLOTS);
+        try {
+            DocIDServer docIDServer = frontierConfiguration.getDocIDServer();
+            // three urls of a.com in one slot
+            assertThat(docIDServer.getDocId("http://a.com/1")).isEqualTo(1);
+            assertThat(docIDServer.getDocId("http://a.com/2")).isEqualTo(2);
+            assertThat(docIDServer.getDocId("http://a.com/3")).isEqualTo(3);
+            assertThat(docIDServer.getDocIds(Arrays.asList("http://b.com/1", "http://c.com/1", "http://c.com/2")))
+                    .containsExactly(4, 5, -1);
+            assertThat(docIDServer.getDocCount()).isEqualTo(5);
+
+            List<DocIDAssignment> assignments =
+                    docIDServer.getOrCreateDocIds(Arrays.asList("http://a.com/1", "http://a.com/4"));
+            assertThat(assignments).extracting(DocIDAssignment::getDocId).containsExactly(1, 6);
+            assertThat(assignments).extracting(DocIDAssignment::isNew).containsExactly(false, true);
+
+            Frontier frontier = frontierConfiguration.getFrontier();
+            assertThat(frontier.getQueueLength()).isEqualTo(2);
+            assertThat(frontier.getNumberOfAssignedPages()).isEqualTo(1);
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(1);
+        } finally {
+            HSQLDBFrontierTest.close(frontierConfiguration);
+        }
+    }
+
+    /*
+     * the schema and data of a crawl started before the schema was versioned
+     */
+    private void createVersion1() throws SQLException {
+        execute("CREATE SEQUENCE id_master_seq START WITH 6",
+                "CREATE TABLE weburl(" +
+                        "  id bigint NOT NULL," +
+                        "  url varchar(4096)," +
+                        "  parenturl varchar(4096)," +
+                        "  parentid bigint," +
+                        "  cdepth int," +
+                        "  priority int," +
+                        "  anchor varchar(4096)," +
+                        "  status varchar(16)," +
+                        "  primary key (id)" +
+                        ")",
+                "CREATE INDEX idx_url ON weburl (url)",
+                "CREATE INDEX idx_status ON weburl (status)",
+                "INSERT INTO weburl(id, url, status) VALUES(1, 'http://a.com/1', 'COMPLETED')",
+                "INSERT INTO weburl(id, url, status) VALUES(2, 'http://a.com/2', 'IN_PROCESS')",
+                "INSERT INTO weburl(id, url, status) VALUES(3, 'http://a.com/3', 'SCHEDULED')",
+                "INSERT INTO weburl(id, url, status) VALUES(4, 'http://b.com/1', 'SCHEDULED')",
+                "INSERT INTO weburl(id, url, status) VALUES(5, 'http://c.com/1', NULL)");
+    }
+
+    private void execute(String... statements) throws SQLException {
+        String jdbcUrl = "jdbc:hsqldb:file:" + folder.getAbsolutePath() + "/frontier;sql.syntax_pgs=true;shutdown=true";
+        try (Connection c = DriverManager.getConnection(jdbcUrl, "sa", "");
+             Statement s = c.createStatement()) {
+            for (String statement : statements) {
+                s.execute(statement);
+            }
+        }
+    }
+
+    private CrawlConfig newConfig() {
+        CrawlConfig config = new CrawlConfig();
+        config.setCrawlStorageFolder(folder.getAbsolutePath());
+        config.setResumableCrawling(true);
+        return config;
+    }
+}
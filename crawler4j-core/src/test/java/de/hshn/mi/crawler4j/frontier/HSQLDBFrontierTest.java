@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package de.hshn.mi.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
+import edu.uci.ics.crawler4j.frontier.Frontier;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+public class HSQLDBFrontierTest {
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void testBatchesAreClaimedInQueueOrder() throws Exception {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            List<WebURL> urls = newURLs(frontierConfiguration,
+                    "http://a.com/1", "http://a.com/2", "http://a.com/3", "http://a.com/4", "http://a.com/5");
+            urls.get(3).setPriority((byte) 1);
+            frontier.scheduleAll(urls);
+            assertThat(frontier.getQueueLength()).isEqualTo(5);
+
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(3, result);
+            assertThat(result).extracting(WebURL::getURL)
+                    .containsExactly("http://a.com/4", "http://a.com/1", "http://a.com/2");
+            assertThat(result.get(0).getPriority()).isEqualTo((byte) 1);
+            assertThat(frontier.getQueueLength()).isEqualTo(2);
+            assertThat(frontier.getNumberOfAssignedPages()).isEqualTo(3);
+
+            for (WebURL url : result) {
+                frontier.setProcessed(url);
+            }
+            assertThat(frontier.getNumberOfAssignedPages()).isZero();
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(3);
+
+            result.clear();
+            frontier.pollNextURLs(10, result);
+            assertThat(result).extracting(WebURL::getURL).containsExactly("http://a.com/3", "http://a.com/5");
+
+            result.clear();
+            frontier.pollNextURLs(10, result);
+            assertThat(result).isEmpty();
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testSchedulingAgainDoesNotCountUrlsTwice() throws Exception {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            List<WebURL> urls = newURLs(frontierConfiguration, "http://a.com/1", "http://a.com/2", "http://a.com/3");
+            frontier.scheduleAll(urls);
+            frontier.scheduleAll(urls);
+            assertThat(frontier.getQueueLength()).isEqualTo(3);
+
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(10, result);
+            assertThat(result).hasSize(3);
+            assertThat(frontier.getQueueLength()).isZero();
+            assertThat(frontier.getNumberOfAssignedPages()).isEqualTo(3);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testConcurrentClaimsHandOutEachUrlOnce() throws Exception {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            String[] urls = new String[200];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = "http://a.com/" + i;
+            }
+            frontier.scheduleAll(newURLs(frontierConfiguration, urls));
+
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    List<Integer> docids = new ArrayList<>();
+                    List<WebURL> result = new ArrayList<>();
+                    do {
+                        result.clear();
+                        frontier.pollNextURLs(7, result);
+                        for (WebURL url : result) {
+                            docids.add(url.getDocid());
+                        }
+                    } while (!result.isEmpty());
+                    return docids;
+                }));
+            }
+            List<Integer> claimed = new ArrayList<>();
+            for (Future<List<Integer>> future : futures) {
+                claimed.addAll(future.get());
+            }
+
+            assertThat(claimed).hasSize(urls.length).doesNotHaveDuplicates();
+            assertThat(frontier.getQueueLength()).isZero();
+            assertThat(frontier.getNumberOfAssignedPages()).isEqualTo(urls.length);
+        } finally {
+            executor.shutdownNow();
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testRescheduledUrlsDoNotCountAgainstMaxPagesToFetch() throws Exception {
+        CrawlConfig config = newConfig();
+        config.setMaxPagesToFetch(2);
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(config, 4, true);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            frontier.scheduleAll(newURLs(frontierConfiguration, "http://a.com/1", "http://a.com/2", "http://a.com/3"));
+            assertThat(frontier.getQueueLength()).isEqualTo(2);
+
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(10, result);
+            frontier.setProcessed(result.get(0));
+            frontier.reschedule(result.get(0));
+            frontier.setProcessed(result.get(1));
+            assertThat(frontier.getQueueLength()).isEqualTo(1);
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(1);
+
+            result.clear();
+            frontier.getNextURLs(10, result);
+            assertThat(result).extracting(WebURL::getURL).containsExactly("http://a.com/1");
+            frontier.setProcessed(result.get(0));
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(2);
+            assertThat(frontier.getNumberOfAssignedPages()).isZero();
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testOnlyUrlsInProcessAreCompleted() throws Exception {
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(newConfig(), 4, true);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            List<WebURL> urls = newURLs(frontierConfiguration, "http://a.com/1", "http://a.com/2");
+            frontier.scheduleAll(urls);
+
+            // not claimed yet
+            frontier.setProcessed(urls.get(1));
+            assertThat(frontier.getQueueLength()).isEqualTo(2);
+            assertThat(frontier.getNumberOfProcessedPages()).isZero();
+
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(1, result);
+            frontier.setProcessed(result.get(0));
+            frontier.setProcessed(result.get(0));
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(1);
+
+            // scheduled again before the crawler is done with it
+            result.clear();
+            frontier.getNextURLs(1, result);
+            frontier.reschedule(result.get(0));
+            frontier.setProcessed(result.get(0));
+            assertThat(frontier.getQueueLength()).isEqualTo(1);
+            assertThat(frontier.getNumberOfAssignedPages()).isZero();
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(1);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testCountsAreRestoredOnResume() throws Exception {
+        CrawlConfig config = newConfig();
+        HSQLDBFrontierConfiguration frontierConfiguration = new HSQLDBFrontierConfiguration(config, 4, true);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            frontier.scheduleAll(newURLs(frontierConfiguration, "http://a.com/1", "http://a.com/2", "http://a.com/3"));
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(2, result);
+            frontier.setProcessed(result.get(0));
+        } finally {
+            close(frontierConfiguration);
+        }
+
+        frontierConfiguration = new HSQLDBFrontierConfiguration(config, 4, true);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            assertThat(frontier.getQueueLength()).isEqualTo(1);
+            assertThat(frontier.getNumberOfAssignedPages()).isEqualTo(1);
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(1);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    private CrawlConfig newConfig() {
+        CrawlConfig config = new CrawlConfig();
+        config.setCrawlStorageFolder(folder.getAbsolutePath());
+        // a database file of its own, the in-memory one is shared by all tests
+        config.setResumableCrawling(true);
+        return config;
+    }
+
+    /*
+     * the frontier only sets the status of urls, their rows are added by the docid server
+     */
+    static List<WebURL> newURLs(HSQLDBFrontierConfiguration frontierConfiguration, String... urls) {
+        List<DocIDAssignment> assignments = frontierConfiguration.getDocIDServer().getOrCreateDocIds(Arrays.asList(urls));
+        List<WebURL> webURLs = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            WebURL webURL = frontierConfiguration.getWebURLFactory().newWebUrl();
+            webURL.setURL(urls[i]);
+            webURL.setDocid(assignments.get(i).getDocId());
+            webURLs.add(webURL);
+        }
+        return Collections.unmodifiableList(webURLs);
+    }
+
+    static void close(HSQLDBFrontierConfiguration frontierConfiguration) {
+        frontierConfiguration.getFrontier().close();
+        frontierConfiguration.getDocIDServer().close();
+        frontierConfiguration.close();
+    }
+}
@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.SocketTimeoutException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.crawler4j.frontier.Frontier;
+import edu.uci.ics.crawler4j.test.SimpleWebURL;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+public class RetrySchedulerTest {
+
+    private final List<WebURL> scheduled = new CopyOnWriteArrayList<>();
+    private final List<WebURL> rescheduled = new CopyOnWriteArrayList<>();
+    private CrawlConfig config;
+    private RetryScheduler retryScheduler;
+
+    @BeforeEach
+    public void setUp() {
+        config = new CrawlConfig();
+        config.setMaxRetries(3);
+        config.setRetryDelay(100);
+        config.setMaxRetryDelay(300);
+        retryScheduler = new RetryScheduler(config, new RecordingFrontier());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        retryScheduler.shutDown();
+    }
+
+    @Test
+    public void testBacksOffExponentiallyAndGivesUp() {
+        WebURL url = url("http://a.com/1");
+
+        assertThat(retryScheduler.onFailure(url, 500, null)).isEqualTo(100);
+        assertThat(retryScheduler.onFailure(url, 502, null)).isEqualTo(200);
+        assertThat(retryScheduler.onFailure(url, new SocketTimeoutException())).isEqualTo(300);
+        assertThat(retryScheduler.onFailure(url, 500, null)).isEqualTo(RetryScheduler.NO_RETRY);
+        // the attempts start over once the url has been given up
+        assertThat(retryScheduler.onFailure(url, 500, null)).isEqualTo(100);
+    }
+
+    @Test
+    public void testPermanentFailuresAreNotRetried() {
+        WebURL url = url("http://a.com/1");
+
+        assertThat(retryScheduler.onFailure(url, 404, null)).isEqualTo(RetryScheduler.NO_RETRY);
+        assertThat(retryScheduler.onFailure(url, new IllegalStateException())).isEqualTo(RetryScheduler.NO_RETRY);
+    }
+
+    @Test
+    public void testRetryAfterPausesHost() {
+        WebURL url = url("http://a.com/1");
+        Header[] headers = {new BasicHeader(HttpHeaders.RETRY_AFTER, "0")};
+
+        assertThat(retryScheduler.onFailure(url, 429, headers)).isEqualTo(0);
+
+        Instant date = Instant.now().plusSeconds(60);
+        headers = new Header[]{new BasicHeader(HttpHeaders.RETRY_AFTER, DateUtils.formatStandardDate(date))};
+
+        // bounded by the max retry delay
+        assertThat(retryScheduler.onFailure(url, 503, headers)).isEqualTo(300);
+        assertThat(retryScheduler.getHostPause(url("http://a.com/2"))).isBetween(1L, 300L);
+        assertThat(retryScheduler.getHostPause(url("http://b.com/1"))).isZero();
+    }
+
+    @Test
+    public void testRetryAfterPausesOnlyItsSubdomain() {
+        Header[] headers = {new BasicHeader(HttpHeaders.RETRY_AFTER, "60")};
+
+        retryScheduler.onFailure(url("http://a.example.com/1"), 429, headers);
+
+        assertThat(retryScheduler.getHostPause(url("http://a.example.com/2"))).isPositive();
+        assertThat(retryScheduler.getHostPause(url("http://b.example.com/1"))).isZero();
+        assertThat(retryScheduler.getHostPause(url("http://example.com/1"))).isZero();
+    }
+
+    @Test
+    public void testShutDownHandsPendingRetriesBackWhenResumable() {
+        config.setResumableCrawling(true);
+        WebURL url = url("http://a.com/1");
+
+        retryScheduler.schedule(url, 60_000);
+        retryScheduler.shutDown();
+
+        assertThat(retryScheduler.getPendingRetries()).isZero();
+        assertThat(rescheduled).containsExactly(url);
+    }
+
+    @Test
+    public void testShutDownDropsPendingRetries() {
+        retryScheduler.schedule(url("http://a.com/1"), 60_000);
+        retryScheduler.shutDown();
+
+        assertThat(retryScheduler.getPendingRetries()).isZero();
+        assertThat(rescheduled).isEmpty();
+    }
+
+    @Test
+    public void testScheduleHandsUrlBackToFrontier() throws Exception {
+        WebURL url = url("http://a.com/1");
+
+        retryScheduler.schedule(url, 10);
+        for (int i = 0; i < 100 && retryScheduler.getPendingRetries() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertThat(retryScheduler.getPendingRetries()).isZero();
+        // rescheduled, a retry must not count against maxPagesToFetch again
+        assertThat(rescheduled).containsExactly(url);
+        assertThat(scheduled).isEmpty();
+    }
+
+    private static WebURL url(String url) {
+        WebURL webURL = new SimpleWebURL();
+        webURL.setURL(url);
+        return webURL;
+    }
+
+    private class RecordingFrontier implements Frontier {
+
+        @Override
+        public void scheduleAll(List<WebURL> urls) {
+            scheduled.addAll(urls);
+        }
+
+        @Override
+        public void schedule(WebURL url) {
+            scheduled.add(url);
+        }
+
+        @Override
+        public void reschedule(WebURL url) {
+            rescheduled.add(url);
+        }
+
+        @Override
+        public void getNextURLs(int max, List<WebURL> result) {
+        }
+
+        @Override
+        public void setProcessed(WebURL webURL) {
+        }
+
+        @Override
+        public long getQueueLength() {
+            return scheduled.size();
+        }
+
+        @Override
+        public long getNumberOfAssignedPages() {
+            return 0;
+        }
+
+        @Override
+        public long getNumberOfProcessedPages() {
+            return 0;
+        }
+
+        @Override
+        public long getNumberOfScheduledPages() {
+            return scheduled.size();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+}
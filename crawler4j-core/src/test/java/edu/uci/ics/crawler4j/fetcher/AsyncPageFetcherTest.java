@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.fetcher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.crawler.Page;
+import edu.uci.ics.crawler4j.crawler.exceptions.PageBiggerThanMaxSizeException;
+import edu.uci.ics.crawler4j.test.TestUtils;
+import edu.uci.ics.crawler4j.url.WebURLImpl;
+
+public class AsyncPageFetcherTest {
+
+    @RegisterExtension
+    static WireMockExtension wm = WireMockExtension.newInstance()
+        // bodies as they are, so that their lengths and chunks are the ones the tests set up
+        .options(new WireMockConfiguration().dynamicPort().dynamicHttpsPort().gzipDisabled(true))
+        .build();
+
+    private AsyncPageFetcher pf;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        CrawlConfig cfg = new CrawlConfig();
+        cfg.setPolitenessDelay(0);
+        cfg.setMaxDownloadSize(64);
+        pf = new AsyncPageFetcher(cfg, TestUtils.newNormalizer());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pf.shutDown();
+    }
+
+    @Test
+    public void testFetchPage() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/some/index.html"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/html")
+                                                     .withBody("<html><body><h1>this is " +
+                                                               "html</h1></body></html>")));
+
+        WebURLImpl url = new WebURLImpl();
+        url.setURL("http://localhost:" + wm.getPort() + "/some/index.html");
+        Page page = new Page(url);
+        try (PageFetchResult result = AsyncPageFetcher.await(pf.fetchPage(url))) {
+            assertThat(result.getStatusCode()).isEqualTo(200);
+            assertThat(result.getFetchedUrl()).isEqualTo(url.getURL());
+            assertThat(result.fetchContent(page, 64)).isTrue();
+        }
+        assertThat(new String(page.getContentData())).isEqualTo("<html><body><h1>this is html</h1></body></html>");
+        assertThat(page.getContentType()).startsWith("text/html");
+        assertThat(page.isTruncated()).isFalse();
+    }
+
+    @Test
+    public void testHttp2FallsBackToHttp1() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/some/index.html"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/html")
+                                                     .withBody("<html></html>")));
+
+        CrawlConfig cfg = new CrawlConfig();
+        cfg.setPolitenessDelay(0);
+        cfg.setHttp2Enabled(true);
+        AsyncPageFetcher h2 = new AsyncPageFetcher(cfg, TestUtils.newNormalizer());
+        try {
+            WebURLImpl url = new WebURLImpl();
+            url.setURL("http://localhost:" + wm.getPort() + "/some/index.html");
+            try (PageFetchResult result = AsyncPageFetcher.await(h2.fetchPage(url))) {
+                assertThat(result.getStatusCode()).isEqualTo(200);
+            }
+        } finally {
+            h2.shutDown();
+        }
+    }
+
+    @Test
+    public void testHttp2IsNegotiatedWithHttpsHosts() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/some/index.html"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/html")
+                                                     .withBody("<html></html>")));
+
+        CrawlConfig cfg = new CrawlConfig();
+        cfg.setPolitenessDelay(0);
+        cfg.setHttp2Enabled(true);
+        AsyncPageFetcher h2 = new AsyncPageFetcher(cfg, TestUtils.newNormalizer());
+        try {
+            WebURLImpl url = new WebURLImpl();
+            url.setURL("https://localhost:" + wm.getHttpsPort() + "/some/index.html");
+            try (PageFetchResult result = AsyncPageFetcher.await(h2.fetchPage(url))) {
+                assertThat(result.getStatusCode()).isEqualTo(200);
+            }
+        } finally {
+            h2.shutDown();
+        }
+        assertThat(wm.getAllServeEvents()).extracting(event -> event.getRequest().getProtocol())
+                                           .containsExactly("HTTP/2.0");
+    }
+
+    @Test
+    public void testHttp2LimitsRequestsInFlightPerHost() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlPathEqualTo("/some/slow.html"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/html")
+                                                     .withFixedDelay(300)
+                                                     .withBody("<html></html>")));
+
+        CrawlConfig cfg = new CrawlConfig();
+        cfg.setPolitenessDelay(0);
+        cfg.setHttp2Enabled(true);
+        cfg.setMaxConnectionsPerHost(2);
+        AsyncPageFetcher h2 = new AsyncPageFetcher(cfg, TestUtils.newNormalizer());
+        try {
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<PageFetchResult>> fetches = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                WebURLImpl url = new WebURLImpl();
+                url.setURL("https://localhost:" + wm.getHttpsPort() + "/some/slow.html?page=" + i);
+                fetches.add(h2.fetchPage(url));
+            }
+            for (CompletableFuture<PageFetchResult> fetch : fetches) {
+                try (PageFetchResult result = AsyncPageFetcher.await(fetch)) {
+                    assertThat(result.getStatusCode()).isEqualTo(200);
+                }
+            }
+            // three rounds of two streams each
+            assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(900);
+        } finally {
+            h2.shutDown();
+        }
+    }
+
+    @Test
+    public void testRedirect() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/some/moved.html"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(301)
+                                                     .withHeader("Location", "/some/index.html")));
+
+        WebURLImpl url = new WebURLImpl();
+        url.setURL("http://localhost:" + wm.getPort() + "/some/moved.html");
+        try (PageFetchResult result = AsyncPageFetcher.await(pf.fetchPage(url))) {
+            assertThat(result.getStatusCode()).isEqualTo(301);
+            assertThat(result.getMovedToUrl()).isEqualTo("http://localhost:" + wm.getPort() + "/some/index.html");
+        }
+    }
+
+    @Test
+    public void testPageBiggerThanMaxSize() {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/some/big.bin"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "application/octet-stream")
+                                                     .withHeader("Content-Length", "128")
+                                                     .withBody(new byte[128])));
+
+        WebURLImpl url = new WebURLImpl();
+        url.setURL("http://localhost:" + wm.getPort() + "/some/big.bin");
+        assertThatThrownBy(() -> AsyncPageFetcher.await(pf.fetchPage(url)))
+                .isInstanceOf(PageBiggerThanMaxSizeException.class);
+    }
+
+    @Test
+    public void testBodyWithoutLengthIsTruncatedWithoutDownloadingTheRest() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/some/stream.bin"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "application/octet-stream")
+                                                     .withBody(new byte[64 * 1024])
+                                                     .withChunkedDribbleDelay(64, 6_400)));
+
+        WebURLImpl url = new WebURLImpl();
+        url.setURL("http://localhost:" + wm.getPort() + "/some/stream.bin");
+        Page page = new Page(url);
+        long start = System.currentTimeMillis();
+        try (PageFetchResult result = AsyncPageFetcher.await(pf.fetchPage(url))) {
+            assertThat(result.getStatusCode()).isEqualTo(200);
+            assertThat(result.fetchContent(page, 64)).isTrue();
+        }
+        // the whole body would have taken 6.4 s
+        assertThat(System.currentTimeMillis() - start).isLessThan(3_000);
+        assertThat(page.isTruncated()).isTrue();
+        assertThat(page.getContentData()).hasSize(64);
+    }
+}
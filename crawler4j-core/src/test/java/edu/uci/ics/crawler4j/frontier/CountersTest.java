@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.Counters.ReservedCounterNames;
+
+public class CountersTest {
+
+    @TempDir
+    File folder;
+
+    private Environment env;
+    private CrawlConfig config;
+
+    @BeforeEach
+    public void setUp() {
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        envConfig.setTransactional(true);
+        envConfig.setLocking(true);
+        env = new Environment(folder, envConfig);
+        config = new CrawlConfig();
+        config.setResumableCrawling(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        env.close();
+    }
+
+    @Test
+    public void testCountersAreWrittenOnClose() {
+        Counters counters = new Counters(env, config);
+        counters.increment(ReservedCounterNames.SCHEDULED_PAGES, 3);
+        counters.increment(ReservedCounterNames.PROCESSED_PAGES);
+        counters.increment(ReservedCounterNames.PROCESSED_PAGES);
+        counters.close();
+
+        Counters resumed = new Counters(env, config);
+        try {
+            assertThat(resumed.getValue(ReservedCounterNames.SCHEDULED_PAGES)).isEqualTo(3);
+            assertThat(resumed.getValue(ReservedCounterNames.PROCESSED_PAGES)).isEqualTo(2);
+        } finally {
+            resumed.close();
+        }
+    }
+
+    @Test
+    public void testCheckpointKeepsCountersOfACrawlThatIsNotClosed() {
+        Counters counters = new Counters(env, config);
+        try {
+            counters.increment(ReservedCounterNames.SCHEDULED_PAGES, 5);
+            counters.checkpoint();
+            // not checkpointed, lost if the crawler is killed now
+            counters.increment(ReservedCounterNames.SCHEDULED_PAGES);
+
+            Counters resumed = new Counters(env, config);
+            try {
+                assertThat(resumed.getValue(ReservedCounterNames.SCHEDULED_PAGES)).isEqualTo(5);
+            } finally {
+                resumed.close();
+            }
+        } finally {
+            counters.close();
+        }
+    }
+
+    @Test
+    public void testCountersAreCheckpointedPeriodically() throws Exception {
+        Counters counters = new Counters(env, config);
+        try {
+            counters.increment(ReservedCounterNames.PROCESSED_PAGES, 7);
+            Thread.sleep(3 * Counters.CHECKPOINT_INTERVAL_MILLIS);
+
+            Counters resumed = new Counters(env, config);
+            try {
+                assertThat(resumed.getValue(ReservedCounterNames.PROCESSED_PAGES)).isEqualTo(7);
+            } finally {
+                resumed.close();
+            }
+        } finally {
+            counters.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.fetcher.politeness.SimplePolitenessServer;
+import edu.uci.ics.crawler4j.test.SimpleWebURL;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+public class HostAwareFrontierTest {
+
+    private HostAwareFrontier frontier;
+
+    @BeforeEach
+    public void setUp() {
+        CrawlConfig config = new CrawlConfig();
+        config.setPolitenessDelay(60_000);
+        frontier = new HostAwareFrontier(new InMemoryFrontier(), config, new SimplePolitenessServer(config));
+    }
+
+    @Test
+    public void testHandsOutOneUrlPerReadyHost() {
+        frontier.scheduleAll(List.of(url("http://a.com/1"), url("http://a.com/2"), url("http://b.com/1")));
+
+        List<WebURL> result = new ArrayList<>();
+        frontier.getNextURLs(10, result);
+
+        assertThat(result).extracting(WebURL::getURL).containsExactlyInAnyOrder("http://a.com/1", "http://b.com/1");
+        assertThat(frontier.getQueueLength()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDispatchedUrlsAreFetchedWithoutDelay() {
+        frontier.schedule(url("http://a.com/1"));
+
+        List<WebURL> result = new ArrayList<>();
+        frontier.getNextURLs(10, result);
+
+        assertThat(frontier.applyPoliteness(result.get(0))).isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        // robots.txt is not handed out by the frontier, so the fallback politeness applies
+        assertThat(frontier.applyPoliteness(url("http://a.com/robots.txt"))).isGreaterThan(0);
+    }
+
+    @Test
+    public void testFinishReleasesWaitingCrawlers() throws Exception {
+        List<WebURL> result = new ArrayList<>();
+        Thread crawler = new Thread(() -> frontier.getNextURLs(10, result));
+        crawler.start();
+
+        frontier.finish();
+        crawler.join(5_000);
+
+        assertThat(crawler.isAlive()).isFalse();
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void testFrontierStaysUsableWhileRefillBlocksInDelegate() throws Exception {
+        RacyFrontier delegate = new RacyFrontier();
+        CrawlConfig config = new CrawlConfig();
+        config.setPolitenessDelay(60_000);
+        HostAwareFrontier racyFrontier = new HostAwareFrontier(delegate, config, new SimplePolitenessServer(config));
+        racyFrontier.schedule(url("http://a.com/1"));
+
+        List<WebURL> result = new ArrayList<>();
+        Thread crawler = new Thread(() -> racyFrontier.getNextURLs(10, result));
+        crawler.start();
+        assertThat(delegate.polling.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // another crawler drains the delegate while the refill is in progress
+        List<WebURL> taken = new ArrayList<>();
+        delegate.getNextURLs(10, taken);
+        assertThat(taken).extracting(WebURL::getURL).containsExactly("http://a.com/1");
+        delegate.drained.countDown();
+
+        // the refilling crawler now waits in the delegate, which must not block the frontier
+        assertThat(CompletableFuture.supplyAsync(racyFrontier::getQueueLength).get(5, TimeUnit.SECONDS)).isZero();
+        CompletableFuture.runAsync(() -> racyFrontier.setProcessed(taken.get(0))).get(5, TimeUnit.SECONDS);
+
+        racyFrontier.schedule(url("http://b.com/1"));
+        crawler.join(5_000);
+        assertThat(crawler.isAlive()).isFalse();
+        assertThat(result).extracting(WebURL::getURL).containsExactly("http://b.com/1");
+    }
+
+    private static WebURL url(String url) {
+        WebURL webURL = new SimpleWebURL();
+        webURL.setURL(url);
+        return webURL;
+    }
+
+    /*
+     * lets the test take the urls between the queue length check and the dequeue of a poll
+     */
+    private static class RacyFrontier extends InMemoryFrontier {
+
+        private final CountDownLatch polling = new CountDownLatch(1);
+        private final CountDownLatch drained = new CountDownLatch(1);
+
+        @Override
+        public void pollNextURLs(int max, List<WebURL> result) {
+            if (getQueueLength() > 0) {
+                polling.countDown();
+                try {
+                    drained.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                getNextURLs(max, result);
+            }
+        }
+    }
+
+    private static class InMemoryFrontier implements Frontier {
+
+        private final Queue<WebURL> queue = new ArrayDeque<>();
+        private boolean finished;
+
+        @Override
+        public synchronized void scheduleAll(List<WebURL> urls) {
+            queue.addAll(urls);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void schedule(WebURL url) {
+            queue.add(url);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void getNextURLs(int max, List<WebURL> result) {
+            while (queue.isEmpty() && !finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            while (result.size() < max && !queue.isEmpty()) {
+                result.add(queue.poll());
+            }
+        }
+
+        @Override
+        public void setProcessed(WebURL webURL) {
+        }
+
+        @Override
+        public synchronized long getQueueLength() {
+            return queue.size();
+        }
+
+        @Override
+        public long getNumberOfAssignedPages() {
+            return 0;
+        }
+
+        @Override
+        public long getNumberOfProcessedPages() {
+            return 0;
+        }
+
+        @Override
+        public long getNumberOfScheduledPages() {
+            return 0;
+        }
+
+        @Override
+        public synchronized boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+    }
+}
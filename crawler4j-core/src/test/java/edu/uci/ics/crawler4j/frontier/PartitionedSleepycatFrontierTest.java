@@ -0,0 +1,248 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.url.WebURLFactory;
+
+public class PartitionedSleepycatFrontierTest {
+
+    private static final int PARTITIONS = 4;
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void testUrlsOfAHostShareAPartition() {
+        int partition = PartitionedSleepycatFrontierConfiguration.partitionOf("http://www.a.com/", PARTITIONS);
+
+        assertThat(PartitionedSleepycatFrontierConfiguration.partitionOf("https://WWW.A.COM/x/y", PARTITIONS))
+                .isEqualTo(partition);
+        assertThat(PartitionedSleepycatFrontierConfiguration.partitionOf("http://www.a.com?q=1", PARTITIONS))
+                .isEqualTo(partition);
+        assertThat(PartitionedSleepycatFrontierConfiguration.partitionOf("http://www.a.com#top", PARTITIONS))
+                .isEqualTo(partition);
+
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            used.add(PartitionedSleepycatFrontierConfiguration.partitionOf("http://host" + i + ".com/", PARTITIONS));
+        }
+        assertThat(used).hasSize(PARTITIONS);
+    }
+
+    @Test
+    public void testPartitionsShareOneCache() throws Exception {
+        PartitionedSleepycatFrontierConfiguration frontierConfiguration =
+                new PartitionedSleepycatFrontierConfiguration(newConfig(), PARTITIONS);
+        try {
+            assertThat(frontierConfiguration.getPartitions()).hasSize(PARTITIONS);
+            for (SleepycatFrontierConfiguration partition : frontierConfiguration.getPartitions()) {
+                assertThat(partition.getEnvironment().getConfig().getSharedCache()).isTrue();
+            }
+            assertThat(new File(folder, "frontier-0-of-" + PARTITIONS)).isDirectory();
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testDocIdsAreUniqueAcrossPartitionsUnderConcurrency() throws Exception {
+        PartitionedSleepycatFrontierConfiguration frontierConfiguration =
+                new PartitionedSleepycatFrontierConfiguration(newConfig(), PARTITIONS);
+        int threads = 8;
+        int urls = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            DocIDServer docIdServer = frontierConfiguration.getDocIDServer();
+            Map<String, Integer> docIds = new ConcurrentHashMap<>();
+            Map<String, Integer> created = new ConcurrentHashMap<>();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // every thread asks for all urls, half of them one by one, half in batches
+                    for (int i = 0; i < urls; i += 10) {
+                        List<String> batch = new ArrayList<>();
+                        for (int j = i; j < i + 10; j++) {
+                            batch.add("http://host" + (j % 37) + ".com/" + j);
+                        }
+                        if (thread % 2 == 0) {
+                            List<DocIDAssignment> assignments = docIdServer.getOrCreateDocIds(batch);
+                            for (int j = 0; j < batch.size(); j++) {
+                                record(docIds, batch.get(j), assignments.get(j).getDocId());
+                                if (assignments.get(j).isNew()) {
+                                    created.merge(batch.get(j), 1, Integer::sum);
+                                }
+                            }
+                        } else {
+                            for (String url : batch) {
+                                record(docIds, url, docIdServer.getNewDocID(url));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            assertThat(docIds).hasSize(urls);
+            assertThat(new HashSet<>(docIds.values())).hasSize(urls);
+            assertThat(docIds.values()).allMatch(docId -> docId >= 1 && docId <= urls);
+            assertThat(created.values()).allMatch(count -> count == 1);
+            assertThat(docIdServer.getDocCount()).isEqualTo(urls);
+        } finally {
+            executor.shutdownNow();
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testBatchesAreTakenFromAllPartitions() throws Exception {
+        PartitionedSleepycatFrontierConfiguration frontierConfiguration =
+                new PartitionedSleepycatFrontierConfiguration(newConfig(), PARTITIONS);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            frontier.scheduleAll(newURLs(frontierConfiguration.getWebURLFactory(), 200));
+
+            List<WebURL> batch = new ArrayList<>();
+            frontier.getNextURLs(40, batch);
+            Map<Integer, Integer> perPartition = new HashMap<>();
+            for (WebURL url : batch) {
+                perPartition.merge(PartitionedSleepycatFrontierConfiguration.partitionOf(url.getURL(), PARTITIONS),
+                                   1, Integer::sum);
+            }
+            assertThat(batch).hasSize(40);
+            assertThat(perPartition).hasSize(PARTITIONS);
+
+            Set<String> drained = new HashSet<>();
+            for (WebURL url : batch) {
+                drained.add(url.getURL());
+                frontier.setProcessed(url);
+            }
+            while (frontier.getQueueLength() > 0) {
+                batch.clear();
+                frontier.getNextURLs(40, batch);
+                for (WebURL url : batch) {
+                    assertThat(drained.add(url.getURL())).isTrue();
+                    frontier.setProcessed(url);
+                }
+            }
+            assertThat(drained).hasSize(200);
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(200);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testMaxPagesToFetchIsEnforcedAcrossPartitions() throws Exception {
+        CrawlConfig config = newConfig();
+        config.setMaxPagesToFetch(15);
+        PartitionedSleepycatFrontierConfiguration frontierConfiguration =
+                new PartitionedSleepycatFrontierConfiguration(config, PARTITIONS);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            List<WebURL> urls = newURLs(frontierConfiguration.getWebURLFactory(), 20);
+            frontier.scheduleAll(urls.subList(0, 10));
+            for (WebURL url : urls.subList(10, 20)) {
+                frontier.schedule(url);
+            }
+
+            assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(15);
+            assertThat(frontier.getQueueLength()).isEqualTo(15);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testResumeWithOtherNumberOfPartitionsIsRejected() throws Exception {
+        CrawlConfig config = newConfig();
+        config.setResumableCrawling(true);
+        PartitionedSleepycatFrontierConfiguration frontierConfiguration =
+                new PartitionedSleepycatFrontierConfiguration(config, PARTITIONS);
+        frontierConfiguration.getFrontier().scheduleAll(newURLs(frontierConfiguration.getWebURLFactory(), 10));
+        close(frontierConfiguration);
+
+        assertThatThrownBy(() -> new PartitionedSleepycatFrontierConfiguration(config, PARTITIONS + 1))
+                .hasMessageContaining(PARTITIONS + " partitions");
+
+        frontierConfiguration = new PartitionedSleepycatFrontierConfiguration(config, PARTITIONS);
+        try {
+            assertThat(frontierConfiguration.getFrontier().getQueueLength()).isEqualTo(10);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    private static void record(Map<String, Integer> docIds, String url, int docId) {
+        Integer previous = docIds.putIfAbsent(url, docId);
+        assertThat(previous == null || previous == docId).as("docid of %s", url).isTrue();
+    }
+
+    private CrawlConfig newConfig() {
+        CrawlConfig config = new CrawlConfig();
+        config.setCrawlStorageFolder(folder.getAbsolutePath());
+        return config;
+    }
+
+    private static List<WebURL> newURLs(WebURLFactory factory, int count) {
+        List<WebURL> urls = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            WebURL url = factory.newWebUrl();
+            url.setURL("http://host" + (i % 37) + ".com/" + i);
+            url.setDocid(i);
+            urls.add(url);
+        }
+        return urls;
+    }
+
+    private static void close(FrontierConfiguration frontierConfiguration) {
+        frontierConfiguration.getFrontier().close();
+        frontierConfiguration.getDocIDServer().close();
+        frontierConfiguration.close();
+    }
+}
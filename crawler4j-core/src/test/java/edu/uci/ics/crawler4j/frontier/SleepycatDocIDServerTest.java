@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.SleepycatDocIDServer.CollisionPolicy;
+import edu.uci.ics.crawler4j.frontier.SleepycatDocIDServer.KeyType;
+
+public class SleepycatDocIDServerTest {
+
+    @TempDir
+    File folder;
+
+    private Environment env;
+    private CrawlConfig config;
+
+    @BeforeEach
+    public void setUp() {
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        envConfig.setTransactional(true);
+        envConfig.setLocking(true);
+        env = new Environment(folder, envConfig);
+        config = new CrawlConfig();
+        config.setResumableCrawling(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        env.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(KeyType.class)
+    public void testEachKeyTypeFindsItsUrls(KeyType keyType) {
+        for (CollisionPolicy collisionPolicy : CollisionPolicy.values()) {
+            if (keyType == KeyType.URL && collisionPolicy == CollisionPolicy.IGNORE) {
+                // the same database as with VERIFY
+                continue;
+            }
+            SleepycatDocIDServer server = new SleepycatDocIDServer(env, config, keyType, collisionPolicy);
+            try {
+                int docId = server.getNewDocID("http://a.com/1");
+                server.addUrlAndDocId("http://a.com/2", docId + 1);
+                List<DocIDAssignment> assignments =
+                        server.getOrCreateDocIds(Arrays.asList("http://a.com/1", "http://a.com/3"));
+
+                assertThat(server.getDocId("http://a.com/1")).isEqualTo(docId);
+                assertThat(server.getDocId("http://a.com/2")).isEqualTo(docId + 1);
+                assertThat(assignments).extracting(DocIDAssignment::isNew).containsExactly(false, true);
+                assertThat(assignments.get(1).getDocId()).isEqualTo(docId + 2);
+                assertThat(server.isSeenBefore("http://a.com/4")).isFalse();
+                assertThat(server.getDocCount()).isEqualTo(3);
+
+                Map<String, Integer> urls = new HashMap<>();
+                boolean enumerated = server.forEach(urls::put);
+                if (keyType != KeyType.URL && collisionPolicy == CollisionPolicy.IGNORE) {
+                    assertThat(enumerated).isFalse();
+                } else {
+                    assertThat(enumerated).isTrue();
+                    assertThat(urls).containsEntry("http://a.com/1", docId)
+                                    .containsEntry("http://a.com/3", docId + 2)
+                                    .hasSize(3);
+                }
+            } finally {
+                server.close();
+            }
+            // each key type and collision policy uses a database of its own
+            env.removeDatabase(null, env.getDatabaseNames().get(0));
+        }
+    }
+
+    @Test
+    public void testVerifyTellsCollidingUrlsApart() {
+        SleepycatDocIDServer server = newColliding(CollisionPolicy.VERIFY);
+        try {
+            int first = server.getNewDocID("http://a.com/1");
+            int second = server.getNewDocID("http://b.com/1");
+            List<DocIDAssignment> assignments =
+                    server.getOrCreateDocIds(Arrays.asList("http://b.com/1", "http://c.com/1"));
+
+            assertThat(second).isNotEqualTo(first);
+            assertThat(server.getDocId("http://a.com/1")).isEqualTo(first);
+            assertThat(server.getDocId("http://b.com/1")).isEqualTo(second);
+            assertThat(server.getDocId("http://d.com/1")).isEqualTo(-1);
+            assertThat(assignments).extracting(DocIDAssignment::isNew).containsExactly(false, true);
+            assertThat(server.getDocCount()).isEqualTo(3);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testIgnoreTakesCollidingUrlsForTheFirstOne() {
+        SleepycatDocIDServer server = newColliding(CollisionPolicy.IGNORE);
+        try {
+            int first = server.getNewDocID("http://a.com/1");
+
+            assertThat(server.isSeenBefore("http://b.com/1")).isTrue();
+            assertThat(server.getNewDocID("http://b.com/1")).isEqualTo(first);
+            assertThat(server.getDocCount()).isEqualTo(1);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testResumeWithOtherKeyTypeIsRejected() {
+        SleepycatDocIDServer server =
+                new SleepycatDocIDServer(env, config, KeyType.FINGERPRINT_64, CollisionPolicy.VERIFY);
+        int docId = server.getNewDocID("http://a.com/1");
+        server.close();
+
+        assertThatThrownBy(() -> new SleepycatDocIDServer(env, config, KeyType.URL, CollisionPolicy.VERIFY))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new SleepycatDocIDServer(env, config, KeyType.FINGERPRINT_64,
+                                                          CollisionPolicy.IGNORE))
+                .isInstanceOf(IllegalStateException.class);
+
+        server = new SleepycatDocIDServer(env, config, KeyType.FINGERPRINT_64, CollisionPolicy.VERIFY);
+        try {
+            assertThat(server.getDocId("http://a.com/1")).isEqualTo(docId);
+            assertThat(server.getNewDocID("http://a.com/2")).isEqualTo(docId + 1);
+        } finally {
+            server.close();
+        }
+    }
+
+    /*
+     * all urls share one fingerprint
+     */
+    private SleepycatDocIDServer newColliding(CollisionPolicy collisionPolicy) {
+        return new SleepycatDocIDServer(env, config, KeyType.FINGERPRINT_64, collisionPolicy) {
+            @Override
+            byte[] digest(byte[] urlBytes) {
+                return new byte[16];
+            }
+        };
+    }
+}
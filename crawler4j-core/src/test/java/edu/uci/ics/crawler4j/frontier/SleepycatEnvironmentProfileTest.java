@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+public class SleepycatEnvironmentProfileTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void testProfileIsAppliedToTheEnvironment() {
+        SleepycatEnvironmentProfile profile = SleepycatEnvironmentProfile.balanced();
+        profile.setCacheSize(16 * MB);
+        profile.setCheckpointerWakeupInterval(30_000);
+        EnvironmentConfig envConfig = newConfig(true);
+        profile.applyTo(envConfig);
+
+        Environment env = new Environment(folder, envConfig);
+        try {
+            EnvironmentConfig applied = env.getConfig();
+            assertThat(applied.getConfigParam(EnvironmentConfig.LOG_FILE_MAX)).isEqualTo(Long.toString(50 * MB));
+            assertThat(applied.getConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION)).isEqualTo("50");
+            assertThat(applied.getConfigParam(EnvironmentConfig.CHECKPOINTER_BYTES_INTERVAL))
+                    .isEqualTo(Long.toString(100 * MB));
+            assertThat(applied.getConfigParam(EnvironmentConfig.CHECKPOINTER_WAKEUP_INTERVAL)).isEqualTo("30000 ms");
+            assertThat(applied.getDurability()).isEqualTo(Durability.COMMIT_WRITE_NO_SYNC);
+            assertThat(env.getMutableConfig().getCacheSize()).isEqualTo(16 * MB);
+        } finally {
+            env.close();
+        }
+    }
+
+    @Test
+    public void testDurabilityIsOnlyAppliedToTransactionalEnvironments() {
+        EnvironmentConfig envConfig = newConfig(false);
+        SleepycatEnvironmentProfile.durable().applyTo(envConfig);
+
+        assertThat(envConfig.getDurability()).isNull();
+        assertThat(envConfig.getConfigParam(EnvironmentConfig.LOG_FILE_MAX)).isEqualTo(Long.toString(20 * MB));
+    }
+
+    @Test
+    public void testCacheSizeTakesPrecedenceOverCachePercent() {
+        SleepycatEnvironmentProfile profile = SleepycatEnvironmentProfile.defaults();
+        profile.setCachePercent(10);
+        EnvironmentConfig envConfig = newConfig(true);
+        profile.applyTo(envConfig);
+        assertThat(envConfig.getCachePercent()).isEqualTo(10);
+
+        profile.setCacheSize(16 * MB);
+        envConfig = newConfig(true);
+        profile.applyTo(envConfig);
+        // getCacheSize() only reports the size once an environment is opened
+        assertThat(envConfig.getConfigParam(EnvironmentConfig.MAX_MEMORY)).isEqualTo(Long.toString(16 * MB));
+        assertThat(envConfig.getCachePercent()).isEqualTo(new EnvironmentConfig().getCachePercent());
+    }
+
+    @Test
+    public void testDefaultsKeepTheJEDefaults() {
+        EnvironmentConfig envConfig = newConfig(true);
+        SleepycatEnvironmentProfile.defaults().applyTo(envConfig);
+        EnvironmentConfig untouched = newConfig(true);
+
+        assertThat(envConfig.getConfigParam(EnvironmentConfig.LOG_FILE_MAX))
+                .isEqualTo(untouched.getConfigParam(EnvironmentConfig.LOG_FILE_MAX));
+        assertThat(envConfig.getConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION))
+                .isEqualTo(untouched.getConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION));
+        assertThat(envConfig.getDurability()).isEqualTo(untouched.getDurability());
+        assertThat(envConfig.getConfigParam(EnvironmentConfig.MAX_MEMORY))
+                .isEqualTo(untouched.getConfigParam(EnvironmentConfig.MAX_MEMORY));
+    }
+
+    private static EnvironmentConfig newConfig(boolean transactional) {
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        envConfig.setTransactional(transactional);
+        return envConfig;
+    }
+}
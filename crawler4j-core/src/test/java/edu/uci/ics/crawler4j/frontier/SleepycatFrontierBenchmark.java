@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.url.WebURLFactory;
+import edu.uci.ics.crawler4j.util.IO;
+
+/**
+ * Measures how many urls per second the Sleepycat frontier schedules and hands out (including
+ * {@link Frontier#setProcessed(WebURL)}) with each {@link SleepycatEnvironmentProfile}. Not run
+ * as part of the test suite, start it via its main method:
+ * <pre>
+ * SleepycatFrontierBenchmark [urls] [resumable]
+ * </pre>
+ * Durability only matters for resumable crawls, which is the default here.
+ */
+public class SleepycatFrontierBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int urls = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        boolean resumable = args.length <= 1 || Boolean.parseBoolean(args[1]);
+
+        Map<String, Supplier<SleepycatEnvironmentProfile>> profiles = new LinkedHashMap<>();
+        profiles.put("defaults", SleepycatEnvironmentProfile::defaults);
+        profiles.put("durable", SleepycatEnvironmentProfile::durable);
+        profiles.put("balanced", SleepycatEnvironmentProfile::balanced);
+        profiles.put("throughput", SleepycatEnvironmentProfile::throughput);
+
+        System.out.printf("%d urls, resumable: %b%n", urls, resumable);
+        System.out.printf("%-12s %18s %18s%n", "profile", "scheduled/s", "dequeued/s");
+        for (Map.Entry<String, Supplier<SleepycatEnvironmentProfile>> profile : profiles.entrySet()) {
+            File folder = Files.createTempDirectory("crawler4j-benchmark").toFile();
+            try {
+                CrawlConfig config = new CrawlConfig();
+                config.setCrawlStorageFolder(folder.getAbsolutePath());
+                config.setResumableCrawling(resumable);
+                SleepycatFrontierConfiguration frontierConfiguration =
+                        new SleepycatFrontierConfiguration(config, profile.getValue().get());
+                try {
+                    Frontier frontier = frontierConfiguration.getFrontier();
+                    double scheduled = schedule(frontier, frontierConfiguration.getWebURLFactory(), urls);
+                    double dequeued = dequeue(frontier, urls, config.getBatchReadSize());
+                    System.out.printf("%-12s %,18.0f %,18.0f%n", profile.getKey(), scheduled, dequeued);
+                } finally {
+                    frontierConfiguration.getFrontier().close();
+                    frontierConfiguration.getDocIDServer().close();
+                    frontierConfiguration.close();
+                }
+            } finally {
+                IO.deleteFolder(folder);
+            }
+        }
+    }
+
+    private static double schedule(Frontier frontier, WebURLFactory factory, int urls) {
+        long start = System.nanoTime();
+        List<WebURL> batch = new ArrayList<>();
+        for (int i = 1; i <= urls; i++) {
+            WebURL url = factory.newWebUrl();
+            url.setURL("http://host" + (i % 1000) + ".example.com/page/" + i + ".html");
+            url.setDocid(i);
+            url.setDepth((short) 1);
+            batch.add(url);
+            if (batch.size() == 100) {
+                frontier.scheduleAll(batch);
+                batch.clear();
+            }
+        }
+        frontier.scheduleAll(batch);
+        return urls / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double dequeue(Frontier frontier, int urls, int batchSize) {
+        long start = System.nanoTime();
+        int dequeued = 0;
+        List<WebURL> batch = new ArrayList<>();
+        while (dequeued < urls) {
+            batch.clear();
+            frontier.getNextURLs(batchSize, batch);
+            for (WebURL url : batch) {
+                frontier.setProcessed(url);
+            }
+            dequeued += batch.size();
+        }
+        return urls / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.url.WebURLFactory;
+
+public class SleepycatFrontierTest {
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void testRescheduledUrlsDoNotCountAgainstMaxPagesToFetch() throws Exception {
+        CrawlConfig config = newConfig();
+        config.setMaxPagesToFetch(2);
+        SleepycatFrontierConfiguration frontierConfiguration = new SleepycatFrontierConfiguration(config);
+        try {
+            Frontier frontier = frontierConfiguration.getFrontier();
+            WebURLFactory factory = frontierConfiguration.getWebURLFactory();
+            List<WebURL> urls = new ArrayList<>();
+            urls.add(newURL(factory, 1, "http://a.com/1"));
+            urls.add(newURL(factory, 2, "http://a.com/2"));
+            frontier.scheduleAll(urls);
+            frontier.schedule(newURL(factory, 3, "http://a.com/3"));
+
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(10, result);
+            assertThat(result).extracting(WebURL::getURL).containsExactly("http://a.com/1", "http://a.com/2");
+
+            // the first one is retried, the second one is done
+            frontier.setProcessed(result.get(0));
+            frontier.reschedule(result.get(0));
+            frontier.setProcessed(result.get(1));
+
+            result.clear();
+            frontier.getNextURLs(10, result);
+            assertThat(result).extracting(WebURL::getURL).containsExactly("http://a.com/1");
+            frontier.setProcessed(result.get(0));
+
+            assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(2);
+            assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(2);
+            assertThat(frontier.getQueueLength()).isZero();
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    @Test
+    public void testStaleRemovalKeepsTheInProcessEntryOfARetry() throws Exception {
+        CrawlConfig config = newConfig();
+        config.setResumableCrawling(true);
+        config.setProcessedBatchSize(100);
+        config.setProcessedFlushInterval(60_000);
+        SleepycatFrontierConfiguration frontierConfiguration = new SleepycatFrontierConfiguration(config);
+        try {
+            SleepycatFrontierImpl frontier = (SleepycatFrontierImpl) frontierConfiguration.getFrontier();
+            frontier.schedule(newURL(frontierConfiguration.getWebURLFactory(), 1, "http://a.com/1"));
+
+            List<WebURL> result = new ArrayList<>();
+            frontier.getNextURLs(10, result);
+            // failed, its removal is pending while the retry is dequeued
+            frontier.setProcessed(result.get(0));
+            frontier.reschedule(result.get(0));
+            result.clear();
+            frontier.getNextURLs(10, result);
+            assertThat(result).extracting(WebURL::getURL).containsExactly("http://a.com/1");
+
+            frontier.flushProcessed();
+            assertThat(frontier.getNumberOfAssignedPages()).isEqualTo(1);
+        } finally {
+            close(frontierConfiguration);
+        }
+
+        // the retry was not processed before the crawl stopped, so it is crawled again
+        frontierConfiguration = new SleepycatFrontierConfiguration(config);
+        try {
+            assertThat(frontierConfiguration.getFrontier().getQueueLength()).isEqualTo(1);
+        } finally {
+            close(frontierConfiguration);
+        }
+    }
+
+    private CrawlConfig newConfig() {
+        CrawlConfig config = new CrawlConfig();
+        config.setCrawlStorageFolder(folder.getAbsolutePath());
+        return config;
+    }
+
+    private static WebURL newURL(WebURLFactory factory, int docid, String url) {
+        WebURL webURL = factory.newWebUrl();
+        webURL.setURL(url);
+        webURL.setDocid(docid);
+        return webURL;
+    }
+
+    private static void close(FrontierConfiguration frontierConfiguration) {
+        frontierConfiguration.getFrontier().close();
+        frontierConfiguration.getDocIDServer().close();
+        frontierConfiguration.close();
+    }
+}
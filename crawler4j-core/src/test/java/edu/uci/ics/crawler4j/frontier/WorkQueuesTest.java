@@ -0,0 +1,225 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.url.WebURLImpl;
+
+public class WorkQueuesTest {
+
+    @TempDir
+    File folder;
+
+    private Environment env;
+
+    @BeforeEach
+    public void setUp() {
+        env = openEnvironment();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        env.close();
+    }
+
+    @Test
+    public void testPollMovesUrlsToInProcessInCrawlOrder() {
+        WorkQueues queue = new WorkQueues(env, "queue", true);
+        WorkQueues inProcess = new WorkQueues(env, "inProcess", true);
+        try {
+            for (int docid = 5; docid >= 1; docid--) {
+                queue.put(newURL(docid, "http://a.com/" + docid));
+            }
+
+            assertThat(queue.poll(3, inProcess)).extracting(WebURL::getDocid).containsExactly(1, 2, 3);
+            assertThat(queue.getLength()).isEqualTo(2);
+            assertThat(inProcess.get(10)).extracting(WebURL::getDocid).containsExactly(1, 2, 3);
+        } finally {
+            queue.close();
+            inProcess.close();
+        }
+    }
+
+    @Test
+    public void testFailedPollAbortsTheWholeBatch() {
+        WorkQueues queue = new WorkQueues(env, "queue", true);
+        AtomicInteger keys = new AtomicInteger();
+        WorkQueues failing = new WorkQueues(env, "failing", true) {
+            @Override
+            protected DatabaseEntry getKey(WebURL url) {
+                if (keys.incrementAndGet() > 2) {
+                    throw new IllegalStateException("no space left");
+                }
+                return super.getKey(url);
+            }
+        };
+        WorkQueues inProcess = new WorkQueues(env, "inProcess", true);
+        try {
+            for (int docid = 1; docid <= 5; docid++) {
+                queue.put(newURL(docid, "http://a.com/" + docid));
+            }
+
+            assertThatThrownBy(() -> queue.poll(5, failing)).isInstanceOf(IllegalStateException.class);
+
+            // neither the urls deleted nor those put in process before the failure are kept
+            assertThat(queue.getLength()).isEqualTo(5);
+            assertThat(failing.getLength()).isZero();
+
+            List<WebURL> polled = queue.poll(5, inProcess);
+            assertThat(polled).extracting(WebURL::getDocid).containsExactly(1, 2, 3, 4, 5);
+            assertThat(inProcess.getLength()).isEqualTo(5);
+        } finally {
+            queue.close();
+            failing.close();
+            inProcess.close();
+        }
+    }
+
+    @Test
+    public void testInterleavedQueueTakesTurnsBetweenHosts() {
+        WorkQueues queue = new WorkQueues(env, "queue", true, true);
+        try {
+            queue.put(newURL(1, "http://a.com/1"));
+            queue.put(newURL(2, "http://a.com/2"));
+            queue.put(newURL(3, "http://a.com/3"));
+            queue.put(newURL(4, "http://b.com/1"));
+            queue.put(newURL(5, "http://b.com/2"));
+            queue.put(newURL(6, "http://c.com/1"));
+            // depth still comes first
+            WebURL deeper = newURL(7, "http://c.com/2");
+            deeper.setDepth((short) 1);
+            queue.put(deeper);
+
+            assertThat(queue.poll(10, null)).extracting(WebURL::getDocid).containsExactly(1, 4, 6, 2, 5, 3, 7);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testLateHostJoinsTheCurrentRound() {
+        WorkQueues queue = new WorkQueues(env, "queue", true, true);
+        try {
+            for (int i = 1; i <= 5; i++) {
+                queue.put(newURL(i, "http://a.com/" + i));
+                queue.put(newURL(5 + i, "http://b.com/" + i));
+            }
+            assertThat(queue.poll(6, null)).extracting(WebURL::getDocid).containsExactly(1, 6, 2, 7, 3, 8);
+
+            for (int i = 1; i <= 3; i++) {
+                queue.put(newURL(10 + i, "http://c.com/" + i));
+            }
+            assertThat(queue.poll(10, null)).extracting(WebURL::getDocid).containsExactly(11, 4, 9, 12, 5, 10, 13);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testHostsTakeTurnsInEachDepth() {
+        WorkQueues queue = new WorkQueues(env, "queue", true, true);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                queue.put(newURL(i, "http://a.com/" + i));
+            }
+            int docid = 4;
+            for (String url : new String[]{"http://a.com/4", "http://a.com/5", "http://b.com/1", "http://b.com/2"}) {
+                WebURL deeper = newURL(docid++, url);
+                deeper.setDepth((short) 1);
+                queue.put(deeper);
+            }
+
+            assertThat(queue.poll(10, null)).extracting(WebURL::getDocid).containsExactly(1, 2, 3, 4, 6, 5, 7);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testResumedQueueContinuesTheSequences() {
+        WorkQueues queue = new WorkQueues(env, "queue", true, true);
+        queue.put(newURL(1, "http://a.com/1"));
+        queue.put(newURL(2, "http://a.com/2"));
+        queue.put(newURL(3, "http://a.com/3"));
+        queue.put(newURL(4, "http://b.com/1"));
+        assertThat(queue.poll(2, null)).extracting(WebURL::getDocid).containsExactly(1, 4);
+        queue.close();
+
+        queue = new WorkQueues(env, "queue", true, true);
+        try {
+            queue.put(newURL(5, "http://b.com/2"));
+            queue.put(newURL(6, "http://c.com/1"));
+            queue.put(newURL(7, "http://a.com/4"));
+
+            // new urls neither jump the queue nor come after all persisted ones
+            assertThat(queue.poll(10, null)).extracting(WebURL::getDocid).containsExactly(2, 5, 6, 3, 7);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testResumeWithOtherKeyLayoutIsRejected() {
+        WorkQueues queue = new WorkQueues(env, "queue", true, true);
+        queue.put(newURL(1, "http://a.com/1"));
+        queue.close();
+
+        assertThatThrownBy(() -> new WorkQueues(env, "queue", true, false))
+                .isInstanceOf(IllegalStateException.class);
+
+        queue = new WorkQueues(env, "queue", true, true);
+        try {
+            assertThat(queue.getLength()).isEqualTo(1);
+        } finally {
+            queue.close();
+        }
+    }
+
+    private Environment openEnvironment() {
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        envConfig.setTransactional(true);
+        envConfig.setLocking(true);
+        return new Environment(folder, envConfig);
+    }
+
+    static WebURL newURL(int docid, String url) {
+        WebURL webURL = new WebURLImpl();
+        webURL.setURL(url);
+        webURL.setDocid(docid);
+        return webURL;
+    }
+}
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.robotstxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import crawlercommons.robots.SimpleRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+
+public class CompiledRobotRulesTest {
+
+    private static final String ROBOTS_TXT = "User-agent: *\n" +
+            "Disallow: /private/\n" +
+            "Allow: /private/public/\n" +
+            "Disallow: /*.pdf$\n" +
+            "Disallow: /search?q=\n" +
+            "Disallow: /exact$\n" +
+            "Allow: /docs/index.html\n" +
+            "Disallow: /docs/\n" +
+            "Disallow: /a/*/b\n" +
+            "Allow: /tie\n" +
+            "Disallow: /tie\n";
+
+    @Test
+    public void testMatchesSimpleRobotRules() {
+        SimpleRobotRules rules = parse(ROBOTS_TXT);
+        CompiledRobotRules compiled = new CompiledRobotRules(rules);
+
+        assertThat(compiled.getRuleCount()).isEqualTo(10);
+        for (String path : List.of("/", "/private/", "/private/x.html", "/private/public/x.html",
+                                   "/file.pdf", "/file.pdf?x=1", "/dir/file.pdf", "/search?q=crawler",
+                                   "/search", "/exact", "/exact/more", "/docs/", "/docs/index.html",
+                                   "/docs/other.html", "/a/x/b", "/a/x/y/b/c", "/a/b", "/tie",
+                                   "/robots.txt", "/%7Efoo", "/~foo")) {
+            String url = "http://www.example.com" + path;
+            assertThat(compiled.isAllowed(url)).as(path).isEqualTo(rules.isAllowed(url));
+        }
+    }
+
+    @Test
+    public void testLongestMatchWins() {
+        CompiledRobotRules compiled = new CompiledRobotRules(parse(ROBOTS_TXT));
+
+        assertThat(compiled.isAllowed("http://www.example.com/private/x.html")).isFalse();
+        assertThat(compiled.isAllowed("http://www.example.com/private/public/x.html")).isTrue();
+        assertThat(compiled.isAllowed("http://www.example.com/exact")).isFalse();
+        assertThat(compiled.isAllowed("http://www.example.com/exact/more")).isTrue();
+        assertThat(compiled.isAllowed("http://www.example.com/a/x/y/b")).isFalse();
+        assertThat(compiled.isAllowed("http://www.example.com/tie")).isTrue();
+    }
+
+    @Test
+    public void testRobotRulesUseCompiledRules() {
+        RobotRules robotRules = new RobotRules(parse(ROBOTS_TXT)).compile();
+
+        assertThat(robotRules.isAllowed("http://www.example.com/private/x.html")).isFalse();
+        assertThat(robotRules.isAllowed("http://www.example.com/docs/index.html")).isTrue();
+
+        RobotRules allowAll = new RobotRules(new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL));
+        assertThat(allowAll.compile()).isSameAs(allowAll);
+    }
+
+    private static SimpleRobotRules parse(String content) {
+        return new SimpleRobotRulesParser().parseContent("http://www.example.com/robots.txt",
+                content.getBytes(StandardCharsets.UTF_8), "text/plain", List.of("crawler4j"));
+    }
+}
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.robotstxt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import crawlercommons.robots.SimpleRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+
+/**
+ * Measures the cost of {@link RobotRules#isAllowed(String)} against the number of rules of a
+ * robots.txt, with and without {@link RobotRules#compile()}. Not run as part of the test suite,
+ * start it via its main method:
+ * <pre>
+ * RobotRulesBenchmark [seconds per run]
+ * </pre>
+ */
+public class RobotRulesBenchmark {
+
+    private static final int[] RULE_COUNTS = {10, 100, 1_000, 10_000};
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+
+        Random random = new Random(42);
+        String[] urls = new String[4096];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = "http://www.example.com/" + path(random) + "/" + path(random) + ".html?id=" + i;
+        }
+
+        System.out.printf("%10s %18s %18s%n", "rules", "simple ns/op", "compiled ns/op");
+        for (int ruleCount : RULE_COUNTS) {
+            SimpleRobotRules rules = parse(robotsTxt(ruleCount, random));
+            RobotRules simple = new RobotRules(rules);
+            RobotRules compiled = new RobotRules(rules).compile();
+            // warm up
+            run(simple, urls, seconds / 2);
+            run(compiled, urls, seconds / 2);
+            System.out.printf("%,10d %18.1f %18.1f%n", ruleCount, run(simple, urls, seconds),
+                              run(compiled, urls, seconds));
+        }
+    }
+
+    private static double run(RobotRules rules, String[] urls, double seconds) {
+        long end = System.nanoTime() + (long) (seconds * 1_000_000_000L);
+        long begin = System.nanoTime();
+        long ops = 0;
+        int allowed = 0;
+        while ((ops & 0xFF) != 0 || System.nanoTime() < end) {
+            if (rules.isAllowed(urls[(int) (ops & (urls.length - 1))])) {
+                allowed++;
+            }
+            ops++;
+        }
+        if (allowed < 0) {
+            System.out.println("unreachable, keeps the result alive");
+        }
+        return (System.nanoTime() - begin) / (double) ops;
+    }
+
+    private static String robotsTxt(int ruleCount, Random random) {
+        StringBuilder robotsTxt = new StringBuilder("User-agent: *\n");
+        for (int i = 0; i < ruleCount; i++) {
+            robotsTxt.append(random.nextInt(4) == 0 ? "Allow: /" : "Disallow: /").append(path(random));
+            if (random.nextInt(20) == 0) {
+                robotsTxt.append("/*.pdf$");
+            } else {
+                robotsTxt.append('/').append(path(random));
+            }
+            robotsTxt.append('\n');
+        }
+        return robotsTxt.toString();
+    }
+
+    private static String path(Random random) {
+        return "section" + random.nextInt(50) + "-" + Integer.toString(random.nextInt(1_000), 36);
+    }
+
+    private static SimpleRobotRules parse(String content) {
+        return new SimpleRobotRulesParser().parseContent("http://www.example.com/robots.txt",
+                content.getBytes(StandardCharsets.UTF_8), "text/plain", List.of("crawler4j"));
+    }
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.robotstxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import crawlercommons.robots.SimpleRobotRulesParser;
+
+public class RobotRulesStoreTest {
+
+    @TempDir
+    public File folder;
+
+    @Test
+    public void testResumedStoreReturnsTheLatestRulesOfEachHost() throws IOException {
+        RobotRulesStore store = new RobotRulesStore(folder);
+        store.save("a.com", rules("Disallow: /a", 1));
+        store.save("b.com", rules("Disallow: /b", 2));
+        store.save("a.com", rules("Disallow: /c", 3));
+        store.close();
+
+        store = new RobotRulesStore(folder);
+        try {
+            RobotRules a = store.load("a.com");
+            assertThat(a.getTimeFetched()).isEqualTo(3);
+            assertThat(a.isAllowed("http://a.com/a")).isTrue();
+            assertThat(a.isAllowed("http://a.com/c")).isFalse();
+            assertThat(store.load("b.com").isAllowed("http://b.com/b")).isFalse();
+            assertThat(store.load("c.com")).isNull();
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testStoreIsCompactedWhenOpened() throws IOException {
+        RobotRulesStore store = new RobotRulesStore(folder);
+        for (int i = 0; i < 10; i++) {
+            store.save("a.com", rules("Disallow: /" + i, i));
+        }
+        store.close();
+        File log = new File(folder, "robots.log");
+        long length = log.length();
+
+        store = new RobotRulesStore(folder);
+        try {
+            assertThat(log.length()).isLessThan(length / 5);
+            assertThat(store.load("a.com").getTimeFetched()).isEqualTo(9);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        RobotRulesStore store = new RobotRulesStore(folder);
+        store.save("a.com", rules("Disallow: /a", 1));
+        store.save("b.com", rules("Disallow: /b", 2));
+        store.close();
+        File log = new File(folder, "robots.log");
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 10);
+        }
+
+        store = new RobotRulesStore(folder);
+        try {
+            assertThat(store.load("a.com").getTimeFetched()).isEqualTo(1);
+            assertThat(store.load("b.com")).isNull();
+            // appended after the dropped record
+            store.save("b.com", rules("Disallow: /b", 3));
+        } finally {
+            store.close();
+        }
+
+        store = new RobotRulesStore(folder);
+        try {
+            assertThat(store.load("b.com").getTimeFetched()).isEqualTo(3);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static RobotRules rules(String robotsTxt, long timeFetched) {
+        String content = "User-agent: *\n" + robotsTxt + "\n";
+        return new RobotRules(new SimpleRobotRulesParser().parseContent("http://a.com/robots.txt",
+                content.getBytes(StandardCharsets.UTF_8), "text/plain", "crawler4j"), timeFetched);
+    }
+}
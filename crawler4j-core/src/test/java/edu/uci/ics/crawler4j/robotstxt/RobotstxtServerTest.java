@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.robotstxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.fetcher.PageFetcher;
+import edu.uci.ics.crawler4j.test.SimpleWebURL;
+import edu.uci.ics.crawler4j.test.SimpleWebURLFactory;
+import edu.uci.ics.crawler4j.test.TestUtils;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+public class RobotstxtServerTest {
+
+    @RegisterExtension
+    static WireMockExtension wm = WireMockExtension.newInstance()
+        .options(new WireMockConfiguration().dynamicPort())
+        .build();
+
+    private CrawlConfig config;
+    private PageFetcher pageFetcher;
+    private RobotstxtServer robotstxtServer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        config = new CrawlConfig();
+        config.setPolitenessDelay(0);
+        pageFetcher = new PageFetcher(config, TestUtils.newNormalizer());
+        RobotstxtConfig robotstxtConfig = new RobotstxtConfig();
+        robotstxtServer = new RobotstxtServer(robotstxtConfig, pageFetcher, new SimpleWebURLFactory());
+        robotstxtServer.setCrawlConfig(config);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pageFetcher.shutDown();
+    }
+
+    @Test
+    public void testConcurrentMissesFetchRobotstxtOnce() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/robots.txt"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/plain")
+                                                     .withFixedDelay(500)
+                                                     .withBody("User-agent: *\nDisallow: /private/\n")));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> allowed = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String path = i % 2 == 0 ? "/public/" : "/private/";
+                allowed.add(executor.submit(() -> robotstxtServer.allows(url(path + "page.html"))));
+            }
+            for (int i = 0; i < allowed.size(); i++) {
+                assertThat(allowed.get(i).get()).isEqualTo(i % 2 == 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        wm.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/robots.txt")));
+    }
+
+    @Test
+    public void testNonBlockingParksUrlsOfUnknownHosts() throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/robots.txt"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/plain")
+                                                     .withFixedDelay(200)
+                                                     .withBody("User-agent: *\nDisallow: /private/\n")));
+        RobotstxtConfig robotstxtConfig = new RobotstxtConfig();
+        robotstxtConfig.setNonBlocking(true);
+        RobotstxtServer nonBlocking = new RobotstxtServer(robotstxtConfig, pageFetcher, new SimpleWebURLFactory());
+        nonBlocking.setCrawlConfig(config);
+        try {
+            List<WebURL> released = new CopyOnWriteArrayList<>();
+
+            assertThat(nonBlocking.allowsOrPark(url("/public/page.html"), released::add))
+                    .isEqualTo(RobotstxtServer.Decision.PARKED);
+            assertThat(nonBlocking.allowsOrPark(url("/private/page.html"), released::add))
+                    .isEqualTo(RobotstxtServer.Decision.PARKED);
+            assertThat(nonBlocking.getParkedUrlCount()).isEqualTo(2);
+
+            for (int i = 0; i < 100 && nonBlocking.getParkedUrlCount() > 0; i++) {
+                Thread.sleep(50);
+            }
+            assertThat(nonBlocking.getParkedUrlCount()).isZero();
+            assertThat(released).extracting(WebURL::getURL).containsExactly(url("/public/page.html").getURL());
+
+            assertThat(nonBlocking.allowsOrPark(url("/public/other.html"), released::add))
+                    .isEqualTo(RobotstxtServer.Decision.ALLOWED);
+            assertThat(nonBlocking.allowsOrPark(url("/private/other.html"), released::add))
+                    .isEqualTo(RobotstxtServer.Decision.DISALLOWED);
+            wm.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/robots.txt")));
+        } finally {
+            nonBlocking.shutDown();
+        }
+    }
+
+    @Test
+    public void testResumableCrawlReusesStoredRobotstxt(@TempDir File crawlStorageFolder) throws Exception {
+        wm.stubFor(WireMock.get(WireMock.urlEqualTo("/robots.txt"))
+                                 .willReturn(WireMock.aResponse()
+                                                     .withStatus(200)
+                                                     .withHeader("Content-Type", "text/plain")
+                                                     .withBody("User-agent: *\nDisallow: /private/\n")));
+        config.setCrawlStorageFolder(crawlStorageFolder.getAbsolutePath());
+        config.setResumableCrawling(true);
+
+        RobotstxtServer first = new RobotstxtServer(new RobotstxtConfig(), pageFetcher, new SimpleWebURLFactory());
+        first.setCrawlConfig(config);
+        assertThat(first.allows(url("/private/page.html"))).isFalse();
+        first.shutDown();
+
+        // a restarted crawl starts with an empty cache
+        RobotstxtServer second = new RobotstxtServer(new RobotstxtConfig(), pageFetcher, new SimpleWebURLFactory());
+        second.setCrawlConfig(config);
+        assertThat(second.allows(url("/private/page.html"))).isFalse();
+        assertThat(second.allows(url("/public/page.html"))).isTrue();
+        second.shutDown();
+
+        wm.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/robots.txt")));
+    }
+
+    private static WebURL url(String path) {
+        WebURL url = new SimpleWebURL();
+        url.setURL("http://localhost:" + wm.getPort() + path);
+        return url;
+    }
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.tests.fetcher.politeness;
+
+import java.net.SocketTimeoutException;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.fetcher.politeness.AdaptivePolitenessServer;
+import edu.uci.ics.crawler4j.test.SimpleWebURL;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+public class AdaptivePolitenessServerTestCase {
+
+    private AdaptivePolitenessServer politenessServer;
+    private CrawlConfig config;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CrawlConfig();
+        this.config.setPolitenessDelay(1000);
+        this.config.setMinAdaptiveDelay(100);
+        this.config.setMaxAdaptiveDelay(10_000);
+        this.politenessServer = new AdaptivePolitenessServer(config);
+    }
+
+    @Test
+    public void testFastResponsesShrinkDelay() {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+        for (int i = 0; i < 20; i++) {
+            politenessServer.onResponse(webUrl, 10, 200);
+        }
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(100);
+        Assertions.assertThat(politenessServer.getHostThrottles().get("github.com").getRequestRate()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void testErrorsBackOffExponentially() {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+        politenessServer.onResponse(webUrl, 10, 503);
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(2000);
+        politenessServer.onFailure(webUrl, 5000, new SocketTimeoutException());
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(4000);
+        politenessServer.onResponse(webUrl, 10, 429);
+        politenessServer.onResponse(webUrl, 10, 500);
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(10_000);
+
+        AdaptivePolitenessServer.HostThrottle throttle = politenessServer.getHostThrottles().get("github.com");
+        Assertions.assertThat(throttle.getErrorRate()).isEqualTo(1.0);
+        Assertions.assertThat(politenessServer.getPolitenessDelay(newWebURL("http://www.google.com"))).isEqualTo(1000);
+    }
+
+    @Test
+    public void testClientErrorsDoNotShrinkDelay() {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+        politenessServer.onResponse(webUrl, 10, 404);
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(1000);
+    }
+
+    @Test
+    public void testCrawlDelayIsLowerBound() {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+        politenessServer.setPolitenessDelay(webUrl, 2000);
+        politenessServer.onResponse(webUrl, 10, 200);
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(2000);
+    }
+
+    @Test
+    public void testCrawlDelayOutlivesIdleHosts() throws Exception {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+        politenessServer.setPolitenessDelay(webUrl, 2000);
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl)).isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+
+        Thread.sleep(10);
+        politenessServer.removeIdleHosts(5);
+
+        Assertions.assertThat(politenessServer.getSize()).isZero();
+        Assertions.assertThat(politenessServer.getPolitenessDelay(webUrl)).isEqualTo(2000);
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl)).isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl)).isBetween(1900L, 2000L);
+    }
+
+    @Test
+    public void testApplyPolitenessSameHost() {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl)).isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl)).isBetween(900L, 1000L);
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("http://www.google.com")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+    }
+
+    private static WebURL newWebURL(String url) {
+        WebURL webUrl = new SimpleWebURL();
+        webUrl.setURL(url);
+        return webUrl;
+    }
+}
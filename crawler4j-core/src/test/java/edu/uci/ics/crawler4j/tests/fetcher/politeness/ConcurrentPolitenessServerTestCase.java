@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.tests.fetcher.politeness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.fetcher.politeness.ConcurrentPolitenessServer;
+import edu.uci.ics.crawler4j.test.Crawler4jTestUtils;
+import edu.uci.ics.crawler4j.test.SimpleWebURL;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+public class ConcurrentPolitenessServerTestCase {
+
+    private ConcurrentPolitenessServer politenessServer;
+    private CrawlConfig config;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CrawlConfig();
+        this.config.setPolitenessDelay(60_000);
+        this.politenessServer = new ConcurrentPolitenessServer(config, 64);
+    }
+
+    @Test
+    public void testApplyPolitenessSameHost() {
+        WebURL webUrl = newWebURL("https://github.com/yasserg/crawler4j");
+
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl)).isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+
+        webUrl.setURL("https://github.com/yasserg/crawler4j/blob/master/pom.xml");
+
+        Assertions.assertThat(politenessServer.applyPoliteness(webUrl))
+                .isBetween(config.getPolitenessDelay() - 1000L, (long) config.getPolitenessDelay());
+    }
+
+    @Test
+    public void testApplyPolitenessDifferentHosts() {
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("https://github.com/yasserg/crawler4j")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("http://www.google.com")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void testPerHostPolitenessDelay() {
+        politenessServer.setPolitenessDelay(newWebURL("https://github.com/"), 120_000);
+
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("https://github.com/yasserg")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("https://github.com/rzo1")))
+                .isBetween(119_000L, 120_000L);
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("http://www.google.com")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.applyPoliteness(newWebURL("http://www.google.com/search")))
+                .isBetween(config.getPolitenessDelay() - 1000L, (long) config.getPolitenessDelay());
+    }
+
+    @Test
+    public void testCrawlDelayBelongsToItsHost() {
+        politenessServer.setPolitenessDelay(Crawler4jTestUtils.newWebURL("http://slow.example.com/"), 120_000);
+        politenessServer.setPolitenessDelay(Crawler4jTestUtils.newWebURL("http://fast.example.com/"), 1_000);
+
+        // the delay of another host of the same domain does not overwrite it
+        Assertions.assertThat(politenessServer.applyPoliteness(Crawler4jTestUtils.newWebURL("http://slow.example.com/1")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        Assertions.assertThat(politenessServer.applyPoliteness(Crawler4jTestUtils.newWebURL("http://slow.example.com/2")))
+                .isBetween(119_000L, 120_000L);
+
+        // nor does it slow down the other hosts of the domain
+        Assertions.assertThat(politenessServer.applyPoliteness(Crawler4jTestUtils.newWebURL("http://www.example.org/1")))
+                .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        politenessServer.setPolitenessDelay(Crawler4jTestUtils.newWebURL("http://slow.example.org/"), 120_000);
+        Assertions.assertThat(politenessServer.applyPoliteness(Crawler4jTestUtils.newWebURL("http://www.example.org/2")))
+                .isBetween(config.getPolitenessDelay() - 1000L, (long) config.getPolitenessDelay());
+    }
+
+    @Test
+    public void testConcurrentRequestsReserveConsecutiveSlots() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> delays = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                delays.add(executor.submit(() -> politenessServer.applyPoliteness(newWebURL("https://github.com/"))));
+            }
+            long applied = 0;
+            long maxDelay = 0;
+            for (Future<Long> delay : delays) {
+                if (delay.get() == PolitenessServer.NO_POLITENESS_APPLIED) {
+                    applied++;
+                }
+                maxDelay = Math.max(maxDelay, delay.get());
+            }
+            Assertions.assertThat(applied).isEqualTo(1);
+            Assertions.assertThat(maxDelay).isGreaterThan(6L * config.getPolitenessDelay());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMemoryIsBounded() {
+        for (int i = 0; i < 10_000; i++) {
+            politenessServer.applyPoliteness(newWebURL("http://host" + i + ".com/"));
+        }
+        Assertions.assertThat(politenessServer.getSize()).isLessThanOrEqualTo(64);
+    }
+
+    @Test
+    public void testFullSetDoesNotEvictHostsWithinTheirDelay() {
+        ConcurrentPolitenessServer singleSet = new ConcurrentPolitenessServer(config, 8);
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertThat(singleSet.applyPoliteness(newWebURL("http://host" + i + ".com/")))
+                    .isEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        }
+
+        // the new host shares the slot of the oldest host and has to wait for it
+        Assertions.assertThat(singleSet.applyPoliteness(newWebURL("http://host8.com/")))
+                .isBetween(config.getPolitenessDelay() - 1000L, (long) config.getPolitenessDelay());
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertThat(singleSet.applyPoliteness(newWebURL("http://host" + i + ".com/page")))
+                    .isNotEqualTo(PolitenessServer.NO_POLITENESS_APPLIED);
+        }
+    }
+
+    private static WebURL newWebURL(String url) {
+        WebURL webUrl = new SimpleWebURL();
+        webUrl.setURL(url);
+        return webUrl;
+    }
+}
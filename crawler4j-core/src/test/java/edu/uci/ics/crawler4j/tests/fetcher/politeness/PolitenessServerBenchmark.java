@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-core
+ * %%
+ * Copyright (C) 2010 - 2022 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.tests.fetcher.politeness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.uci.ics.crawler4j.PolitenessServer;
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.fetcher.politeness.CachedPolitenessServer;
+import edu.uci.ics.crawler4j.fetcher.politeness.ConcurrentPolitenessServer;
+import edu.uci.ics.crawler4j.test.SimpleWebURL;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Contention benchmark of the {@link PolitenessServer} implementations: a number of threads
+ * call {@link PolitenessServer#applyPoliteness(WebURL)} for random hosts as fast as possible.
+ * Not run as part of the test suite, start it via its main method:
+ * <pre>
+ * PolitenessServerBenchmark [threads] [hosts] [seconds]
+ * </pre>
+ */
+public class PolitenessServerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        CrawlConfig config = new CrawlConfig();
+        config.setPolitenessDelay(200);
+
+        WebURL[] urls = new WebURL[hosts];
+        for (int i = 0; i < hosts; i++) {
+            urls[i] = new SimpleWebURL();
+            urls[i].setURL("http://host" + i + ".example" + (i % 100) + ".com/index.html");
+        }
+
+        List<Callable<PolitenessServer>> servers = new ArrayList<>();
+        servers.add(() -> new CachedPolitenessServer(config));
+        servers.add(() -> new ConcurrentPolitenessServer(config));
+
+        System.out.printf("%d threads, %d hosts, %d s%n", threads, hosts, seconds);
+        for (Callable<PolitenessServer> server : servers) {
+            // warm up
+            run(server.call(), urls, threads, 1);
+            PolitenessServer politenessServer = server.call();
+            double opsPerSecond = run(politenessServer, urls, threads, seconds);
+            System.out.printf("%-30s %,15.0f ops/s%n", politenessServer.getClass().getSimpleName(), opsPerSecond);
+        }
+    }
+
+    private static double run(PolitenessServer server, WebURL[] urls, int threads, int seconds)
+            throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long end = System.nanoTime() + seconds * 1_000_000_000L + 100_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while ((count & 0xFF) != 0 || System.nanoTime() < end) {
+                    server.applyPoliteness(urls[random.nextInt(urls.length)]);
+                    count++;
+                }
+                ops.add(count);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
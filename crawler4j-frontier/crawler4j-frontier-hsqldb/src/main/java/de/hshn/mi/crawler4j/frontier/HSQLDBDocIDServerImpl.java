@@ -22,21 +22,72 @@ package de.hshn.mi.crawler4j.frontier;
 import com.zaxxer.hikari.HikariDataSource;
 import de.hshn.mi.crawler4j.exception.HSQLDBFetchException;
 import de.hshn.mi.crawler4j.exception.HSQLDBStoreException;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
 import edu.uci.ics.crawler4j.frontier.DocIDServer;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToLongFunction;
 
+/**
+ * Assigns docids with a MERGE on the unique urlhash column, so concurrent crawlers are kept from
+ * adding a url twice by the database rather than by a lock of this class. A url is stored in the
+ * slot of its {@link #hash(String)}, or in one of the following {@link #PROBES} - 1 slots if
+ * another url has the same hash.
+ */
 public class HSQLDBDocIDServerImpl implements DocIDServer {
 
-    private final Object mutex = new Object();
+    static final int PROBES = 16;
+
+    private static final String MERGE_NEW =
+            "MERGE INTO weburl w USING (VALUES(CAST(? AS BIGINT), CAST(? AS VARCHAR(4096)))) AS v(urlhash, url) " +
+            "ON w.urlhash = v.urlhash " +
+            "WHEN NOT MATCHED THEN INSERT (id, url, urlhash) VALUES (nextval('id_master_seq'), v.url, v.urlhash)";
+
+    private static final String MERGE_WITH_ID =
+            "MERGE INTO weburl w USING (VALUES(CAST(? AS BIGINT), CAST(? AS VARCHAR(4096)), CAST(? AS BIGINT))) AS v(urlhash, url, id) " +
+            "ON w.urlhash = v.urlhash " +
+            "WHEN NOT MATCHED THEN INSERT (id, url, urlhash) VALUES (v.id, v.url, v.urlhash)";
 
     private final HikariDataSource ds;
+    private final ToLongFunction<String> firstSlot;
+
+    /*
+     * counted once on startup, then increased after each committed insert
+     */
+    private final AtomicInteger docCount = new AtomicInteger();
 
     public HSQLDBDocIDServerImpl(HikariDataSource ds) {
+        this(ds, HSQLDBDocIDServerImpl::hash);
+    }
+
+    /*
+     * @param firstSlot the first slot of a url, replaced by tests to put several urls into one slot
+     */
+    HSQLDBDocIDServerImpl(HikariDataSource ds, ToLongFunction<String> firstSlot) {
         this.ds = ds;
+        this.firstSlot = firstSlot;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT count(*) FROM weburl");
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                docCount.set(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            throw new HSQLDBFetchException(e);
+        }
     }
 
     /**
@@ -47,102 +98,296 @@ public class HSQLDBDocIDServerImpl implements DocIDServer {
      */
     @Override
     public int getDocId(String url) {
-        synchronized (mutex) {
-            return existsWebUrl(url);
+        try (Connection c = ds.getConnection()) {
+            return lookup(c, url);
+        } catch (SQLException e) {
+            throw new HSQLDBFetchException(e);
         }
     }
 
-    private int existsWebUrl(String url) {
-        int docId = -1;
-        try (Connection c = ds.getConnection()) {
-
-            try (PreparedStatement ps = c.prepareStatement("SELECT u.id FROM weburl u WHERE u.url = ?")) {
-                ps.setString(1, url);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        docId = rs.getInt(1);
+    /*
+     * one range scan of the url's slots
+     */
+    private int lookup(Connection c, String url) throws SQLException {
+        long slot = firstSlot.applyAsLong(url);
+        try (PreparedStatement ps = c.prepareStatement("SELECT u.id, u.url FROM weburl u WHERE u.urlhash BETWEEN ? AND ?")) {
+            ps.setLong(1, slot);
+            ps.setLong(2, slot + PROBES - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (url.equals(rs.getString(2))) {
+                        return rs.getInt(1);
                     }
                 }
             }
-
-        } catch (SQLException e) {
-            throw new HSQLDBFetchException(e);
         }
-        return docId;
+        return -1;
     }
 
     @Override
     public int getNewDocID(String url) {
-        synchronized (mutex) {
-            int docId = existsWebUrl(url);
-
-            if (docId < 0) {
-                try (Connection c = ds.getConnection()) {
-                    try (PreparedStatement ps = c.prepareStatement("INSERT INTO weburl(id,url) VALUES(nextval('id_master_seq'),?)", new String[]{"id"})) {
-
-                        ps.setString(1, url);
-                        ps.executeUpdate();
+        try (Connection c = ds.getConnection()) {
+            return assign(c, url, 0).getDocId();
+        } catch (SQLException e) {
+            throw new HSQLDBStoreException(e);
+        }
+    }
 
-                        try (ResultSet rs = ps.getGeneratedKeys()) {
-                            if (rs.next()) {
-                                docId = rs.getInt(1);
-                            }
-                        }
+    /*
+     * usually a single MERGE: it inserts the url into the first free slot, or finds it already
+     * there; another url in the slot moves on to the next one
+     */
+    private DocIDAssignment assign(Connection c, String url, int docId) throws SQLException {
+        long base = firstSlot.applyAsLong(url);
+        int probe = 0;
+        while (probe < PROBES) {
+            long slot = base + probe;
+            try {
+                int inserted = merge(c, slot, url, docId);
+                if (inserted > 0) {
+                    docCount.incrementAndGet();
+                    return new DocIDAssignment(inserted, true);
+                }
+            } catch (SQLException e) {
+                // another crawler has taken the slot meanwhile, unless the docid itself is taken
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                if (selectSlot(c, slot) == null) {
+                    if (isConstraintViolation(e)) {
+                        throw e;
                     }
+                    // the other crawler has been rolled back, the slot is free again
+                    continue;
+                }
+            }
+            Row row = selectSlot(c, slot);
+            if (row != null && url.equals(row.url)) {
+                return new DocIDAssignment(row.docId, false);
+            }
+            probe++;
+        }
+        throw new HSQLDBStoreException("Too many urls with the hash of: " + url);
+    }
 
-                } catch (SQLException e) {
-                    throw new HSQLDBStoreException(e);
+    /*
+     * @return the docid of the inserted url, or -1 if the slot is taken
+     */
+    private static int merge(Connection c, long slot, String url, int docId) throws SQLException {
+        if (docId > 0) {
+            try (PreparedStatement ps = c.prepareStatement(MERGE_WITH_ID)) {
+                ps.setLong(1, slot);
+                ps.setString(2, url);
+                ps.setLong(3, docId);
+                return ps.executeUpdate() > 0 ? docId : -1;
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement(MERGE_NEW, new String[]{"id"})) {
+            ps.setLong(1, slot);
+            ps.setString(2, url);
+            if (ps.executeUpdate() == 0) {
+                return -1;
+            }
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
                 }
+            }
+        }
+        Row row = selectSlot(c, slot);
+        return row != null ? row.docId : -1;
+    }
 
+    private static Row selectSlot(Connection c, long slot) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT u.id, u.url FROM weburl u WHERE u.urlhash = ?")) {
+            ps.setLong(1, slot);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Row(rs.getInt(1), rs.getString(2)) : null;
             }
-            return docId;
         }
     }
 
+    private static boolean isConstraintViolation(SQLException e) {
+        // SQLSTATE class 23: integrity constraint violation
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    /*
+     * a concurrent insert into the same slot either violates the unique urlhash or, with MVCC,
+     * fails the later transaction with a serialization failure (SQLSTATE 40001)
+     */
+    private static boolean isConflict(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            if (isConstraintViolation(next) || "40001".equals(next.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
-    public void addUrlAndDocId(String url, int docId) {
-        synchronized (mutex) {
-            try {
-                int previousId = getDocId(url);
+    public int[] getDocIds(List<String> urls) {
+        int[] docIds = new int[urls.size()];
+        try (Connection c = ds.getConnection()) {
+            Map<Long, Row> rows = selectSlots(c, urls);
+            for (int i = 0; i < docIds.length; i++) {
+                String url = urls.get(i);
+                Row row = rows.get(firstSlot.applyAsLong(url));
+                if (row == null) {
+                    docIds[i] = -1;
+                } else if (url.equals(row.url)) {
+                    docIds[i] = row.docId;
+                } else {
+                    // the first slot holds a url with the same hash
+                    docIds[i] = lookup(c, url);
+                }
+            }
+            return docIds;
+        } catch (SQLException e) {
+            throw new HSQLDBFetchException(e);
+        }
+    }
 
-                if (previousId > 0) {
-                    if (previousId == docId) {
-                        return;
-                    }
-                    throw new IllegalArgumentException("Doc id: " + previousId + " is already assigned");
+    /**
+     * Looks up the first slots of all urls with one query, then adds the new urls with one batch
+     * of MERGE statements and reads their docids with another query. Only urls sharing a hash
+     * with another url are assigned one by one.
+     */
+    @Override
+    public List<DocIDAssignment> getOrCreateDocIds(List<String> urls) {
+        try (Connection c = ds.getConnection()) {
+            Map<String, DocIDAssignment> assigned = new HashMap<>();
+            Set<String> candidates = new LinkedHashSet<>();
+            Map<Long, Row> rows = selectSlots(c, urls);
+            for (String url : urls) {
+                Row row = rows.get(firstSlot.applyAsLong(url));
+                if (row == null) {
+                    candidates.add(url);
+                } else if (url.equals(row.url)) {
+                    assigned.put(url, new DocIDAssignment(row.docId, false));
+                } else if (!assigned.containsKey(url)) {
+                    assigned.put(url, assign(c, url, 0));
                 }
+            }
 
-                try (Connection c = ds.getConnection()) {
-                    try (PreparedStatement ps = c.prepareStatement("INSERT INTO weburl(id,url) VALUES(?,?)")) {
-                        ps.setInt(1, docId);
-                        ps.setString(2, url);
-                        ps.executeUpdate();
+            if (!candidates.isEmpty()) {
+                int[] counts = mergeAll(c, candidates);
+                Map<Long, Row> merged = selectSlots(c, candidates);
+                int i = 0;
+                for (String url : candidates) {
+                    Row row = merged.get(firstSlot.applyAsLong(url));
+                    if (counts != null && row != null && url.equals(row.url)) {
+                        assigned.put(url, new DocIDAssignment(row.docId, counts[i] > 0));
+                    } else {
+                        // lost the first slot to another url or crawler
+                        assigned.put(url, assign(c, url, 0));
                     }
+                    i++;
+                }
+            }
+
+            List<DocIDAssignment> result = new ArrayList<>(urls.size());
+            Set<String> seen = new HashSet<>();
+            for (String url : urls) {
+                DocIDAssignment assignment = assigned.get(url);
+                // a url repeated in the list is only new at its first position
+                result.add(seen.add(url) ? assignment : new DocIDAssignment(assignment.getDocId(), false));
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new HSQLDBStoreException(e);
+        }
+    }
+
+    /*
+     * @return the update count of each MERGE, or null if the batch conflicted with another
+     * crawler and has been rolled back
+     */
+    private int[] mergeAll(Connection c, Collection<String> urls) throws SQLException {
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement(MERGE_NEW)) {
+            for (String url : urls) {
+                ps.setLong(1, firstSlot.applyAsLong(url));
+                ps.setString(2, url);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            c.commit();
+            for (int count : counts) {
+                if (count > 0) {
+                    docCount.incrementAndGet();
+                }
+            }
+            return counts;
+        } catch (SQLException e) {
+            c.rollback();
+            if (isConflict(e)) {
+                return null;
+            }
+            throw e;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
 
-                } catch (SQLException e) {
-                    throw new HSQLDBStoreException(e);
+    /*
+     * the rows in the first slots of the urls
+     */
+    private Map<Long, Row> selectSlots(Connection c, Collection<String> urls) throws SQLException {
+        Map<Long, Row> rows = new HashMap<>();
+        if (urls.isEmpty()) {
+            return rows;
+        }
+        StringBuilder sql = new StringBuilder("SELECT u.urlhash, u.id, u.url FROM weburl u WHERE u.urlhash IN (");
+        for (int i = 0; i < urls.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (String url : urls) {
+                ps.setLong(index++, firstSlot.applyAsLong(url));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getLong(1), new Row(rs.getInt(2), rs.getString(3)));
                 }
+            }
+        }
+        return rows;
+    }
 
-            } catch (RuntimeException e) {
-                throw new HSQLDBStoreException(e);
+    @Override
+    public void addUrlAndDocId(String url, int docId) {
+        try (Connection c = ds.getConnection()) {
+            DocIDAssignment assignment = assign(c, url, docId);
+            if (!assignment.isNew() && assignment.getDocId() != docId) {
+                throw new HSQLDBStoreException(
+                        new IllegalArgumentException("Doc id: " + assignment.getDocId() + " is already assigned"));
             }
+        } catch (SQLException e) {
+            throw new HSQLDBStoreException(e);
         }
     }
 
     @Override
     public boolean isSeenBefore(String url) {
-        return existsWebUrl(url) > 0;
+        return getDocId(url) > 0;
     }
 
     @Override
     public int getDocCount() {
+        return docCount.get();
+    }
+
+    @Override
+    public boolean forEach(ObjIntConsumer<String> consumer) {
         try (Connection c = ds.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement("SELECT count(*) FROM weburl")) {
+            try (PreparedStatement ps = c.prepareStatement("SELECT u.url, u.id FROM weburl u")) {
                 try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt(1);
-                    } else {
-                        return 0;
+                    while (rs.next()) {
+                        consumer.accept(rs.getString(1), rs.getInt(2));
                     }
                 }
             }
@@ -150,6 +395,37 @@ public class HSQLDBDocIDServerImpl implements DocIDServer {
         } catch (SQLException e) {
             throw new HSQLDBFetchException(e);
         }
+        return true;
+    }
+
+    /**
+     * The first slot of a url in the unique urlhash column, a 64 bit hash with the low bits
+     * cleared for the probes. Lookups compare the url as well, so urls with the same hash only
+     * cost an extra row read.
+     */
+    static long hash(String url) {
+        // FNV-1a, followed by the finalizer of MurmurHash3 to spread the bits
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            h ^= url.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h & -PROBES;
+    }
+
+    private static final class Row {
+        private final int docId;
+        private final String url;
+
+        private Row(int docId, String url) {
+            this.docId = docId;
+            this.url = url;
+        }
     }
 
     @Override
@@ -28,14 +28,32 @@ import edu.uci.ics.crawler4j.frontier.DocIDServer;
 import edu.uci.ics.crawler4j.frontier.Frontier;
 import edu.uci.ics.crawler4j.frontier.FrontierConfiguration;
 import edu.uci.ics.crawler4j.url.WebURLFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
 
 public class HSQLDBFrontierConfiguration implements FrontierConfiguration {
 
+    private static final Logger logger = LoggerFactory.getLogger(HSQLDBFrontierConfiguration.class);
+
+    /*
+     * 1: status as varchar, urls indexed as they are (not recorded in schema_version)
+     * 2: status as small integer code, urls indexed by hash, a composite index for dequeueing
+     * 3: urlhash unique, holding the slot of the url, so docids are assigned by a MERGE
+     */
+    private static final int SCHEMA_VERSION = 3;
+
+    private static final int MIGRATION_PAGE_SIZE = 10_000;
+
     private final HikariDataSource dataSource;
+    private final ToLongFunction<String> firstSlot;
     private final DocIDServer docIDServer;
     private final Frontier frontier;
 
@@ -44,6 +62,14 @@ public class HSQLDBFrontierConfiguration implements FrontierConfiguration {
     }
 
     public HSQLDBFrontierConfiguration(CrawlConfig crawlConfig, int poolSize, boolean shutdown) {
+        this(crawlConfig, poolSize, shutdown, HSQLDBDocIDServerImpl::hash);
+    }
+
+    /*
+     * @param firstSlot the first slot of a url, replaced by tests to put several urls into one slot
+     */
+    HSQLDBFrontierConfiguration(CrawlConfig crawlConfig, int poolSize, boolean shutdown, ToLongFunction<String> firstSlot) {
+        this.firstSlot = firstSlot;
 
         HikariConfig config = new HikariConfig();
         config.addDataSourceProperty("cachePrepStmts", "true");
@@ -60,48 +86,252 @@ public class HSQLDBFrontierConfiguration implements FrontierConfiguration {
         prepareDatabaseSchema();
 
         frontier = new HSQLDBFrontierImpl(dataSource, getWebURLFactory(), crawlConfig);
-        docIDServer = new HSQLDBDocIDServerImpl(dataSource);
+        docIDServer = new HSQLDBDocIDServerImpl(dataSource, firstSlot);
     }
 
     private void prepareDatabaseSchema() {
         try (Connection c = dataSource.getConnection()) {
 
-            String sequence = "CREATE SEQUENCE IF NOT EXISTS id_master_seq START WITH 1";
-
-            String table = "CREATE TABLE IF NOT EXISTS weburl(" +
-                    "  id bigint NOT NULL," +
-                    "  url varchar(4096)," +
-                    "  parenturl varchar(4096)," +
-                    "  parentid bigint," +
-                    "  cdepth int," +
-                    "  priority int," +
-                    "  anchor varchar(4096)," +
-                    "  status varchar(16)," +
-                    "  primary key (id)" +
-                    ");";
-
-            String indexUrl = "CREATE INDEX IF NOT EXISTS idx_url ON weburl (url)";
-            String indexStatus = "CREATE INDEX IF NOT EXISTS idx_status ON weburl (status)";
-
-            try (PreparedStatement s = c.prepareStatement(sequence)) {
-                s.executeUpdate();
+            // row locks instead of table locks, docids are assigned concurrently
+            execute(c, "SET DATABASE TRANSACTION CONTROL MVCC");
+            execute(c, "CREATE SEQUENCE IF NOT EXISTS id_master_seq START WITH 1");
+            execute(c, "CREATE TABLE IF NOT EXISTS schema_version(version int NOT NULL)");
+
+            int version = getSchemaVersion(c);
+            if (version == 0 && !tableExists(c, "WEBURL")) {
+                execute(c, "CREATE TABLE weburl(" +
+                        "  id bigint NOT NULL," +
+                        "  url varchar(4096)," +
+                        "  urlhash bigint," +
+                        "  parenturl varchar(4096)," +
+                        "  parentid bigint," +
+                        "  cdepth int," +
+                        "  priority int," +
+                        "  anchor varchar(4096)," +
+                        "  status smallint," +
+                        "  primary key (id)," +
+                        "  constraint uq_urlhash unique (urlhash)" +
+                        ");");
+                createIndexes(c);
+                setSchemaVersion(c, SCHEMA_VERSION);
+            } else {
+                if (version < 2) {
+                    migrateToVersion2(c);
+                }
+                if (version < 3) {
+                    migrateToVersion3(c);
+                }
             }
+        } catch (SQLException e) {
+            throw new HSQLDBFetchException(e);
+        }
+
+    }
+
+    /*
+     * the frontier of a crawl started before the schema was versioned: status as varchar with an
+     * index of its own and a plain index of the urls. Each DDL statement commits on its own, so
+     * every step checks whether a migration stopped midway has done it already.
+     */
+    private void migrateToVersion2(Connection c) throws SQLException {
+        logger.info("Migrating the frontier to schema version 2");
 
-            try (PreparedStatement s = c.prepareStatement(table)) {
-                s.executeUpdate();
+        execute(c, "DROP INDEX idx_url IF EXISTS");
+        execute(c, "DROP INDEX idx_status IF EXISTS");
+
+        String statusType = getColumnType(c, "STATUS");
+        if (statusType != null && !"SMALLINT".equals(statusType)) {
+            if (getColumnType(c, "STATUS_CODE") == null) {
+                execute(c, "ALTER TABLE weburl ADD COLUMN status_code smallint");
+            }
+            StringBuilder statusCodes = new StringBuilder("UPDATE weburl SET status_code = CASE status");
+            for (Status status : Status.values()) {
+                statusCodes.append(" WHEN '").append(status.name()).append("' THEN ").append(status.getCode());
             }
+            statusCodes.append(" END");
+            execute(c, statusCodes.toString());
+            execute(c, "ALTER TABLE weburl DROP COLUMN status");
+        }
+        if (getColumnType(c, "STATUS_CODE") != null) {
+            execute(c, "ALTER TABLE weburl ALTER COLUMN status_code RENAME TO status");
+        }
+
+        if (getColumnType(c, "URLHASH") == null) {
+            execute(c, "ALTER TABLE weburl ADD COLUMN urlhash bigint");
+        }
+
+        createIndexes(c);
+        setSchemaVersion(c, 2);
+    }
+
+    /*
+     * the url hashes become slots, urls with the same hash are moved to the following slots. Once
+     * the unique constraint is there, the slots are complete; before, they are simply computed
+     * again.
+     */
+    private void migrateToVersion3(Connection c) throws SQLException {
+        logger.info("Migrating the frontier to schema version 3, this may take a while for large crawls");
+        long start = System.currentTimeMillis();
+
+        execute(c, "DROP INDEX idx_urlhash IF EXISTS");
+        long rows = 0;
+        if (!constraintExists(c, "UQ_URLHASH")) {
+            rows = fillUrlHashes(c);
+            moveSharedSlots(c);
+            execute(c, "ALTER TABLE weburl ADD CONSTRAINT uq_urlhash UNIQUE (urlhash)");
+        }
+
+        setSchemaVersion(c, 3);
+        logger.info("Migrated {} urls in {} ms", rows, System.currentTimeMillis() - start);
+    }
 
-            try (PreparedStatement s = c.prepareStatement(indexUrl)) {
-                s.executeUpdate();
+    private static void moveSharedSlots(Connection c) throws SQLException {
+        List<Long> sharedSlots = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT u.urlhash FROM weburl u WHERE u.urlhash IS NOT NULL GROUP BY u.urlhash HAVING count(*) > 1");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                sharedSlots.add(rs.getLong(1));
             }
+        }
+        for (long slot : sharedSlots) {
+            List<Long> ids = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT u.id FROM weburl u WHERE u.urlhash = ? ORDER BY u.id")) {
+                ps.setLong(1, slot);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                    }
+                }
+            }
+            int probe = 1;
+            // the url with the lowest id keeps the slot
+            for (long id : ids.subList(1, ids.size())) {
+                while (probe < HSQLDBDocIDServerImpl.PROBES && isSlotTaken(c, slot + probe)) {
+                    probe++;
+                }
+                if (probe == HSQLDBDocIDServerImpl.PROBES) {
+                    throw new SQLException("Too many urls with the hash: " + slot);
+                }
+                try (PreparedStatement ps = c.prepareStatement("UPDATE weburl u SET u.urlhash = ? WHERE u.id = ?")) {
+                    ps.setLong(1, slot + probe);
+                    ps.setLong(2, id);
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
 
-            try (PreparedStatement s = c.prepareStatement(indexStatus)) {
-                s.executeUpdate();
+    private static boolean isSlotTaken(Connection c, long slot) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT count(*) FROM weburl u WHERE u.urlhash = ?")) {
+            ps.setLong(1, slot);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    /*
+     * in pages of ids, so a large table is neither held in memory nor updated in one transaction
+     */
+    private long fillUrlHashes(Connection c) throws SQLException {
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        long rows = 0;
+        try (PreparedStatement select = c.prepareStatement(
+                     "SELECT u.id, u.url FROM weburl u WHERE u.id > ? ORDER BY u.id LIMIT " + MIGRATION_PAGE_SIZE);
+             PreparedStatement update = c.prepareStatement("UPDATE weburl u SET u.urlhash = ? WHERE u.id = ?")) {
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                int page = 0;
+                select.setLong(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getLong(1);
+                        String url = rs.getString(2);
+                        if (url != null) {
+                            update.setLong(1, firstSlot.applyAsLong(url));
+                            update.setLong(2, lastId);
+                            update.addBatch();
+                        }
+                        page++;
+                    }
+                }
+                update.executeBatch();
+                c.commit();
+                rows += page;
+                if (page < MIGRATION_PAGE_SIZE) {
+                    return rows;
+                }
             }
         } catch (SQLException e) {
-            throw new HSQLDBFetchException(e);
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+    /*
+     * the queue is read in index order, so dequeueing does not sort the scheduled urls
+     */
+    private static void createIndexes(Connection c) throws SQLException {
+        execute(c, "CREATE INDEX IF NOT EXISTS idx_queue ON weburl (status, priority DESC, id)");
+    }
+
+    private static int getSchemaVersion(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT max(version) FROM schema_version");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void setSchemaVersion(Connection c, int version) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO schema_version(version) VALUES(?)")) {
+            ps.setInt(1, version);
+            ps.executeUpdate();
         }
+    }
+
+    /*
+     * @return the data type of a column of weburl, or null if there is no such column
+     */
+    private static String getColumnType(Connection c, String column) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT data_type FROM information_schema.columns " +
+                        "WHERE table_schema = 'PUBLIC' AND table_name = 'WEBURL' AND column_name = ?")) {
+            ps.setString(1, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static boolean constraintExists(Connection c, String constraint) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT count(*) FROM information_schema.table_constraints " +
+                        "WHERE table_schema = 'PUBLIC' AND constraint_name = ?")) {
+            ps.setString(1, constraint);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
 
+    private static boolean tableExists(Connection c, String table) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT count(*) FROM information_schema.tables WHERE table_schema = 'PUBLIC' AND table_name = ?")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static void execute(Connection c, String sql) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement(sql)) {
+            s.executeUpdate();
+        }
     }
 
     private String getJDBCUrl(boolean resumableCrawling, String crawlStorageFolder, boolean shutdown) {
@@ -34,175 +34,344 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class HSQLDBFrontierImpl implements Frontier {
 
     private static final Logger logger = LoggerFactory.getLogger(HSQLDBFrontierImpl.class);
 
+    private static final String SCHEDULE = "UPDATE weburl " +
+            "SET status = ?, parenturl = ?, parentid = ?, priority = ?, cdepth = ?, anchor = ? WHERE id = ?";
+
     private final WebURLFactory factory;
     private final CrawlConfig config;
     private final HikariDataSource ds;
 
-    protected final Object mutex = new Object();
-    protected final Object waitingList = new Object();
+    /*
+     * explicit locks instead of monitors, so that crawlers running on virtual threads
+     * do not pin their carrier thread while waiting for the database
+     */
+    protected final ReentrantLock mutex = new ReentrantLock();
+    protected final Condition waitingList = mutex.newCondition();
 
-    protected boolean isFinished = false;
+    protected volatile boolean isFinished = false;
     protected long scheduledPages;
 
+    /*
+     * the number of urls per status, counted once on startup and changed after each committed
+     * status transition, so that the monitor of the controller does not scan the table
+     */
+    private final Map<Status, AtomicLong> counts = new EnumMap<>(Status.class);
+
     public HSQLDBFrontierImpl(HikariDataSource ds, WebURLFactory factory, CrawlConfig config) {
         this.ds = ds;
         this.config = config;
         this.factory = factory;
+        for (Status status : Status.values()) {
+            counts.put(status, new AtomicLong());
+        }
+        loadCounts();
+    }
+
+    private void loadCounts() {
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT u.status, count(*) FROM weburl u WHERE u.status IS NOT NULL GROUP BY u.status");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                counts.get(Status.fromCode(rs.getInt(1))).set(rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            throw new HSQLDBFetchException(e);
+        }
     }
 
     @Override
     public void scheduleAll(List<WebURL> urls) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
-        synchronized (mutex) {
-            int newScheduledPage = 0;
-            for (WebURL url : urls) {
-                if ((maxPagesToFetch > 0) &&
-                        ((scheduledPages + newScheduledPage) >= maxPagesToFetch)) {
-                    break;
-                }
-
-                try {
-                    scheduleWebURL(url);
-                    newScheduledPage++;
-                } catch (HSQLDBStoreException e) {
-                    logger.error("Error while putting the url in the work queue", e);
-                }
-
+        mutex.lock();
+        try {
+            int count = urls.size();
+            if (maxPagesToFetch > 0) {
+                count = (int) Math.max(0, Math.min(count, maxPagesToFetch - scheduledPages));
             }
-            if (newScheduledPage > 0) {
-                scheduledPages += newScheduledPage;
+            if (count == 0) {
+                return;
             }
-            synchronized (waitingList) {
-                waitingList.notifyAll();
+
+            try {
+                scheduleWebURLs(urls.subList(0, count));
+                scheduledPages += count;
+            } catch (HSQLDBStoreException e) {
+                logger.error("Error while putting the urls in the work queue", e);
             }
+            waitingList.signalAll();
+        } finally {
+            mutex.unlock();
         }
     }
 
-    private void scheduleWebURL(WebURL url) {
+    /*
+     * one connection, one batch and one transaction for all urls; urls are usually new, those
+     * which already have a status, e.g. retries, are looked up to keep the counts right
+     */
+    private void scheduleWebURLs(List<WebURL> urls) {
         try (Connection c = ds.getConnection()) {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                int[] updated = updateScheduled(c, urls, null);
+                int added = 0;
+                List<WebURL> known = new ArrayList<>();
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i] > 0) {
+                        added++;
+                    } else {
+                        known.add(urls.get(i));
+                    }
+                }
+                List<Status> previous = new ArrayList<>();
+                while (!known.isEmpty()) {
+                    // each update expects the status just read, a miss means it has changed meanwhile
+                    Map<Integer, Status> statuses = selectStatuses(c, known);
+                    known.removeIf(url -> !statuses.containsKey(url.getDocid()));
+                    updated = updateScheduled(c, known, statuses);
+                    List<WebURL> changed = new ArrayList<>();
+                    for (int i = 0; i < updated.length; i++) {
+                        if (updated[i] > 0) {
+                            previous.add(statuses.get(known.get(i).getDocid()));
+                        } else {
+                            changed.add(known.get(i));
+                        }
+                    }
+                    known = changed;
+                }
+                c.commit();
 
-            try (PreparedStatement ps = c.prepareStatement(
-                    "UPDATE weburl " +
-                            "SET status = ?, parenturl = ?, parentid = ?, priority = ?, cdepth = ?, anchor = ? WHERE id = ?")) {
+                counts.get(Status.SCHEDULED).addAndGet(added + previous.size());
+                for (Status status : previous) {
+                    counts.get(status).decrementAndGet();
+                }
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
 
-                ps.setString(1, Status.SCHEDULED.name());
+        } catch (SQLException e) {
+            throw new HSQLDBStoreException(e);
+        }
+    }
+
+    /*
+     * @param expected the current status of each url, null for urls without a status
+     */
+    private static int[] updateScheduled(Connection c, List<WebURL> urls, Map<Integer, Status> expected)
+            throws SQLException {
+        if (urls.isEmpty()) {
+            return new int[0];
+        }
+        try (PreparedStatement ps = c.prepareStatement(expected == null ?
+                SCHEDULE + " AND status IS NULL" : SCHEDULE + " AND status = ?")) {
+            for (WebURL url : urls) {
+                ps.setInt(1, Status.SCHEDULED.getCode());
                 ps.setString(2, url.getParentUrl());
                 ps.setInt(3, url.getParentDocid());
                 ps.setInt(4, url.getPriority());
                 ps.setInt(5, url.getDepth());
                 ps.setString(6, url.getAnchor());
                 ps.setInt(7, url.getDocid());
-                ps.executeUpdate();
-
+                if (expected != null) {
+                    ps.setInt(8, expected.get(url.getDocid()).getCode());
+                }
+                ps.addBatch();
             }
+            return ps.executeBatch();
+        }
+    }
 
-        } catch (SQLException e) {
-            throw new HSQLDBStoreException(e);
+    /*
+     * the statuses of those urls which have one
+     */
+    private static Map<Integer, Status> selectStatuses(Connection c, List<WebURL> urls) throws SQLException {
+        Map<Integer, Status> statuses = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT u.id, u.status FROM weburl u WHERE u.status IS NOT NULL AND u.id IN (");
+        for (int i = 0; i < urls.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
         }
+        sql.append(')');
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            for (int i = 0; i < urls.size(); i++) {
+                ps.setInt(i + 1, urls.get(i).getDocid());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    statuses.put(rs.getInt(1), Status.fromCode(rs.getInt(2)));
+                }
+            }
+        }
+        return statuses;
     }
 
     @Override
     public void schedule(WebURL url) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
-        synchronized (mutex) {
-            try {
-                if (maxPagesToFetch < 0 || scheduledPages < maxPagesToFetch) {
-                    scheduleWebURL(url);
-                    scheduledPages++;
-                }
-            } catch (HSQLDBStoreException e) {
-                logger.error("Error while putting the url in the work queue", e);
+        mutex.lock();
+        try {
+            if (maxPagesToFetch < 0 || scheduledPages < maxPagesToFetch) {
+                scheduleWebURLs(Collections.singletonList(url));
+                scheduledPages++;
+                waitingList.signalAll();
             }
+        } catch (HSQLDBStoreException e) {
+            logger.error("Error while putting the url in the work queue", e);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Schedules a processed url again without reserving a page of maxPagesToFetch for it. Its
+     * status goes back from completed to scheduled, which takes back its count as processed page.
+     */
+    @Override
+    public void reschedule(WebURL url) {
+        mutex.lock();
+        try {
+            scheduleWebURLs(Collections.singletonList(url));
+            waitingList.signalAll();
+        } catch (HSQLDBStoreException e) {
+            logger.error("Error while putting the url in the work queue", e);
+        } finally {
+            mutex.unlock();
         }
     }
 
     @Override
     public void getNextURLs(int max, List<WebURL> result) {
-        while (true) {
-            synchronized (mutex) {
+        mutex.lock();
+        try {
+            while (true) {
                 if (isFinished) {
                     return;
                 }
 
-                List<WebURL> curResults = new ArrayList<>();
-
-                try (Connection c = ds.getConnection()) {
+                try {
+                    result.addAll(claimWebURLs(max));
+                } catch (SQLException e) {
+                    logger.error(e.getLocalizedMessage(), e);
+                }
 
-                    try (PreparedStatement ps = c.prepareStatement("SELECT * FROM weburl u WHERE u.status = ? ORDER BY priority DESC LIMIT ?")) {
-                        ps.setString(1, Status.SCHEDULED.name());
-                        ps.setInt(2, max);
+                if (result.size() > 0) {
+                    return;
+                }
 
-                        try (ResultSet rs = ps.executeQuery()) {
-                            while (rs.next()) {
+                try {
+                    waitingList.await();
+                } catch (InterruptedException ignored) {
+                    // Do nothing
+                }
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
 
-                                WebURL webURL = factory.newWebUrl();
+    @Override
+    public void pollNextURLs(int max, List<WebURL> result) {
+        mutex.lock();
+        try {
+            if (!isFinished) {
+                result.addAll(claimWebURLs(max));
+            }
+        } catch (SQLException e) {
+            logger.error(e.getLocalizedMessage(), e);
+        } finally {
+            mutex.unlock();
+        }
+    }
 
-                                webURL.setURL(rs.getString("url"));
-                                webURL.setDocid(rs.getInt("id"));
-                                webURL.setParentDocid(rs.getInt("parentid"));
-                                webURL.setParentUrl(rs.getString("parenturl"));
-                                webURL.setDepth(rs.getShort("cdepth"));
-                                webURL.setPriority(rs.getByte("priority"));
-                                webURL.setAnchor(rs.getString("anchor"));
+    /*
+     * selects the next urls and marks them as in process with a single statement, on one
+     * connection and in one transaction
+     */
+    private List<WebURL> claimWebURLs(int max) throws SQLException {
+        List<WebURL> curResults = new ArrayList<>();
+        int claimed = 0;
+        try (Connection c = ds.getConnection()) {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement("SELECT * FROM weburl u WHERE u.status = ? ORDER BY u.priority DESC, u.id LIMIT ?")) {
+                    ps.setInt(1, Status.SCHEDULED.getCode());
+                    ps.setInt(2, max);
 
-                                curResults.add(webURL);
-                            }
-                        }
-                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
 
-                } catch (SQLException e) {
-                    logger.error(e.getLocalizedMessage(), e);
-                }
+                            WebURL webURL = factory.newWebUrl();
 
-                result.addAll(curResults);
-                for (WebURL curPage : curResults) {
-                    try (Connection c = ds.getConnection()) {
+                            webURL.setURL(rs.getString("url"));
+                            webURL.setDocid(rs.getInt("id"));
+                            webURL.setParentDocid(rs.getInt("parentid"));
+                            webURL.setParentUrl(rs.getString("parenturl"));
+                            webURL.setDepth(rs.getShort("cdepth"));
+                            webURL.setPriority(rs.getByte("priority"));
+                            webURL.setAnchor(rs.getString("anchor"));
 
-                        try (PreparedStatement ps = c.prepareStatement("UPDATE weburl u SET u.status = ? WHERE u.id = ?")) {
-                            ps.setString(1, Status.IN_PROCESS.name());
-                            ps.setInt(2, curPage.getDocid());
-                            ps.executeUpdate();
+                            curResults.add(webURL);
                         }
-
-                    } catch (SQLException e) {
-                        logger.error(e.getLocalizedMessage(), e);
                     }
-
                 }
 
-                if (result.size() > 0) {
-                    return;
-                }
-            }
-
-            try {
-                synchronized (waitingList) {
-                    waitingList.wait();
+                if (!curResults.isEmpty()) {
+                    // only scheduled urls are claimed, a url completed meanwhile is not counted twice
+                    StringBuilder sql = new StringBuilder("UPDATE weburl u SET u.status = ? WHERE u.status = ? AND u.id IN (");
+                    for (int i = 0; i < curResults.size(); i++) {
+                        sql.append(i == 0 ? "?" : ",?");
+                    }
+                    sql.append(')');
+                    try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+                        ps.setInt(1, Status.IN_PROCESS.getCode());
+                        ps.setInt(2, Status.SCHEDULED.getCode());
+                        for (int i = 0; i < curResults.size(); i++) {
+                            ps.setInt(i + 3, curResults.get(i).getDocid());
+                        }
+                        claimed = ps.executeUpdate();
+                    }
                 }
-            } catch (InterruptedException ignored) {
-                // Do nothing
-            }
-            if (isFinished) {
-                return;
+                c.commit();
+                counts.get(Status.SCHEDULED).addAndGet(-claimed);
+                counts.get(Status.IN_PROCESS).addAndGet(claimed);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
             }
-
         }
+        return curResults;
     }
 
+    /**
+     * Completes a url which is in process. Any other status is left alone, e.g. a url scheduled
+     * again for a retry stays in the queue.
+     */
     @Override
     public void setProcessed(WebURL webURL) {
         try (Connection c = ds.getConnection()) {
 
-            try (PreparedStatement ps = c.prepareStatement("UPDATE weburl u SET u.status = ? WHERE u.id = ?")) {
-                ps.setString(1, Status.COMPLETED.name());
-                ps.setInt(2, webURL.getDocid());
-                ps.executeUpdate();
+            if (updateStatus(c, webURL.getDocid(), Status.IN_PROCESS, Status.COMPLETED) > 0) {
+                counts.get(Status.IN_PROCESS).decrementAndGet();
+                counts.get(Status.COMPLETED).incrementAndGet();
             }
 
         } catch (SQLException e) {
@@ -211,42 +380,36 @@ public class HSQLDBFrontierImpl implements Frontier {
 
     }
 
-    @Override
-    public long getQueueLength() {
-        return getCount(Status.SCHEDULED);
+    /*
+     * @return 1 if the url had the expected status, 0 if its status has changed meanwhile
+     */
+    private static int updateStatus(Connection c, int docId, Status expected, Status status) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("UPDATE weburl u SET u.status = ? WHERE u.id = ? AND u.status = ?")) {
+            ps.setInt(1, status.getCode());
+            ps.setInt(2, docId);
+            ps.setInt(3, expected.getCode());
+            return ps.executeUpdate();
+        }
     }
 
-    private long getCount(Status status) {
-        try (Connection c = ds.getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement("SELECT count(*) FROM weburl WHERE status = ?")) {
-                ps.setString(1, status.name());
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt(1);
-                    } else {
-                        return 0;
-                    }
-                }
-            }
-
-        } catch (SQLException e) {
-            throw new HSQLDBFetchException(e);
-        }
+    @Override
+    public long getQueueLength() {
+        return counts.get(Status.SCHEDULED).get();
     }
 
     @Override
     public long getNumberOfAssignedPages() {
-        return getCount(Status.IN_PROCESS);
+        return counts.get(Status.IN_PROCESS).get();
     }
 
     @Override
     public long getNumberOfProcessedPages() {
-        return getCount(Status.COMPLETED);
+        return counts.get(Status.COMPLETED).get();
     }
 
     @Override
     public long getNumberOfScheduledPages() {
-        return getCount(Status.SCHEDULED);
+        return counts.get(Status.SCHEDULED).get();
     }
 
     @Override
@@ -261,9 +424,12 @@ public class HSQLDBFrontierImpl implements Frontier {
 
     @Override
     public void finish() {
-        isFinished = true;
-        synchronized (waitingList) {
-            waitingList.notifyAll();
+        mutex.lock();
+        try {
+            isFinished = true;
+            waitingList.signalAll();
+        } finally {
+            mutex.unlock();
         }
     }
 }
@@ -19,7 +19,29 @@
  */
 package de.hshn.mi.crawler4j.frontier;
 
+/**
+ * The state of a url in the frontier, stored as its small integer code.
+ */
 public enum Status {
 
-    SCHEDULED, IN_PROCESS, COMPLETED
+    SCHEDULED(1), IN_PROCESS(2), COMPLETED(3);
+
+    private final int code;
+
+    Status(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static Status fromCode(int code) {
+        for (Status status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown status code: " + code);
+    }
 }
@@ -22,6 +22,12 @@ package edu.uci.ics.crawler4j.frontier;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +45,10 @@ import edu.uci.ics.crawler4j.crawler.CrawlConfig;
 import edu.uci.ics.crawler4j.util.Util;
 
 /**
+ * Counters are accumulated in memory. For resumable crawls, the values that changed are
+ * written to the statistics database periodically, in a single transaction, and on
+ * {@link #close()}, so counting a page never waits for the database.
+ *
  * @author Yasser Ganjisaffar
  */
 public class Counters {
@@ -50,17 +60,33 @@ public class Counters {
     }
 
     private static final String DATABASE_NAME = "Statistics";
+
+    /*
+     * how often changed counters are written to the statistics database
+     */
+    protected static final long CHECKPOINT_INTERVAL_MILLIS = 1000;
+
     protected Database statisticsDB = null;
     protected Environment env;
     private final CrawlConfig config;
 
-    protected final Object mutex = new Object();
+    /*
+     * serializes checkpoints, counting does not take it
+     */
+    protected final ReentrantLock mutex = new ReentrantLock();
+
+    protected Map<String, LongAdder> counterValues;
+
+    /*
+     * the values last written to the statistics database
+     */
+    private final Map<String, Long> persistedValues = new HashMap<>();
 
-    protected Map<String, Long> counterValues;
+    private final ScheduledExecutorService checkpointer;
 
     public Counters(Environment env, CrawlConfig config) {
         this.env = env;
-        this.counterValues = new HashMap<>();
+        this.counterValues = new ConcurrentHashMap<>();
         this.config = config;
 
     /*
@@ -86,42 +112,47 @@ public class Counters {
                 if (value.getData().length > 0) {
                     String name = new String(key.getData(), StandardCharsets.UTF_8);
                     long counterValue = Util.byteArray2Long(value.getData());
-                    counterValues.put(name, counterValue);
+                    getCounter(name).add(counterValue);
+                    persistedValues.put(name, counterValue);
                 }
                 result = cursor.getNext(key, value, null);
             }
             cursor.close();
             tnx.commit();
+
+            checkpointer = newCheckpointer();
+            checkpointer.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint();
+                } catch (RuntimeException e) {
+                    // a failed run must not cancel the following ones, close() writes them anyway
+                    logger.error("Exception writing the counters", e);
+                }
+            }, CHECKPOINT_INTERVAL_MILLIS, CHECKPOINT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            checkpointer = null;
         }
     }
 
+    private LongAdder getCounter(String name) {
+        return counterValues.computeIfAbsent(name, k -> new LongAdder());
+    }
+
     public long getValue(String name) {
-        synchronized (mutex) {
-            Long value = counterValues.get(name);
-            if (value == null) {
-                return 0;
-            }
-            return value;
+        LongAdder value = counterValues.get(name);
+        if (value == null) {
+            return 0;
         }
+        return value.sum();
     }
 
     public void setValue(String name, long value) {
-        synchronized (mutex) {
-            try {
-                counterValues.put(name, value);
-                if (statisticsDB != null) {
-                    Transaction txn = env.beginTransaction(null, null);
-                    statisticsDB.put(txn, new DatabaseEntry(name.getBytes(StandardCharsets.UTF_8)),
-                                     new DatabaseEntry(Util.long2ByteArray(value)));
-                    txn.commit();
-                }
-            } catch (RuntimeException e) {
-                if (config.isHaltOnError()) {
-                    throw e;
-                } else {
-                    logger.error("Exception setting value", e);
-                }
-            }
+        mutex.lock();
+        try {
+            LongAdder counter = getCounter(name);
+            counter.add(value - counter.sum());
+        } finally {
+            mutex.unlock();
         }
     }
 
@@ -130,19 +161,82 @@ public class Counters {
     }
 
     public void increment(String name, long addition) {
-        synchronized (mutex) {
-            long prevValue = getValue(name);
-            setValue(name, prevValue + addition);
+        getCounter(name).add(addition);
+    }
+
+    /**
+     * Writes all counters that changed since the last checkpoint to the statistics database in
+     * a single transaction. Does nothing if crawling is not resumable.
+     */
+    public void checkpoint() {
+        if (statisticsDB == null) {
+            return;
+        }
+        mutex.lock();
+        try {
+            Map<String, Long> changed = new HashMap<>();
+            for (Map.Entry<String, LongAdder> counter : counterValues.entrySet()) {
+                long value = counter.getValue().sum();
+                Long persisted = persistedValues.get(counter.getKey());
+                if (persisted == null || persisted != value) {
+                    changed.put(counter.getKey(), value);
+                }
+            }
+            if (changed.isEmpty()) {
+                return;
+            }
+            Transaction txn = env.beginTransaction(null, null);
+            try {
+                for (Map.Entry<String, Long> counter : changed.entrySet()) {
+                    statisticsDB.put(txn, new DatabaseEntry(counter.getKey().getBytes(StandardCharsets.UTF_8)),
+                                     new DatabaseEntry(Util.long2ByteArray(counter.getValue())));
+                }
+                txn.commit();
+                txn = null;
+                persistedValues.putAll(changed);
+            } finally {
+                if (txn != null) {
+                    txn.abort();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (config.isHaltOnError()) {
+                throw e;
+            } else {
+                logger.error("Exception writing the counters", e);
+            }
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void close() {
+        if (checkpointer != null) {
+            // no interrupts, JE invalidates the environment if its I/O is interrupted
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(CHECKPOINT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         try {
             if (statisticsDB != null) {
+                checkpoint();
                 statisticsDB.close();
             }
         } catch (DatabaseException e) {
             logger.error("Exception thrown while trying to close statisticsDB", e);
         }
     }
+
+    private static ScheduledExecutorService newCheckpointer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Crawler counters checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
 }
@@ -19,6 +19,8 @@
  */
 package edu.uci.ics.crawler4j.frontier;
 
+import java.util.Collection;
+
 import edu.uci.ics.crawler4j.url.WebURL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +53,8 @@ public class InProcessPagesDB extends WorkQueues {
     }
 
     public boolean removeURL(WebURL webUrl) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             DatabaseEntry key = getDatabaseEntryKey(webUrl);
             DatabaseEntry value = new DatabaseEntry();
             Transaction txn = beginTransaction();
@@ -67,7 +70,43 @@ public class InProcessPagesDB extends WorkQueues {
             } finally {
                 commit(txn);
             }
+        } finally {
+            mutex.unlock();
         }
         return false;
     }
+
+    /**
+     * Removes the given urls in a single transaction.
+     *
+     * @return the number of urls which have been removed
+     */
+    public int removeURLs(Collection<WebURL> webUrls) {
+        mutex.lock();
+        try {
+            int removed = 0;
+            DatabaseEntry value = new DatabaseEntry();
+            Transaction txn = beginTransaction();
+            boolean committed = false;
+            try {
+                try (Cursor cursor = openCursor(txn)) {
+                    for (WebURL webUrl : webUrls) {
+                        OperationStatus result = cursor.getSearchKey(getDatabaseEntryKey(webUrl), value, null);
+                        if (result == OperationStatus.SUCCESS && cursor.delete() == OperationStatus.SUCCESS) {
+                            removed++;
+                        }
+                    }
+                }
+                commit(txn);
+                committed = true;
+            } finally {
+                if (!committed) {
+                    abort(txn);
+                }
+            }
+            return removed;
+        } finally {
+            mutex.unlock();
+        }
+    }
 }
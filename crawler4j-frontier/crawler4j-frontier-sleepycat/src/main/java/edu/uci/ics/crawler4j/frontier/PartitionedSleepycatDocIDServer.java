@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-frontier-sleepycat
+ * %%
+ * Copyright (C) 2010 - 2021 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A {@link DocIDServer} spread over several {@link SleepycatDocIDServer}s by the host of the
+ * urls, so that lookups of different hosts do not wait for each other. Docids are assigned from
+ * a single counter and are unique across all partitions.
+ */
+public class PartitionedSleepycatDocIDServer implements DocIDServer {
+
+    private final SleepycatDocIDServer[] partitions;
+
+    /*
+     * the lock of a partition is held from checking a url to storing its new docid, so each
+     * partition receives increasing docids
+     */
+    private final ReentrantLock[] locks;
+
+    private final AtomicInteger lastDocID;
+
+    public PartitionedSleepycatDocIDServer(SleepycatDocIDServer[] partitions) {
+        this.partitions = partitions;
+        this.locks = new ReentrantLock[partitions.length];
+        int docCount = 0;
+        for (int i = 0; i < partitions.length; i++) {
+            locks[i] = new ReentrantLock();
+            docCount += partitions[i].getDocCount();
+        }
+        // docids are assigned without gaps, as by a single SleepycatDocIDServer
+        this.lastDocID = new AtomicInteger(docCount);
+    }
+
+    @Override
+    public int getDocId(String url) {
+        return partitions[PartitionedSleepycatFrontierConfiguration.partitionOf(url, partitions.length)].getDocId(url);
+    }
+
+    @Override
+    public int getNewDocID(String url) {
+        int partition = PartitionedSleepycatFrontierConfiguration.partitionOf(url, partitions.length);
+        locks[partition].lock();
+        try {
+            int docId = partitions[partition].getDocId(url);
+            if (docId > 0) {
+                return docId;
+            }
+            docId = lastDocID.incrementAndGet();
+            partitions[partition].addUrlAndDocId(url, docId);
+            return docId;
+        } finally {
+            locks[partition].unlock();
+        }
+    }
+
+    @Override
+    public int[] getDocIds(List<String> urls) {
+        int[] docIds = new int[urls.size()];
+        List<List<Integer>> indexes = byPartition(urls);
+        for (int partition = 0; partition < partitions.length; partition++) {
+            List<Integer> partitionIndexes = indexes.get(partition);
+            if (partitionIndexes.isEmpty()) {
+                continue;
+            }
+            int[] partitionDocIds = partitions[partition].getDocIds(select(urls, partitionIndexes));
+            for (int i = 0; i < partitionDocIds.length; i++) {
+                docIds[partitionIndexes.get(i)] = partitionDocIds[i];
+            }
+        }
+        return docIds;
+    }
+
+    @Override
+    public List<DocIDAssignment> getOrCreateDocIds(List<String> urls) {
+        DocIDAssignment[] result = new DocIDAssignment[urls.size()];
+        List<List<Integer>> indexes = byPartition(urls);
+        for (int partition = 0; partition < partitions.length; partition++) {
+            List<Integer> partitionIndexes = indexes.get(partition);
+            if (partitionIndexes.isEmpty()) {
+                continue;
+            }
+            locks[partition].lock();
+            try {
+                List<DocIDAssignment> assigned =
+                    partitions[partition].getOrCreateDocIds(select(urls, partitionIndexes), lastDocID::incrementAndGet);
+                for (int i = 0; i < assigned.size(); i++) {
+                    result[partitionIndexes.get(i)] = assigned.get(i);
+                }
+            } finally {
+                locks[partition].unlock();
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    /*
+     * the positions of the urls of each partition
+     */
+    private List<List<Integer>> byPartition(List<String> urls) {
+        List<List<Integer>> indexes = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            indexes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < urls.size(); i++) {
+            indexes.get(PartitionedSleepycatFrontierConfiguration.partitionOf(urls.get(i), partitions.length)).add(i);
+        }
+        return indexes;
+    }
+
+    private static List<String> select(List<String> urls, List<Integer> indexes) {
+        List<String> selected = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            selected.add(urls.get(index));
+        }
+        return selected;
+    }
+
+    @Override
+    public void addUrlAndDocId(String url, int docId) {
+        int partition = PartitionedSleepycatFrontierConfiguration.partitionOf(url, partitions.length);
+        locks[partition].lock();
+        try {
+            int prevDocid = partitions[partition].getDocId(url);
+            if (prevDocid > 0) {
+                if (prevDocid == docId) {
+                    return;
+                }
+                throw new IllegalArgumentException("Doc id: " + prevDocid + " is already assigned to URL: " + url);
+            }
+            int last;
+            do {
+                last = lastDocID.get();
+                if (docId <= last) {
+                    throw new IllegalArgumentException(
+                        "Requested doc id: " + docId + " is not larger than: " + last);
+                }
+            } while (!lastDocID.compareAndSet(last, docId));
+            partitions[partition].addUrlAndDocId(url, docId);
+        } finally {
+            locks[partition].unlock();
+        }
+    }
+
+    @Override
+    public boolean isSeenBefore(String url) {
+        return getDocId(url) != -1;
+    }
+
+    @Override
+    public int getDocCount() {
+        int docCount = 0;
+        for (SleepycatDocIDServer partition : partitions) {
+            int count = partition.getDocCount();
+            if (count < 0) {
+                return -1;
+            }
+            docCount += count;
+        }
+        return docCount;
+    }
+
+    @Override
+    public boolean forEach(ObjIntConsumer<String> consumer) {
+        for (SleepycatDocIDServer partition : partitions) {
+            if (!partition.forEach(consumer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (SleepycatDocIDServer partition : partitions) {
+            partition.close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-frontier-sleepycat
+ * %%
+ * Copyright (C) 2010 - 2021 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * A {@link Frontier} spread over several {@link SleepycatFrontierImpl}s by the host of the urls,
+ * each with its own lock and environment. Crawlers take urls from the partitions round-robin and
+ * only wait on the shared lock if all partitions are empty.
+ */
+public class PartitionedSleepycatFrontier implements Frontier {
+
+    private final SleepycatFrontierImpl[] partitions;
+
+    private final CrawlConfig config;
+
+    /*
+     * the number of scheduled urls of all partitions, for enforcing maxPagesToFetch globally
+     */
+    private final AtomicLong scheduledPages = new AtomicLong();
+
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+    /*
+     * crawlers wait here if all partitions are empty, schedulers only take the lock if someone
+     * is waiting; the version tells waiters if urls have been scheduled since they looked
+     */
+    private final ReentrantLock mutex = new ReentrantLock();
+    private final Condition waitingList = mutex.newCondition();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private volatile boolean isFinished = false;
+
+    public PartitionedSleepycatFrontier(SleepycatFrontierImpl[] partitions, CrawlConfig config) {
+        this.partitions = partitions;
+        this.config = config;
+        for (SleepycatFrontierImpl partition : partitions) {
+            scheduledPages.addAndGet(partition.getScheduledPages());
+        }
+    }
+
+    private SleepycatFrontierImpl partitionOf(WebURL url) {
+        return partitions[PartitionedSleepycatFrontierConfiguration.partitionOf(url.getURL(), partitions.length)];
+    }
+
+    /*
+     * @return how many of the requested urls may be scheduled without exceeding maxPagesToFetch
+     */
+    private int reserve(int requested) {
+        int maxPagesToFetch = config.getMaxPagesToFetch();
+        if (maxPagesToFetch < 0) {
+            scheduledPages.addAndGet(requested);
+            return requested;
+        }
+        while (true) {
+            long current = scheduledPages.get();
+            int granted = (int) Math.max(0, Math.min(requested, maxPagesToFetch - current));
+            if (granted == 0 || scheduledPages.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    @Override
+    public void scheduleAll(List<WebURL> urls) {
+        int granted = reserve(urls.size());
+        if (granted == 0) {
+            return;
+        }
+        List<List<WebURL>> byPartition = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            byPartition.add(new ArrayList<>());
+        }
+        for (WebURL url : urls.subList(0, granted)) {
+            byPartition.get(PartitionedSleepycatFrontierConfiguration.partitionOf(url.getURL(), partitions.length))
+                       .add(url);
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            if (!byPartition.get(i).isEmpty()) {
+                partitions[i].scheduleAll(byPartition.get(i));
+            }
+        }
+        signalWaiting();
+    }
+
+    @Override
+    public void schedule(WebURL url) {
+        if (reserve(1) == 0) {
+            return;
+        }
+        partitionOf(url).schedule(url);
+        signalWaiting();
+    }
+
+    @Override
+    public void reschedule(WebURL url) {
+        partitionOf(url).reschedule(url);
+        signalWaiting();
+    }
+
+    private void signalWaiting() {
+        version.incrementAndGet();
+        if (waiting.get() > 0) {
+            mutex.lock();
+            try {
+                waitingList.signalAll();
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void getNextURLs(int max, List<WebURL> result) {
+        while (true) {
+            if (isFinished) {
+                return;
+            }
+            long seen = version.get();
+            pollRoundRobin(max, result);
+            if (!result.isEmpty()) {
+                return;
+            }
+
+            mutex.lock();
+            waiting.incrementAndGet();
+            try {
+                while (!isFinished && version.get() == seen) {
+                    waitingList.await();
+                }
+            } catch (InterruptedException ignored) {
+                // Do nothing
+            } finally {
+                waiting.decrementAndGet();
+                mutex.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void pollNextURLs(int max, List<WebURL> result) {
+        if (!isFinished) {
+            pollRoundRobin(max, result);
+        }
+    }
+
+    /*
+     * takes an equal share from every partition first, so a batch spans the partitions, then
+     * fills up from whichever partitions have urls left
+     */
+    private void pollRoundRobin(int max, List<WebURL> result) {
+        int start = Math.floorMod(nextPartition.getAndIncrement(), partitions.length);
+        int share = Math.max(1, max / partitions.length);
+        for (int i = 0; i < partitions.length && result.size() < max; i++) {
+            partitions[(start + i) % partitions.length].pollNextURLs(Math.min(share, max - result.size()), result);
+        }
+        for (int i = 0; i < partitions.length && result.size() < max; i++) {
+            partitions[(start + i) % partitions.length].pollNextURLs(max - result.size(), result);
+        }
+    }
+
+    @Override
+    public void setProcessed(WebURL webURL) {
+        partitionOf(webURL).setProcessed(webURL);
+    }
+
+    @Override
+    public long getQueueLength() {
+        long length = 0;
+        for (SleepycatFrontierImpl partition : partitions) {
+            length += partition.getQueueLength();
+        }
+        return length;
+    }
+
+    @Override
+    public long getNumberOfAssignedPages() {
+        long assigned = 0;
+        for (SleepycatFrontierImpl partition : partitions) {
+            assigned += partition.getNumberOfAssignedPages();
+        }
+        return assigned;
+    }
+
+    @Override
+    public long getNumberOfProcessedPages() {
+        long processed = 0;
+        for (SleepycatFrontierImpl partition : partitions) {
+            processed += partition.getNumberOfProcessedPages();
+        }
+        return processed;
+    }
+
+    @Override
+    public long getNumberOfScheduledPages() {
+        long scheduled = 0;
+        for (SleepycatFrontierImpl partition : partitions) {
+            scheduled += partition.getNumberOfScheduledPages();
+        }
+        return scheduled;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public void close() {
+        for (SleepycatFrontierImpl partition : partitions) {
+            partition.close();
+        }
+    }
+
+    @Override
+    public void finish() {
+        isFinished = true;
+        for (SleepycatFrontierImpl partition : partitions) {
+            partition.finish();
+        }
+        mutex.lock();
+        try {
+            waitingList.signalAll();
+        } finally {
+            mutex.unlock();
+        }
+    }
+}
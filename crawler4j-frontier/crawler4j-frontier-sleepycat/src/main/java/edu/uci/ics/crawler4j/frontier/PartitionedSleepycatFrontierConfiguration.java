@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-frontier-sleepycat
+ * %%
+ * Copyright (C) 2010 - 2021 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.url.SleepycatWebURLFactory;
+import edu.uci.ics.crawler4j.url.WebURLFactory;
+
+/**
+ * Splits the DocIDs database and the work queues into partitions by the host of the urls. Each
+ * partition has a JE environment of its own in {@code frontier-<i>-of-<n>} below the crawl
+ * storage folder, so partitions neither share locks nor a log. They do share one JE cache,
+ * sized by the {@link SleepycatEnvironmentProfile}, instead of taking the default share of the
+ * heap each. A resumed crawl has to use the number of partitions it has been started with.
+ */
+public class PartitionedSleepycatFrontierConfiguration implements FrontierConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedSleepycatFrontierConfiguration.class);
+
+    private static final Pattern PARTITION_FOLDER = Pattern.compile("frontier-(\\d+)-of-(\\d+)");
+
+    private final SleepycatFrontierConfiguration[] partitions;
+    private final PartitionedSleepycatFrontier frontier;
+    private final PartitionedSleepycatDocIDServer docIdServer;
+
+    public PartitionedSleepycatFrontierConfiguration(CrawlConfig config, int partitions) throws Exception {
+        this(config, partitions, SleepycatEnvironmentProfile.defaults(), SleepycatDocIDServer.KeyType.URL,
+             SleepycatDocIDServer.CollisionPolicy.VERIFY);
+    }
+
+    /**
+     * @param partitions           the number of partitions, urls of a host always share one
+     * @param profile              the tuning of each JE environment, the cache size is the one of
+     *                             the cache shared by all partitions
+     * @param docIdKeyType         how the DocIDs databases are keyed
+     * @param docIdCollisionPolicy how urls with the same fingerprint are handled
+     */
+    public PartitionedSleepycatFrontierConfiguration(CrawlConfig config, int partitions,
+                                                     SleepycatEnvironmentProfile profile,
+                                                     SleepycatDocIDServer.KeyType docIdKeyType,
+                                                     SleepycatDocIDServer.CollisionPolicy docIdCollisionPolicy)
+            throws Exception {
+        if (partitions < 1) {
+            throw new Exception("Invalid number of partitions: " + partitions);
+        }
+        File storageFolder = new File(config.getCrawlStorageFolder());
+        if (config.isResumableCrawling()) {
+            checkLayout(storageFolder, partitions);
+        }
+        if (!storageFolder.exists()) {
+            try {
+                Files.createDirectories(storageFolder.toPath());
+            } catch (IOException e) {
+                logger.error(e.getLocalizedMessage(), e);
+                throw new Exception("Failed creating the crawl storage folder: " + storageFolder.getAbsolutePath());
+            }
+        }
+
+        this.partitions = new SleepycatFrontierConfiguration[partitions];
+        SleepycatFrontierImpl[] frontiers = new SleepycatFrontierImpl[partitions];
+        SleepycatDocIDServer[] docIdServers = new SleepycatDocIDServer[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                File envHome = new File(storageFolder, "frontier-" + i + "-of-" + partitions);
+                this.partitions[i] = new SleepycatFrontierConfiguration(config, envHome, 500, profile,
+                                                                        docIdKeyType, docIdCollisionPolicy, true);
+                frontiers[i] = (SleepycatFrontierImpl) this.partitions[i].getFrontier();
+                docIdServers[i] = (SleepycatDocIDServer) this.partitions[i].getDocIDServer();
+            }
+        } catch (Exception e) {
+            close();
+            throw e;
+        }
+        this.frontier = new PartitionedSleepycatFrontier(frontiers, config);
+        this.docIdServer = new PartitionedSleepycatDocIDServer(docIdServers);
+    }
+
+    private static void checkLayout(File storageFolder, int partitions) throws Exception {
+        File[] folders = storageFolder.listFiles();
+        if (folders == null) {
+            return;
+        }
+        for (File folder : folders) {
+            Matcher matcher = PARTITION_FOLDER.matcher(folder.getName());
+            if (folder.isDirectory() && matcher.matches() && Integer.parseInt(matcher.group(2)) != partitions) {
+                throw new Exception("The crawl to resume has been started with " + matcher.group(2) +
+                                    " partitions, resume it with the same number of partitions");
+            }
+        }
+    }
+
+    /**
+     * @return the partition of the host of the url, i.e. the part between "://" and the path,
+     * query or fragment
+     */
+    static int partitionOf(String url, int partitions) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        int hash = 0;
+        while (end < url.length()) {
+            char c = url.charAt(end++);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            hash = 31 * hash + Character.toLowerCase(c);
+        }
+        // spread the bits of similar host names before taking the modulus
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, partitions);
+    }
+
+    @Override
+    public DocIDServer getDocIDServer() {
+        return docIdServer;
+    }
+
+    @Override
+    public Frontier getFrontier() {
+        return frontier;
+    }
+
+    @Override
+    public WebURLFactory getWebURLFactory() {
+        return new SleepycatWebURLFactory();
+    }
+
+    /*
+     * the configurations of the partitions, for tests
+     */
+    SleepycatFrontierConfiguration[] getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public void close() {
+        for (SleepycatFrontierConfiguration partition : partitions) {
+            if (partition != null) {
+                partition.close();
+            }
+        }
+    }
+}
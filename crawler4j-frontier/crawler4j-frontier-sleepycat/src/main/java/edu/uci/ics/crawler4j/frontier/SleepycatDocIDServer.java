@@ -22,17 +22,27 @@ package edu.uci.ics.crawler4j.frontier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
 
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
 import edu.uci.ics.crawler4j.util.Util;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.ObjIntConsumer;
 
 /**
  * @author Yasser Ganjisaffar
@@ -41,22 +51,101 @@ import java.nio.charset.StandardCharsets;
 public class SleepycatDocIDServer implements DocIDServer{
     private static final Logger logger = LoggerFactory.getLogger(SleepycatDocIDServer.class);
 
-    private final Database docIDsDB;
+    /**
+     * How the DocIDs database is keyed.
+     */
+    public enum KeyType {
+        /**
+         * The UTF-8 bytes of the url.
+         */
+        URL(0),
+        /**
+         * The first 64 bits of the MD5 of the url.
+         */
+        FINGERPRINT_64(8),
+        /**
+         * The 128 bit MD5 of the url.
+         */
+        FINGERPRINT_128(16);
+
+        private final int length;
+
+        KeyType(int length) {
+            this.length = length;
+        }
+    }
+
+    /**
+     * What happens if two urls have the same fingerprint.
+     */
+    public enum CollisionPolicy {
+        /**
+         * The second url is taken for the first one, i.e. it counts as seen and is not crawled.
+         * The values only hold the docid, so the database is as small as possible, but its urls
+         * cannot be enumerated, e.g. to rebuild a Bloom filter.
+         */
+        IGNORE,
+        /**
+         * The values hold the url as well and colliding urls are stored under the next free
+         * probe of their fingerprint. A record is therefore about as large as with
+         * {@link KeyType#URL}: fingerprints only shrink the keys, i.e. the internal nodes of
+         * the B-tree which JE keeps in its cache, not the database on disk.
+         */
+        VERIFY
+    }
+
     private static final String DATABASE_NAME = "DocIDs";
 
-    private final Object mutex = new Object();
+    /*
+     * the number of urls with the same fingerprint that can be told apart with VERIFY
+     */
+    private static final int MAX_PROBES = 256;
+
+    private final Database docIDsDB;
+
+    private final ReentrantLock mutex = new ReentrantLock();
 
     private final CrawlConfig config;
+    private final KeyType keyType;
+    private final CollisionPolicy collisionPolicy;
+    private final MessageDigest md5;
     private int lastDocID;
 
     public SleepycatDocIDServer(Environment env, CrawlConfig config) {
+        this(env, config, KeyType.URL, CollisionPolicy.VERIFY);
+    }
+
+    /**
+     * @param keyType         how urls are keyed, each key type uses a database of its own and a
+     *                        resumed crawl has to use the key type it has been started with
+     * @param collisionPolicy how urls with the same fingerprint are told apart, not used for
+     *                        {@link KeyType#URL}
+     */
+    public SleepycatDocIDServer(Environment env, CrawlConfig config, KeyType keyType,
+                                CollisionPolicy collisionPolicy) {
         this.config = config;
+        this.keyType = keyType;
+        this.collisionPolicy = collisionPolicy;
+        try {
+            this.md5 = keyType == KeyType.URL ? null : MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is required for fingerprint keys", e);
+        }
+        String databaseName = getDatabaseName(keyType, collisionPolicy);
+        if (config.isResumableCrawling()) {
+            for (String name : env.getDatabaseNames()) {
+                if (name.startsWith(DATABASE_NAME) && !name.equals(databaseName)) {
+                    throw new IllegalStateException("The crawl to resume has been started with the docid database " +
+                                                    name + ", resume it with the same key type and collision policy");
+                }
+            }
+        }
         DatabaseConfig dbConfig = new DatabaseConfig();
         dbConfig.setAllowCreate(true);
         dbConfig.setTransactional(config.isResumableCrawling());
         dbConfig.setDeferredWrite(!config.isResumableCrawling());
         lastDocID = 0;
-        docIDsDB = env.openDatabase(null, DATABASE_NAME, dbConfig);
+        docIDsDB = env.openDatabase(null, databaseName, dbConfig);
         if (config.isResumableCrawling()) {
             int docCount = getDocCount();
             if (docCount > 0) {
@@ -73,13 +162,10 @@ public class SleepycatDocIDServer implements DocIDServer{
      * @return the docid of the url if it is seen before. Otherwise -1 is returned.
      */
     public int getDocId(String url) {
-        synchronized (mutex) {
-            OperationStatus result;
-            DatabaseEntry value = new DatabaseEntry();
+        mutex.lock();
+        try {
             try {
-                DatabaseEntry key = new DatabaseEntry(url.getBytes(StandardCharsets.UTF_8));
-                result = docIDsDB.get(null, key, value, null);
-
+                return lookup(null, url);
             } catch (RuntimeException e) {
                 if (config.isHaltOnError()) {
                     throw e;
@@ -88,17 +174,14 @@ public class SleepycatDocIDServer implements DocIDServer{
                     return -1;
                 }
             }
-
-            if ((result == OperationStatus.SUCCESS) && (value.getData().length > 0)) {
-                return Util.byteArray2Int(value.getData());
-            }
-
-            return -1;
+        } finally {
+            mutex.unlock();
         }
     }
 
     public int getNewDocID(String url) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             try {
                 // Make sure that we have not already assigned a docid for this URL
                 int docID = getDocId(url);
@@ -107,8 +190,7 @@ public class SleepycatDocIDServer implements DocIDServer{
                 }
 
                 ++lastDocID;
-                docIDsDB.put(null, new DatabaseEntry(url.getBytes(StandardCharsets.UTF_8)),
-                             new DatabaseEntry(Util.int2ByteArray(lastDocID)));
+                store(null, url, lastDocID);
                 return lastDocID;
             } catch (RuntimeException e) {
                 if (config.isHaltOnError()) {
@@ -118,11 +200,14 @@ public class SleepycatDocIDServer implements DocIDServer{
                     return -1;
                 }
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void addUrlAndDocId(String url, int docId) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             if (docId <= lastDocID) {
                 throw new IllegalArgumentException(
                     "Requested doc id: " + docId + " is not larger than: " + lastDocID);
@@ -137,10 +222,159 @@ public class SleepycatDocIDServer implements DocIDServer{
                 throw new IllegalArgumentException("Doc id: " + prevDocid + " is already assigned to URL: " + url);
             }
 
-            docIDsDB.put(null, new DatabaseEntry(url.getBytes(StandardCharsets.UTF_8)),
-                         new DatabaseEntry(Util.int2ByteArray(docId)));
+            store(null, url, docId);
             lastDocID = docId;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @Override
+    public int[] getDocIds(List<String> urls) {
+        int[] docIds = new int[urls.size()];
+        mutex.lock();
+        try {
+            for (int i = 0; i < docIds.length; i++) {
+                docIds[i] = getDocId(urls.get(i));
+            }
+            return docIds;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @Override
+    public List<DocIDAssignment> getOrCreateDocIds(List<String> urls) {
+        return getOrCreateDocIds(urls, () -> lastDocID + 1);
+    }
+
+    /*
+     * looks up and stores all urls in one transaction, new docids are taken from the given
+     * supplier, which lets PartitionedSleepycatDocIDServer assign them from a global counter
+     */
+    List<DocIDAssignment> getOrCreateDocIds(List<String> urls, IntSupplier nextDocId) {
+        List<DocIDAssignment> result = new ArrayList<>(urls.size());
+        mutex.lock();
+        try {
+            Transaction txn = config.isResumableCrawling() ?
+                              docIDsDB.getEnvironment().beginTransaction(null, null) : null;
+            boolean committed = false;
+            try {
+                for (String url : urls) {
+                    int docId = lookup(txn, url);
+                    if (docId > 0) {
+                        result.add(new DocIDAssignment(docId, false));
+                    } else {
+                        docId = nextDocId.getAsInt();
+                        store(txn, url, docId);
+                        lastDocID = docId;
+                        result.add(new DocIDAssignment(docId, true));
+                    }
+                }
+                if (txn != null) {
+                    txn.commit();
+                }
+                committed = true;
+                return result;
+            } finally {
+                if (!committed && txn != null) {
+                    txn.abort();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (config.isHaltOnError()) {
+                throw e;
+            } else {
+                logger.error("Exception thrown while getting new DocIDs", e);
+                // none of the urls is scheduled, as if getNewDocID had failed for each
+                result.clear();
+                for (int i = 0; i < urls.size(); i++) {
+                    result.add(new DocIDAssignment(-1, false));
+                }
+                return result;
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private static String getDatabaseName(KeyType keyType, CollisionPolicy collisionPolicy) {
+        if (keyType == KeyType.URL) {
+            return DATABASE_NAME;
+        }
+        return DATABASE_NAME + "-" + keyType.length * 8 + (collisionPolicy == CollisionPolicy.VERIFY ? "-verified" : "");
+    }
+
+    private int lookup(Transaction txn, String url) {
+        DatabaseEntry value = new DatabaseEntry();
+        if (keyType == KeyType.URL || collisionPolicy == CollisionPolicy.IGNORE) {
+            OperationStatus result = docIDsDB.get(txn, new DatabaseEntry(getKey(url)), value, null);
+            if ((result == OperationStatus.SUCCESS) && (value.getData().length > 0)) {
+                return Util.byteArray2Int(value.getData());
+            }
+            return -1;
+        }
+
+        byte[] key = getKey(url);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            key[key.length - 1] = (byte) probe;
+            OperationStatus result = docIDsDB.get(txn, new DatabaseEntry(key), value, null);
+            if (result != OperationStatus.SUCCESS) {
+                return -1;
+            }
+            if (isUrlOf(value.getData(), urlBytes)) {
+                return Util.byteArray2Int(value.getData());
+            }
         }
+        return -1;
+    }
+
+    private void store(Transaction txn, String url, int docId) {
+        if (keyType == KeyType.URL || collisionPolicy == CollisionPolicy.IGNORE) {
+            docIDsDB.put(txn, new DatabaseEntry(getKey(url)), new DatabaseEntry(Util.int2ByteArray(docId)));
+            return;
+        }
+
+        byte[] key = getKey(url);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[4 + urlBytes.length];
+        Util.putIntInByteArray(docId, data, 0);
+        System.arraycopy(urlBytes, 0, data, 4, urlBytes.length);
+        DatabaseEntry value = new DatabaseEntry();
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            key[key.length - 1] = (byte) probe;
+            OperationStatus result = docIDsDB.get(txn, new DatabaseEntry(key), value, null);
+            if (result != OperationStatus.SUCCESS || isUrlOf(value.getData(), urlBytes)) {
+                docIDsDB.put(txn, new DatabaseEntry(key), new DatabaseEntry(data));
+                return;
+            }
+        }
+        throw new IllegalStateException("Too many urls with the fingerprint of: " + url);
+    }
+
+    /*
+     * the url, or its fingerprint followed by a probe byte for VERIFY
+     */
+    private byte[] getKey(String url) {
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        if (keyType == KeyType.URL) {
+            return urlBytes;
+        }
+        byte[] digest = digest(urlBytes);
+        return Arrays.copyOf(digest, collisionPolicy == CollisionPolicy.VERIFY ? keyType.length + 1 : keyType.length);
+    }
+
+    /*
+     * the MD5 of the url, tests force collisions by overriding it
+     */
+    byte[] digest(byte[] urlBytes) {
+        return md5.digest(urlBytes);
+    }
+
+    private static boolean isUrlOf(byte[] data, byte[] urlBytes) {
+        return data.length == 4 + urlBytes.length &&
+               Arrays.equals(data, 4, data.length, urlBytes, 0, urlBytes.length);
     }
 
     public boolean isSeenBefore(String url) {
@@ -156,6 +390,36 @@ public class SleepycatDocIDServer implements DocIDServer{
         }
     }
 
+    @Override
+    public boolean forEach(ObjIntConsumer<String> consumer) {
+        if (keyType != KeyType.URL && collisionPolicy == CollisionPolicy.IGNORE) {
+            // only the fingerprints are known
+            return false;
+        }
+        mutex.lock();
+        try {
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            try (Cursor cursor = docIDsDB.openCursor(null, null)) {
+                OperationStatus result = cursor.getFirst(key, value, null);
+                while (result == OperationStatus.SUCCESS) {
+                    byte[] data = value.getData();
+                    if (keyType != KeyType.URL) {
+                        consumer.accept(new String(data, 4, data.length - 4, StandardCharsets.UTF_8),
+                                        Util.byteArray2Int(data));
+                    } else if (data.length > 0) {
+                        consumer.accept(new String(key.getData(), StandardCharsets.UTF_8),
+                                        Util.byteArray2Int(data));
+                    }
+                    result = cursor.getNext(key, value, null);
+                }
+            }
+            return true;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
     public void close() {
         try {
             docIDsDB.close();
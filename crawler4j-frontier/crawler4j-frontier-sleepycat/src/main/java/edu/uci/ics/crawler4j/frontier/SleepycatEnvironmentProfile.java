@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * de.hs-heilbronn.mi:crawler4j-frontier-sleepycat
+ * %%
+ * Copyright (C) 2010 - 2021 crawler4j-fork (pre-fork: Yasser Ganjisaffar)
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package edu.uci.ics.crawler4j.frontier;
+
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.EnvironmentConfig;
+
+/**
+ * Tuning of the JE environment backing the Sleepycat frontier. Settings left unset keep the JE
+ * defaults. The predefined profiles are starting points for common trade-offs:
+ * <ul>
+ * <li>{@link #throughput()}: large log files, lazy cleaning and checkpointing and commits which
+ * are not written to disk, a crash may lose the most recent work of a resumable crawl,</li>
+ * <li>{@link #balanced()}: commits are written to the file system but not synced, so they
+ * survive a crash of the JVM but not of the machine,</li>
+ * <li>{@link #durable()}: every commit is synced to disk.</li>
+ * </ul>
+ * Durability only applies to resumable crawls, the databases of other crawls are not
+ * transactional.
+ */
+public class SleepycatEnvironmentProfile {
+
+    private static final long MB = 1024 * 1024;
+
+    private long cacheSize = 0;
+    private int cachePercent = 0;
+    private long logFileSize = 0;
+    private int cleanerMinUtilization = 0;
+    private Durability durability = null;
+    private long checkpointerBytesInterval = 0;
+    private long checkpointerWakeupInterval = 0;
+
+    /**
+     * @return a profile keeping all JE defaults
+     */
+    public static SleepycatEnvironmentProfile defaults() {
+        return new SleepycatEnvironmentProfile();
+    }
+
+    public static SleepycatEnvironmentProfile throughput() {
+        SleepycatEnvironmentProfile profile = new SleepycatEnvironmentProfile();
+        profile.setLogFileSize(100 * MB);
+        profile.setCleanerMinUtilization(40);
+        profile.setDurability(Durability.COMMIT_NO_SYNC);
+        profile.setCheckpointerBytesInterval(200 * MB);
+        return profile;
+    }
+
+    public static SleepycatEnvironmentProfile balanced() {
+        SleepycatEnvironmentProfile profile = new SleepycatEnvironmentProfile();
+        profile.setLogFileSize(50 * MB);
+        profile.setCleanerMinUtilization(50);
+        profile.setDurability(Durability.COMMIT_WRITE_NO_SYNC);
+        profile.setCheckpointerBytesInterval(100 * MB);
+        return profile;
+    }
+
+    public static SleepycatEnvironmentProfile durable() {
+        SleepycatEnvironmentProfile profile = new SleepycatEnvironmentProfile();
+        profile.setLogFileSize(20 * MB);
+        profile.setCleanerMinUtilization(50);
+        profile.setDurability(Durability.COMMIT_SYNC);
+        profile.setCheckpointerBytesInterval(20 * MB);
+        return profile;
+    }
+
+    /**
+     * Applies the settings of this profile which are set.
+     */
+    public void applyTo(EnvironmentConfig envConfig) {
+        if (cacheSize > 0) {
+            envConfig.setCacheSize(cacheSize);
+        } else if (cachePercent > 0) {
+            envConfig.setCachePercent(cachePercent);
+        }
+        if (logFileSize > 0) {
+            envConfig.setConfigParam(EnvironmentConfig.LOG_FILE_MAX, Long.toString(logFileSize));
+        }
+        if (cleanerMinUtilization > 0) {
+            envConfig.setConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION,
+                                     Integer.toString(cleanerMinUtilization));
+        }
+        if (durability != null && envConfig.getTransactional()) {
+            envConfig.setDurability(durability);
+        }
+        if (checkpointerBytesInterval > 0) {
+            envConfig.setConfigParam(EnvironmentConfig.CHECKPOINTER_BYTES_INTERVAL,
+                                     Long.toString(checkpointerBytesInterval));
+        }
+        if (checkpointerWakeupInterval > 0) {
+            envConfig.setConfigParam(EnvironmentConfig.CHECKPOINTER_WAKEUP_INTERVAL,
+                                     checkpointerWakeupInterval + " ms");
+        }
+    }
+
+    /**
+     * @return the JE cache size in bytes, 0 for the JE default or {@link #getCachePercent()}
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @return the JE cache size in percent of the heap, 0 for the JE default; ignored if
+     * {@link #getCacheSize()} is set
+     */
+    public int getCachePercent() {
+        return cachePercent;
+    }
+
+    public void setCachePercent(int cachePercent) {
+        this.cachePercent = cachePercent;
+    }
+
+    /**
+     * @return the maximum size of a JE log file in bytes, 0 for the JE default. Larger files
+     * mean fewer files to open and clean.
+     */
+    public long getLogFileSize() {
+        return logFileSize;
+    }
+
+    public void setLogFileSize(long logFileSize) {
+        this.logFileSize = logFileSize;
+    }
+
+    /**
+     * @return the minimum utilization of the log in percent the cleaner maintains, 0 for the
+     * JE default. Lower values mean less cleaning but more disk space.
+     */
+    public int getCleanerMinUtilization() {
+        return cleanerMinUtilization;
+    }
+
+    public void setCleanerMinUtilization(int cleanerMinUtilization) {
+        this.cleanerMinUtilization = cleanerMinUtilization;
+    }
+
+    /**
+     * @return the durability of commits, {@code null} for the JE default (sync)
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * @return the number of bytes written to the log between checkpoints, 0 for the JE default
+     */
+    public long getCheckpointerBytesInterval() {
+        return checkpointerBytesInterval;
+    }
+
+    public void setCheckpointerBytesInterval(long checkpointerBytesInterval) {
+        this.checkpointerBytesInterval = checkpointerBytesInterval;
+    }
+
+    /**
+     * @return the time in milliseconds between checkpoints, 0 for the JE default (checkpoints
+     * only triggered by {@link #getCheckpointerBytesInterval()})
+     */
+    public long getCheckpointerWakeupInterval() {
+        return checkpointerWakeupInterval;
+    }
+
+    public void setCheckpointerWakeupInterval(long checkpointerWakeupInterval) {
+        this.checkpointerWakeupInterval = checkpointerWakeupInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "Cache size: " + getCacheSize() + "\n" +
+                "Cache percent: " + getCachePercent() + "\n" +
+                "Log file size: " + getLogFileSize() + "\n" +
+                "Cleaner min utilization: " + getCleanerMinUtilization() + "\n" +
+                "Durability: " + getDurability() + "\n" +
+                "Checkpointer bytes interval: " + getCheckpointerBytesInterval() + "\n" +
+                "Checkpointer wakeup interval: " + getCheckpointerWakeupInterval() + "\n";
+    }
+}
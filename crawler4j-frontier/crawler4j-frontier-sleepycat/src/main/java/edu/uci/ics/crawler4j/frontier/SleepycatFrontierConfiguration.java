@@ -42,13 +42,60 @@ public class SleepycatFrontierConfiguration implements FrontierConfiguration {
     private final Environment env;
 
     public SleepycatFrontierConfiguration(CrawlConfig config, long dbLockTimeout) throws Exception {
+        this(config, dbLockTimeout, SleepycatDocIDServer.KeyType.URL, SleepycatDocIDServer.CollisionPolicy.VERIFY);
+    }
+
+    /**
+     * @param docIdKeyType         how the DocIDs database is keyed, fingerprints keep the keys
+     *                             cached by JE several times smaller than full urls
+     * @param docIdCollisionPolicy how urls with the same fingerprint are handled, only
+     *                             {@link SleepycatDocIDServer.CollisionPolicy#IGNORE} shrinks the
+     *                             database on disk as well
+     */
+    public SleepycatFrontierConfiguration(CrawlConfig config, long dbLockTimeout,
+                                          SleepycatDocIDServer.KeyType docIdKeyType,
+                                          SleepycatDocIDServer.CollisionPolicy docIdCollisionPolicy) throws Exception {
+        this(config, dbLockTimeout, SleepycatEnvironmentProfile.defaults(), docIdKeyType, docIdCollisionPolicy);
+    }
+
+    /**
+     * @param profile the tuning of the JE environment, e.g. {@link SleepycatEnvironmentProfile#balanced()}
+     */
+    public SleepycatFrontierConfiguration(CrawlConfig config, SleepycatEnvironmentProfile profile) throws Exception {
+        this(config, 500, profile, SleepycatDocIDServer.KeyType.URL, SleepycatDocIDServer.CollisionPolicy.VERIFY);
+    }
+
+    /**
+     * @param profile              the tuning of the JE environment
+     * @param docIdKeyType         how the DocIDs database is keyed, fingerprints keep the keys
+     *                             cached by JE several times smaller than full urls
+     * @param docIdCollisionPolicy how urls with the same fingerprint are handled, only
+     *                             {@link SleepycatDocIDServer.CollisionPolicy#IGNORE} shrinks the
+     *                             database on disk as well
+     */
+    public SleepycatFrontierConfiguration(CrawlConfig config, long dbLockTimeout, SleepycatEnvironmentProfile profile,
+                                          SleepycatDocIDServer.KeyType docIdKeyType,
+                                          SleepycatDocIDServer.CollisionPolicy docIdCollisionPolicy) throws Exception {
+        this(config, new File(config.getCrawlStorageFolder() + File.separator + "frontier"), dbLockTimeout, profile,
+             docIdKeyType, docIdCollisionPolicy, false);
+    }
+
+    /*
+     * used for the shards of a PartitionedSleepycatFrontierConfiguration, each in a folder of its own
+     * and all in one JE cache shared by the environments of the JVM which ask for it
+     */
+    SleepycatFrontierConfiguration(CrawlConfig config, File envHome, long dbLockTimeout,
+                                   SleepycatEnvironmentProfile profile, SleepycatDocIDServer.KeyType docIdKeyType,
+                                   SleepycatDocIDServer.CollisionPolicy docIdCollisionPolicy,
+                                   boolean sharedCache) throws Exception {
         EnvironmentConfig envConfig = new EnvironmentConfig();
         envConfig.setAllowCreate(true);
         envConfig.setTransactional(config.isResumableCrawling());
         envConfig.setLocking(config.isResumableCrawling());
         envConfig.setLockTimeout(dbLockTimeout, TimeUnit.MILLISECONDS);
+        envConfig.setSharedCache(sharedCache);
+        profile.applyTo(envConfig);
 
-        File envHome = new File(config.getCrawlStorageFolder() + File.separator + "frontier");
         if (!envHome.exists()) {
             try {
                 Files.createDirectory(envHome.toPath());
@@ -68,7 +115,7 @@ public class SleepycatFrontierConfiguration implements FrontierConfiguration {
         }
 
         this.env = new Environment(envHome, envConfig);
-        this.docIdServer = new SleepycatDocIDServer(env, config);
+        this.docIdServer = new SleepycatDocIDServer(env, config, docIdKeyType, docIdCollisionPolicy);
         this.frontier = new SleepycatFrontierImpl(env, config);
     }
 
@@ -91,6 +138,13 @@ public class SleepycatFrontierConfiguration implements FrontierConfiguration {
         return new SleepycatWebURLFactory();
     }
 
+    /*
+     * the environment of the frontier, e.g. to check its configuration
+     */
+    Environment getEnvironment() {
+        return env;
+    }
+
     @Override
     public void close() {
         env.close();
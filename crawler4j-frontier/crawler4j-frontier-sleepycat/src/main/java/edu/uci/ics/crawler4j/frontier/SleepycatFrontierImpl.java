@@ -19,7 +19,17 @@
  */
 package edu.uci.ics.crawler4j.frontier;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,23 +54,48 @@ public class SleepycatFrontierImpl implements Frontier {
 
     protected InProcessPagesDB inProcessPages;
 
-    protected final Object mutex = new Object();
-    protected final Object waitingList = new Object();
+    /*
+     * explicit locks instead of monitors, so that crawlers running on virtual threads
+     * do not pin their carrier thread while waiting for the database
+     */
+    protected final ReentrantLock mutex = new ReentrantLock();
+    protected final Condition waitingList = mutex.newCondition();
 
-    protected boolean isFinished = false;
+    protected volatile boolean isFinished = false;
 
     protected long scheduledPages;
 
     protected Counters counters;
 
+    /*
+     * processed urls not yet removed from inProcessPages if they are acknowledged in batches
+     */
+    private final ConcurrentLinkedQueue<PendingRemoval> processed = new ConcurrentLinkedQueue<>();
+
+    /*
+     * how often each url in process has been dequeued if they are acknowledged in batches, a
+     * pending removal is stale once its url has been dequeued again, e.g. for a retry
+     */
+    private final Map<Integer, Integer> dequeues = new ConcurrentHashMap<>();
+    private final AtomicInteger processedCount = new AtomicInteger();
+    private final ReentrantLock processedMutex = new ReentrantLock();
+    private ScheduledExecutorService processedFlusher;
+
     public SleepycatFrontierImpl(Environment env, CrawlConfig config) {
         this.config = config;
         this.counters = new Counters(env, config);
         try {
-            workQueues = new WorkQueues(env, DATABASE_NAME, config.isResumableCrawling());
+            workQueues = new WorkQueues(env, DATABASE_NAME, config.isResumableCrawling(),
+                                        config.isHostInterleavedQueue());
             if (config.isResumableCrawling()) {
                 scheduledPages = counters.getValue(Counters.ReservedCounterNames.SCHEDULED_PAGES);
                 inProcessPages = new InProcessPagesDB(env);
+                if (config.getProcessedBatchSize() > 1) {
+                    processedFlusher = newProcessedFlusher();
+                    long interval = config.getProcessedFlushInterval();
+                    processedFlusher.scheduleWithFixedDelay(this::flushProcessed, interval, interval,
+                                                            TimeUnit.MILLISECONDS);
+                }
                 long numPreviouslyInProcessPages = inProcessPages.getLength();
                 if (numPreviouslyInProcessPages > 0) {
                     logger.info("Rescheduling {} URLs from previous crawl.",
@@ -86,7 +121,8 @@ public class SleepycatFrontierImpl implements Frontier {
 
     public void scheduleAll(List<WebURL> urls) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             int newScheduledPage = 0;
             for (WebURL url : urls) {
                 if ((maxPagesToFetch > 0) &&
@@ -105,80 +141,168 @@ public class SleepycatFrontierImpl implements Frontier {
                 scheduledPages += newScheduledPage;
                 counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES, newScheduledPage);
             }
-            synchronized (waitingList) {
-                waitingList.notifyAll();
-            }
+            waitingList.signalAll();
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void schedule(WebURL url) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
-        synchronized (mutex) {
-            try {
-                if (maxPagesToFetch < 0 || scheduledPages < maxPagesToFetch) {
-                    workQueues.put(url);
-                    scheduledPages++;
-                    counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES);
-                }
-            } catch (DatabaseException e) {
-                logger.error("Error while putting the url in the work queue", e);
+        mutex.lock();
+        try {
+            if (maxPagesToFetch < 0 || scheduledPages < maxPagesToFetch) {
+                workQueues.put(url);
+                scheduledPages++;
+                counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES);
+                waitingList.signalAll();
             }
+        } catch (DatabaseException e) {
+            logger.error("Error while putting the url in the work queue", e);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Puts a processed url back into the work queues without reserving a page of
+     * maxPagesToFetch for it, and takes back its count as processed page.
+     */
+    @Override
+    public void reschedule(WebURL url) {
+        mutex.lock();
+        try {
+            workQueues.put(url);
+            counters.increment(Counters.ReservedCounterNames.PROCESSED_PAGES, -1);
+            waitingList.signalAll();
+        } catch (DatabaseException e) {
+            logger.error("Error while putting the url in the work queue", e);
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void getNextURLs(int max, List<WebURL> result) {
-        while (true) {
-            synchronized (mutex) {
+        mutex.lock();
+        try {
+            while (true) {
                 if (isFinished) {
                     return;
                 }
-                try {
-                    List<WebURL> curResults = workQueues.get(max);
-                    workQueues.delete(curResults.size());
-                    if (inProcessPages != null) {
-                        for (WebURL curPage : curResults) {
-                            inProcessPages.put(curPage);
-                        }
-                    }
-                    result.addAll(curResults);
-                } catch (DatabaseException e) {
-                    logger.error("Error while getting next urls", e);
-                }
+                dequeue(max, result);
 
                 if (result.size() > 0) {
                     return;
                 }
-            }
 
-            try {
-                synchronized (waitingList) {
-                    waitingList.wait();
+                try {
+                    waitingList.await();
+                } catch (InterruptedException ignored) {
+                    // Do nothing
                 }
-            } catch (InterruptedException ignored) {
-                // Do nothing
             }
-            if (isFinished) {
-                return;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #getNextURLs(int, List)}, but returns right away if there are no urls.
+     */
+    @Override
+    public void pollNextURLs(int max, List<WebURL> result) {
+        mutex.lock();
+        try {
+            if (!isFinished) {
+                dequeue(max, result);
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private void dequeue(int max, List<WebURL> result) {
+        try {
+            List<WebURL> urls = workQueues.poll(max, inProcessPages);
+            if (processedFlusher != null) {
+                for (WebURL url : urls) {
+                    dequeues.merge(url.getDocid(), 1, Integer::sum);
+                }
             }
+            result.addAll(urls);
+        } catch (DatabaseException e) {
+            logger.error("Error while getting next urls", e);
+        }
+    }
+
+    /*
+     * the number of urls scheduled in this frontier, including those of a previous crawl which
+     * have not been processed
+     */
+    long getScheduledPages() {
+        mutex.lock();
+        try {
+            return scheduledPages;
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void setProcessed(WebURL webURL) {
         counters.increment(Counters.ReservedCounterNames.PROCESSED_PAGES);
         if (inProcessPages != null) {
-            if (!inProcessPages.removeURL(webURL)) {
+            if (processedFlusher != null) {
+                processed.add(new PendingRemoval(webURL, dequeues.getOrDefault(webURL.getDocid(), 0)));
+                if (processedCount.incrementAndGet() >= config.getProcessedBatchSize()) {
+                    flushProcessed();
+                }
+            } else if (!inProcessPages.removeURL(webURL)) {
                 logger.warn("Could not remove: {} from list of processed pages.", webURL.getURL());
             }
         }
     }
 
+    /**
+     * Removes the processed urls collected so far from the in-process list in one transaction.
+     * Urls which have been dequeued again since they were processed are skipped, their
+     * in-process entry belongs to the new attempt.
+     */
+    protected void flushProcessed() {
+        if (processedFlusher == null) {
+            return;
+        }
+        processedMutex.lock();
+        try {
+            List<WebURL> batch = new ArrayList<>();
+            PendingRemoval removal;
+            while ((removal = processed.poll()) != null) {
+                processedCount.decrementAndGet();
+                if (dequeues.remove(removal.url.getDocid(), removal.dequeue)) {
+                    batch.add(removal.url);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            int removed = inProcessPages.removeURLs(batch);
+            if (removed < batch.size()) {
+                logger.warn("Could not remove {} of {} urls from list of processed pages.",
+                            batch.size() - removed, batch.size());
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error while removing processed urls", e);
+        } finally {
+            processedMutex.unlock();
+        }
+    }
+
     public long getQueueLength() {
         return workQueues.getLength();
     }
 
     public long getNumberOfAssignedPages() {
         if (inProcessPages != null) {
-            return inProcessPages.getLength();
+            return Math.max(0, inProcessPages.getLength() - processedCount.get());
         } else {
             return 0;
         }
@@ -197,6 +321,16 @@ public class SleepycatFrontierImpl implements Frontier {
     }
 
     public void close() {
+        if (processedFlusher != null) {
+            // no interrupts, JE invalidates the environment if its I/O is interrupted
+            processedFlusher.shutdown();
+            try {
+                processedFlusher.awaitTermination(config.getProcessedFlushInterval(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushProcessed();
+        }
         workQueues.close();
         counters.close();
         if (inProcessPages != null) {
@@ -204,10 +338,36 @@ public class SleepycatFrontierImpl implements Frontier {
         }
     }
 
+    private static ScheduledExecutorService newProcessedFlusher() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Crawler processed urls flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
     public void finish() {
-        isFinished = true;
-        synchronized (waitingList) {
-            waitingList.notifyAll();
+        mutex.lock();
+        try {
+            isFinished = true;
+            waitingList.signalAll();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private static final class PendingRemoval {
+        private final WebURL url;
+        /*
+         * the dequeue of the url it has been processed for
+         */
+        private final int dequeue;
+
+        private PendingRemoval(WebURL url, int dequeue) {
+            this.url = url;
+            this.dequeue = dequeue;
         }
     }
 }
@@ -21,6 +21,9 @@ package edu.uci.ics.crawler4j.frontier;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
@@ -37,6 +40,18 @@ import edu.uci.ics.crawler4j.util.Util;
  * @author Yasser Ganjisaffar
  */
 public class WorkQueues {
+    /*
+     * number of per host sequence counters of a host interleaved queue in each priority and
+     * depth, hosts sharing a counter are still interleaved with all others
+     */
+    private static final int HOST_SEQUENCES = 1 << 16;
+
+    /*
+     * appended to the database name of a host interleaved queue, so a crawl is resumed with the
+     * key layout it has been started with
+     */
+    private static final String HOST_INTERLEAVED_SUFFIX = "HostInterleaved";
+
     private final Database urlsDB;
     private final Environment env;
 
@@ -44,17 +59,70 @@ public class WorkQueues {
 
     private final WebURLTupleBinding webURLBinding;
 
-    protected final Object mutex = new Object();
+    /*
+     * if hosts are interleaved: the next sequence number by band (priority and depth) and host
+     * hash, and the sequence number the head of each band has reached; null otherwise
+     */
+    private final Map<Long, Integer> hostSequences;
+    private final Map<Integer, Integer> bandCursors;
+
+    protected final ReentrantLock mutex = new ReentrantLock();
 
     public WorkQueues(Environment env, String dbName, boolean resumable) {
+        this(env, dbName, resumable, false);
+    }
+
+    /**
+     * @param interleaveHosts if the urls of the same priority and depth should be ordered
+     *                        round-robin by host instead of by docid, each key layout uses a
+     *                        database of its own and a resumed crawl has to use the layout it
+     *                        has been started with
+     */
+    public WorkQueues(Environment env, String dbName, boolean resumable, boolean interleaveHosts) {
         this.env = env;
         this.resumable = resumable;
+        this.hostSequences = interleaveHosts ? new ConcurrentHashMap<>() : null;
+        this.bandCursors = interleaveHosts ? new ConcurrentHashMap<>() : null;
+        String otherLayout = interleaveHosts ? dbName : dbName + HOST_INTERLEAVED_SUFFIX;
+        if (resumable && env.getDatabaseNames().contains(otherLayout)) {
+            throw new IllegalStateException("The crawl to resume has been started with the work queue " +
+                                            otherLayout + ", resume it with" + (interleaveHosts ? "out" : "") +
+                                            " host interleaved queues");
+        }
+        if (interleaveHosts) {
+            dbName += HOST_INTERLEAVED_SUFFIX;
+        }
         DatabaseConfig dbConfig = new DatabaseConfig();
         dbConfig.setAllowCreate(true);
         dbConfig.setTransactional(resumable);
         dbConfig.setDeferredWrite(!resumable);
         urlsDB = env.openDatabase(null, dbName, dbConfig);
         webURLBinding = new WebURLTupleBinding();
+        if (interleaveHosts) {
+            loadSequences();
+        }
+    }
+
+    /*
+     * the sequence numbers of a resumed crawl continue after the persisted urls of each host,
+     * and new hosts start at the head of their band
+     */
+    private void loadSequences() {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        try (Cursor cursor = openCursor(null)) {
+            while (cursor.getNext(key, value, null) == OperationStatus.SUCCESS) {
+                if (value.getData().length == 0) {
+                    continue;
+                }
+                byte[] keyData = key.getData();
+                int band = bandOf(keyData);
+                int sequence = sequenceOf(keyData);
+                // keys are sorted, the first one of a band is its head
+                bandCursors.putIfAbsent(band, sequence);
+                hostSequences.merge(sequenceKey(band, webURLBinding.entryToObject(value)), sequence + 1, Math::max);
+            }
+        }
     }
 
     protected Transaction beginTransaction() {
@@ -67,12 +135,19 @@ public class WorkQueues {
         }
     }
 
+    protected static void abort(Transaction tnx) {
+        if (tnx != null) {
+            tnx.abort();
+        }
+    }
+
     protected Cursor openCursor(Transaction txn) {
         return urlsDB.openCursor(txn, null);
     }
 
     public List<WebURL> get(int max) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             List<WebURL> results = new ArrayList<>(max);
             DatabaseEntry key = new DatabaseEntry();
             DatabaseEntry value = new DatabaseEntry();
@@ -90,11 +165,63 @@ public class WorkQueues {
             }
             commit(txn);
             return results;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Removes up to {@code max} urls from the head of the queue and returns them. Reading and
+     * deleting happen in a single cursor pass, and if {@code inProcess} is given the urls are
+     * added to it within the same transaction, so a url is never lost or in both databases.
+     *
+     * @param max       the maximum number of urls to remove
+     * @param inProcess the database recording the urls being processed, may be {@code null}
+     * @return the removed urls in crawl order
+     */
+    public List<WebURL> poll(int max, WorkQueues inProcess) {
+        mutex.lock();
+        try {
+            List<WebURL> results = new ArrayList<>(max);
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            Transaction txn = beginTransaction();
+            boolean committed = false;
+            try {
+                try (Cursor cursor = openCursor(txn)) {
+                    OperationStatus result = cursor.getFirst(key, value, null);
+                    while ((results.size() < max) && (result == OperationStatus.SUCCESS)) {
+                        if (value.getData().length > 0) {
+                            WebURL url = webURLBinding.entryToObject(value);
+                            results.add(url);
+                            if (inProcess != null) {
+                                // the serialized url is stored as it is, only the key may differ
+                                inProcess.urlsDB.put(txn, inProcess.getKey(url), value);
+                            }
+                        }
+                        if (bandCursors != null) {
+                            bandCursors.merge(bandOf(key.getData()), sequenceOf(key.getData()), Math::max);
+                        }
+                        cursor.delete();
+                        result = cursor.getNext(key, value, null);
+                    }
+                }
+                commit(txn);
+                committed = true;
+            } finally {
+                if (!committed) {
+                    abort(txn);
+                }
+            }
+            return results;
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void delete(int count) {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             DatabaseEntry key = new DatabaseEntry();
             DatabaseEntry value = new DatabaseEntry();
             Transaction txn = beginTransaction();
@@ -108,6 +235,8 @@ public class WorkQueues {
                 }
             }
             commit(txn);
+        } finally {
+            mutex.unlock();
         }
     }
 
@@ -130,11 +259,49 @@ public class WorkQueues {
         return new DatabaseEntry(keyData);
     }
 
+    /*
+     * With interleaved hosts, a per host sequence number is put between the depth and the docid,
+     * so the n-th url of every host in a priority and depth comes before the (n+1)-th url of any
+     * of them. A host never starts behind the head of the band, so a host seen for the first
+     * time joins the current round instead of being crawled in one block. The sequence numbers
+     * are rebuilt from the queue when a crawl is resumed, the layout is kept by the name of the
+     * database.
+     */
+    protected DatabaseEntry getKey(WebURL url) {
+        if (hostSequences == null) {
+            return getDatabaseEntryKey(url);
+        }
+        byte[] keyData = new byte[10];
+        keyData[0] = url.getPriority();
+        keyData[1] = ((url.getDepth() > Byte.MAX_VALUE) ? Byte.MAX_VALUE : (byte) url.getDepth());
+        int band = bandOf(keyData);
+        int head = bandCursors.getOrDefault(band, 0);
+        int sequence = hostSequences.merge(sequenceKey(band, url), head + 1,
+                                           (next, ignored) -> Math.max(next, head) + 1) - 1;
+        Util.putIntInByteArray(sequence, keyData, 2);
+        Util.putIntInByteArray(url.getDocid(), keyData, 6);
+        return new DatabaseEntry(keyData);
+    }
+
+    private static long sequenceKey(int band, WebURL url) {
+        String domain = url.getDomain();
+        int hash = domain == null ? 0 : domain.hashCode();
+        return ((long) band << 16) | ((hash ^ (hash >>> 16)) & (HOST_SEQUENCES - 1));
+    }
+
+    private static int bandOf(byte[] keyData) {
+        return ((keyData[0] & 0xFF) << 8) | (keyData[1] & 0xFF);
+    }
+
+    private static int sequenceOf(byte[] keyData) {
+        return ((keyData[2] & 0xFF) << 24) | ((keyData[3] & 0xFF) << 16) | ((keyData[4] & 0xFF) << 8) | (keyData[5] & 0xFF);
+    }
+
     public void put(WebURL url) {
         DatabaseEntry value = new DatabaseEntry();
         webURLBinding.objectToEntry(url, value);
         Transaction txn = beginTransaction();
-        urlsDB.put(txn, getDatabaseEntryKey(url), value);
+        urlsDB.put(txn, getKey(url), value);
         commit(txn);
     }
 
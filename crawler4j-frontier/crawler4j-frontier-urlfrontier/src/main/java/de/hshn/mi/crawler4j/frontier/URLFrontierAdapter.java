@@ -23,6 +23,7 @@ import crawlercommons.urlfrontier.URLFrontierGrpc;
 import crawlercommons.urlfrontier.Urlfrontier;
 import de.hshn.mi.crawler4j.url.URLFrontierWebURLImpl;
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.frontier.DocIDAssignment;
 import edu.uci.ics.crawler4j.frontier.DocIDServer;
 import edu.uci.ics.crawler4j.frontier.Frontier;
 import edu.uci.ics.crawler4j.url.WebURL;
@@ -32,6 +33,8 @@ import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -198,6 +201,22 @@ public class URLFrontierAdapter implements Frontier, DocIDServer {
 
     @Override
     public void setProcessed(WebURL webURL) {
+        putKnown(webURL, 0, 1);
+    }
+
+    /**
+     * Marks the url as known but refetchable right away, so URLFrontier hands it out again
+     * without counting it as a newly scheduled page.
+     */
+    @Override
+    public void reschedule(WebURL url) {
+        putKnown(url, Instant.now().getEpochSecond(), -1);
+    }
+
+    /*
+     * @param completed added to the completed pages once URLFrontier acknowledged the url
+     */
+    private void putKnown(WebURL webURL, long refetchableFromDate, long completed) {
 
         if (webURL instanceof URLFrontierWebURLImpl) {
             URLFrontierWebURLImpl url = (URLFrontierWebURLImpl) webURL;
@@ -207,7 +226,7 @@ public class URLFrontierAdapter implements Frontier, DocIDServer {
                         @Override
                         public void onNext(crawlercommons.urlfrontier.Urlfrontier.AckMessage value) {
                             // receives confirmation that the value has been received
-                            completedPages.addAndGet(1);
+                            completedPages.addAndGet(completed);
                         }
 
                         @Override
@@ -229,7 +248,7 @@ public class URLFrontierAdapter implements Frontier, DocIDServer {
                     Urlfrontier.KnownURLItem
                             .newBuilder()
                             .setInfo(url.getRawInfo())
-                            .setRefetchableFromDate(0)
+                            .setRefetchableFromDate(refetchableFromDate)
                             .build());
 
             streamObserver.onNext(builder.build());
@@ -292,6 +311,16 @@ public class URLFrontierAdapter implements Frontier, DocIDServer {
         logger.debug("URL Frontier does not know the concept of doc ids - so we do not care either");
     }
 
+    @Override
+    public List<DocIDAssignment> getOrCreateDocIds(List<String> urls) {
+        // URL Frontier discards known urls itself, so every url is passed on as new
+        List<DocIDAssignment> result = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            result.add(new DocIDAssignment(-1, true));
+        }
+        return result;
+    }
+
     @Override
     public boolean isSeenBefore(String url) {
         //handled by URL Frontier